@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BenchmarkData. (Tool, Static, ThreadSafe)
+ * 
+ * The same template corpus as httl.test.TemplateTest, the context is created by ModelFactory.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class BenchmarkData {
+
+	public static final String[] CONFIGS = { "httl-comment.properties", "httl-javassist.properties" };
+
+	public static List<Stock> createStocks() {
+		List<Stock> stocks = new ArrayList<Stock>();
+		stocks.add(new Stock("Adobe Systems", "Adobe Systems Inc.", "http://www.adobe.com", "ADBE", 39.26, 0.13, 0.33));
+		stocks.add(new Stock("Advanced Micro Devices", "Advanced Micro Devices Inc.", "http://www.amd.com", "AMD", 16.22, 0.17, 1.06));
+		stocks.add(new Stock("Amazon.com", "Amazon.com Inc", "http://www.amazon.com", "AMZN", 36.85, -0.23, -0.62));
+		stocks.add(new Stock("Apple", "Apple Inc.", "http://www.apple.com", "AAPL", 85.38, -0.87, -1.01));
+		stocks.add(new Stock("BEA Systems", "BEA Systems Inc.", "http://www.bea.com", "BEAS", 12.46, 0.09, 0.73));
+		stocks.add(new Stock("CA", "CA, Inc.", "http://www.ca.com", "CA", 24.66, 0.38, 1.57));
+		stocks.add(new Stock("Cisco Systems", "Cisco Systems Inc.", "http://www.cisco.com", "CSCO", 26.35, 0.13, 0.5));
+		stocks.add(new Stock("Dell", "Dell Corp.", "http://www.dell.com/", "DELL", 23.73, -0.42, -1.74));
+		stocks.add(new Stock("eBay", "eBay Inc.", "http://www.ebay.com", "EBAY", 31.65, -0.8, -2.47));
+		stocks.add(new Stock("Google", "Google Inc.", "http://www.google.com", "GOOG", 495.84, 7.75, 1.59));
+		stocks.add(new Stock("Hewlett-Packard", "Hewlett-Packard Co.", "http://www.hp.com", "HPQ", 41.69, -0.02, -0.05));
+		stocks.add(new Stock("IBM", "International Business Machines Corp.", "http://www.ibm.com", "IBM", 97.45, -0.06, -0.06));
+		stocks.add(new Stock("Intel", "Intel Corp.", "http://www.intel.com", "INTC", 20.53, -0.07, -0.34));
+		stocks.add(new Stock("Juniper Networks", "Juniper Networks, Inc", "http://www.juniper.net/", "JNPR", 18.96, 0.5, 2.71));
+		stocks.add(new Stock("Microsoft", "Microsoft Corp", "http://www.microsoft.com", "MSFT", 30.6, 0.15, 0.49));
+		stocks.add(new Stock("Oracle", "Oracle Corp.", "http://www.oracle.com", "ORCL", 17.15, 0.17, 1.0));
+		stocks.add(new Stock("SAP", "SAP AG", "http://www.sap.com", "SAP", 46.2, -0.16, -0.35));
+		stocks.add(new Stock("Seagate Technology", "Seagate Technology", "http://www.seagate.com/", "STX", 27.35, -0.36, -1.3));
+		stocks.add(new Stock("Sun Microsystems", "Sun Microsystems Inc.", "http://www.sun.com", "SUNW", 6.33, -0.01, -0.16));
+		stocks.add(new Stock("Yahoo", "Yahoo! Inc.", "http://www.yahoo.com", "YHOO", 28.04, -0.17, -0.6));
+		return stocks;
+	}
+
+	/**
+	 * The parameters of a comparative benchmark scenario, "stocks" or "books".
+	 */
+	public static Map<String, Object> createScenario(String scenario) {
+		Map<String, Object> context = new HashMap<String, Object>();
+		if ("stocks".equals(scenario)) {
+			context.put("items", createStocks());
+		} else if ("books".equals(scenario)) {
+			context.put("user", ModelFactory.createUser());
+			context.put("books", Arrays.asList(ModelFactory.createBooks()));
+		} else {
+			throw new IllegalArgumentException("Unknown benchmark scenario: " + scenario);
+		}
+		return context;
+	}
+
+	/**
+	 * List the corpus template names, such as "/templates/foreach.httl".
+	 */
+	public static List<String> listTemplates(Engine engine) {
+		String dir = engine.getProperty("template.directory", "");
+		if (dir.startsWith("/")) {
+			dir = dir.substring(1);
+		}
+		if (dir.length() > 0 && ! dir.endsWith("/")) {
+			dir += "/";
+		}
+		URL url = BenchmarkData.class.getClassLoader().getResource(dir + "templates/");
+		if (url == null) {
+			throw new IllegalStateException("Not found template directory: " + dir + "templates/");
+		}
+		List<String> names = new ArrayList<String>();
+		File[] files = new File(url.getFile()).listFiles();
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.getName().endsWith(".httl")) {
+				names.add("/templates/" + file.getName());
+			}
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.test.util.DiscardWriter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ColdStartBenchmark. (Benchmark)
+ * 
+ * Time to the first render in a new JVM: engine startup, template compilation and one render.
+ * Each fork measures a single shot, so the result is the distribution over the forks.
+ * 
+ * @see httl.benchmark.ComparativeBenchmark
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1, batchSize = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+	@Param({ "httl", "httl-javassist", "freemarker", "velocity" })
+	public String engine;
+
+	@Param({ "stocks", "books" })
+	public String scenario;
+
+	@Benchmark
+	public Renderer firstRender() throws Exception {
+		Renderer renderer = Renderer.create(engine, scenario);
+		renderer.render(BenchmarkData.createScenario(scenario), new DiscardWriter());
+		return renderer;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.test.util.DiscardOutputStream;
+import httl.test.util.DiscardWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ComparativeBenchmark. (Benchmark)
+ * 
+ * The "stocks" and "books" scenarios, rendered by HTTL (JdkCompiler and JavassistCompiler), 
+ * FreeMarker and Velocity, to a writer or to an output stream.
+ * Throughput mode gives renders per second, sample mode gives the latency percentiles (p0.99),
+ * and "-prof gc" gives the bytes allocated per render (gc.alloc.rate.norm).
+ * HTTL and FreeMarker escape the values as html, Velocity has no escaping without its tools.
+ * 
+ * @see httl.benchmark.ColdStartBenchmark
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparativeBenchmark {
+
+	@Param({ "httl", "httl-javassist", "freemarker", "velocity" })
+	public String engine;
+
+	@Param({ "stocks", "books" })
+	public String scenario;
+
+	@Param({ "writer", "stream" })
+	public String output;
+
+	private Renderer renderer;
+
+	private Map<String, Object> context;
+
+	private final Writer writer = new DiscardWriter();
+
+	private final OutputStream stream = new DiscardOutputStream();
+
+	@Setup
+	public void setup() throws Exception {
+		renderer = Renderer.create(engine, scenario);
+		context = BenchmarkData.createScenario(scenario);
+		// 校验输出，防止测的是空模板
+		String expected = "stocks".equals(scenario) ? "YHOO" : "Design by Contract";
+		StringWriter result = new StringWriter();
+		renderer.render(context, result);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		renderer.render(context, bytes);
+		if (result.toString().indexOf(expected) < 0 || new String(bytes.toByteArray(), "UTF-8").indexOf(expected) < 0) {
+			throw new IllegalStateException("Unexpected " + engine + " " + scenario + " output: " + result);
+		}
+	}
+
+	@Benchmark
+	public void render() throws Exception {
+		if ("stream".equals(output)) {
+			renderer.render(context, stream);
+		} else {
+			renderer.render(context, writer);
+		}
+	}
+
+}
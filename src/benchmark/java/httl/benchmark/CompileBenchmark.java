@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Resource;
+import httl.Template;
+import httl.spi.Parser;
+import httl.spi.loaders.resources.StringResource;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CompileBenchmark. (Benchmark)
+ * 
+ * Parser.parse() of a corpus template, i.e. parseClass() and the compiler, with the JdkCompiler
+ * (httl-comment.properties) and the JavassistCompiler (httl-javassist.properties).
+ * Every invocation uses a new resource name, so a new class is generated and loaded, which is
+ * why it runs in single shot batches.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = 20)
+@Measurement(iterations = 10, batchSize = 20)
+@Fork(1)
+public class CompileBenchmark {
+
+	@Param({ "httl-comment.properties", "httl-javassist.properties" })
+	public String config;
+
+	@Param({ "/templates/foreach.httl", "/templates/macro.httl" })
+	public String name;
+
+	private Engine engine;
+
+	private Parser parser;
+
+	private String source;
+
+	private long sequence;
+
+	@Setup
+	public void setup() throws Exception {
+		engine = Engine.getEngine(config);
+		parser = engine.getProperty("parser", Parser.class);
+		source = engine.getResource(name).getSource();
+	}
+
+	@Benchmark
+	public Template parse() throws Exception {
+		Resource resource = new StringResource(engine, name.replace(".httl", "_" + (sequence ++) + ".httl"), Locale.getDefault(), "UTF-8", source);
+		return parser.parse(resource);
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Expression;
+import httl.test.model.Book;
+import httl.test.model.User;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ExpressionBenchmark. (Benchmark)
+ * 
+ * ExpressionImpl.evaluate() of a compiled expression.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+
+	@Param({ "1 + 2 * 3", "book.price * book.discount / 100", "user.name + ': ' + books[0].title" })
+	public String source;
+
+	private Expression expression;
+
+	private Map<String, Object> parameters;
+
+	@Setup
+	public void setup() throws Exception {
+		Engine engine = Engine.getEngine("httl-comment.properties");
+		parameters = new HashMap<String, Object>(ModelFactory.createContext());
+		parameters.put("book", ModelFactory.createBooks()[0]);
+		Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+		types.put("book", Book.class);
+		types.put("books", Book[].class);
+		types.put("user", User.class);
+		expression = engine.getExpression(source, types);
+		expression.evaluate(parameters);
+	}
+
+	@Benchmark
+	public Object evaluate() throws Exception {
+		return expression.evaluate(parameters);
+	}
+
+}
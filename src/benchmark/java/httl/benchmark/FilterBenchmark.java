@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.spi.Filter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FilterBenchmark. (Benchmark)
+ * 
+ * The escape filters, on text without and with characters to escape.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	@Param({ "httl.spi.filters.EscapeXmlFilter", "httl.spi.filters.EscapeHtmlFilter", "httl.spi.filters.EscapeStringFilter" })
+	public String filterClass;
+
+	@Param({ "plain", "markup" })
+	public String text;
+
+	private Filter filter;
+
+	private String value;
+
+	@Setup
+	public void setup() throws Exception {
+		filter = (Filter) Class.forName(filterClass).newInstance();
+		if ("markup".equals(text)) {
+			value = "<a href=\"/books?id=1&amp;page=2\" title='Effective Java'>Effective Java</a>\n<b>Joshua Bloch</b>";
+		} else {
+			value = "Agile Software Development, Principles, Patterns, and Practices by Robert C. Martin";
+		}
+	}
+
+	@Benchmark
+	public String filter() {
+		return filter.filter(value);
+	}
+
+}
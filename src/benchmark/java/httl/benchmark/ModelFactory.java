@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.test.model.Book;
+import httl.test.model.User;
+import httl.util.ClassUtils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * ModelFactory. (Tool, Static, ThreadSafe)
+ * 
+ * The same context as httl.test.TemplateTest, for rendering its template corpus.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class ModelFactory {
+
+	private ModelFactory() {}
+
+	public static User createUser() {
+		return new User("liangfei", "admin", "Y");
+	}
+
+	public static Book[] createBooks() {
+		SimpleDateFormat format = getDateFormat();
+		Book[] books = new Book[10];
+		books[0] = new Book("Practical API Design", "Jaroslav Tulach", "Apress", parse(format, "2008-07-29"), 75, 85);
+		books[1] = new Book("Effective Java", "Joshua Bloch", "Addison-Wesley Professional", parse(format, "2008-05-28"), 55, 70);
+		books[2] = new Book("Java Concurrency in Practice", "Doug Lea", "Addison-Wesley Professional", parse(format, "2006-05-19"), 60, 60);
+		books[3] = new Book("Java Programming Language", "James Gosling", "Prentice Hall", parse(format, "2005-08-27"), 65, 75);
+		books[4] = new Book("Domain-Driven Design", "Eric Evans", "Addison-Wesley Professional", parse(format, "2003-08-30"), 70, 80);
+		books[5] = new Book("Agile Project Management with Scrum", "Ken Schwaber", "Microsoft Press", parse(format, "2004-03-10"), 40, 80);
+		books[6] = new Book("J2EE Development without EJB", "Rod Johnson", "Wrox", parse(format, "2011-09-17"), 40, 70);
+		books[7] = new Book("Design Patterns", "Erich Gamma", "Addison-Wesley Professional", parse(format, "1994-11-10"), 60, 80);
+		books[8] = new Book("Agile Software Development, Principles, Patterns, and Practices", " Robert C. Martin", "Prentice Hall", parse(format, "2002-10-25"), 80, 75);
+		books[9] = new Book("Design by Contract, by Example", "Richard Mitchell", "Addison-Wesley Publishing Company", parse(format, "2001-10-22"), 50, 85);
+		return books;
+	}
+
+	public static Book[] createBooks2() {
+		SimpleDateFormat format = getDateFormat();
+		Book[] books2 = new Book[2];
+		books2[0] = new Book("Practical API Design2", "Jaroslav Tulach", "Apress", parse(format, "2010-07-29"), 75, 85);
+		books2[1] = new Book("Effective Java2", "Joshua Bloch", "Addison-Wesley Professional", parse(format, "2010-05-28"), 55, 70);
+		return books2;
+	}
+
+	/**
+	 * Create the parameters of the test templates.
+	 * 
+	 * @return template parameters
+	 */
+	public static Map<String, Object> createContext() {
+		Book[] books = createBooks();
+		Book[] books2 = createBooks2();
+		Map<String, Book> bookmap = new TreeMap<String, Book>();
+		Map<String, Map<String, Object>> mapbookmap = new TreeMap<String, Map<String, Object>>();
+		List<Map<String, Object>> mapbooklist = new ArrayList<Map<String, Object>>();
+		for (Book book : books) {
+			bookmap.put(book.getTitle().replaceAll("\\s+", ""), book);
+			Map<String, Object> genericBook = ClassUtils.getBeanProperties(book);
+			mapbookmap.put(book.getTitle().replaceAll("\\s+", ""), genericBook);
+			mapbooklist.add(genericBook);
+		}
+		Map<String, Book> bookmap2 = new TreeMap<String, Book>();
+		for (Book book : books2) {
+			bookmap2.put(book.getTitle().replaceAll("\\s+", ""), book);
+		}
+		Map<String, Object> context = new HashMap<String, Object>();
+		context.put("chinese", "中文");
+		context.put("impvar", "abcxyz");
+		context.put("html", "<a href=\"foo.html\">foo</a>");
+		context.put("user", createUser());
+		context.put("books", books);
+		context.put("booklist", Arrays.asList(books));
+		context.put("bookmap", bookmap);
+		context.put("mapbookmap", mapbookmap);
+		context.put("mapbooklist", mapbooklist);
+		context.put("emptybooks", new Book[0]);
+		context.put("books2", books2);
+		context.put("booklist2", Arrays.asList(books2));
+		context.put("bookmap2", bookmap2);
+		return context;
+	}
+
+	private static SimpleDateFormat getDateFormat() {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		format.setTimeZone(TimeZone.getTimeZone("+0"));
+		return format;
+	}
+
+	private static Date parse(SimpleDateFormat format, String date) {
+		try {
+			return format.parse(date);
+		} catch (ParseException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+}
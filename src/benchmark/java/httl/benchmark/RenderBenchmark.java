@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Template;
+import httl.test.util.DiscardOutputStream;
+import httl.test.util.DiscardWriter;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RenderBenchmark. (Benchmark)
+ * 
+ * Render all the templates of the comment corpus, to a writer or to an output stream.
+ * A template that can not render fails the setup, so the results always cover the whole corpus.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({ "httl-comment.properties", "httl-javassist.properties" })
+	public String config;
+
+	@Param({ "writer", "stream" })
+	public String output;
+
+	private Template[] templates;
+
+	private Map<String, Object> context;
+
+	private final Writer writer = new DiscardWriter();
+
+	private final OutputStream stream = new DiscardOutputStream();
+
+	@Setup
+	public void setup() throws Exception {
+		Engine engine = Engine.getEngine(config);
+		context = ModelFactory.createContext();
+		List<Template> list = new ArrayList<Template>();
+		for (String name : BenchmarkData.listTemplates(engine)) {
+			Template template = engine.getTemplate(name);
+			try {
+				template.render(context, writer);
+				template.render(context, stream);
+			} catch (Exception e) {
+				// 不跳过失败的模板, 否则结果不可比较
+				throw new IllegalStateException("Failed to render " + name + " with " + config + ": " + e.getMessage(), e);
+			}
+			list.add(template);
+		}
+		templates = list.toArray(new Template[list.size()]);
+	}
+
+	@Benchmark
+	public void render() throws Exception {
+		if ("stream".equals(output)) {
+			for (Template template : templates) {
+				template.render(context, stream);
+			}
+		} else {
+			for (Template template : templates) {
+				template.render(context, writer);
+			}
+		}
+	}
+
+}
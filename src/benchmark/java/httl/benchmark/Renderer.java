@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Renderer. (Benchmark, Prototype, ThreadSafe)
+ * 
+ * One template of a comparative benchmark scenario, rendered by one template engine.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public abstract class Renderer {
+
+	public static final String TEMPLATE_DIRECTORY = "benchmark/templates/";
+
+	/**
+	 * Create the engine and compile the scenario template.
+	 * 
+	 * @param engine - httl, httl-javassist, freemarker or velocity
+	 * @param scenario - stocks or books
+	 */
+	public static Renderer create(String engine, String scenario) throws Exception {
+		if ("httl".equals(engine)) {
+			return new HttlRenderer("httl-benchmark.properties", scenario);
+		} else if ("httl-javassist".equals(engine)) {
+			return new HttlRenderer("httl-benchmark-javassist.properties", scenario);
+		} else if ("freemarker".equals(engine)) {
+			return new FreemarkerRenderer(scenario);
+		} else if ("velocity".equals(engine)) {
+			return new VelocityRenderer(scenario);
+		}
+		throw new IllegalArgumentException("Unknown template engine: " + engine);
+	}
+
+	public abstract void render(Map<String, Object> context, Writer writer) throws Exception;
+
+	// 其它引擎没有字节输出，按通常的用法包装为Writer
+	public void render(Map<String, Object> context, OutputStream stream) throws Exception {
+		Writer writer = new OutputStreamWriter(stream, "UTF-8");
+		render(context, writer);
+		writer.flush();
+	}
+
+	private static class HttlRenderer extends Renderer {
+
+		private final httl.Template template;
+
+		HttlRenderer(String config, String scenario) throws Exception {
+			Properties properties = new Properties();
+			properties.setProperty("output.encoding", "UTF-8");
+			template = Engine.getEngine(config, properties).getTemplate("/templates/" + scenario + ".httl");
+		}
+
+		public void render(Map<String, Object> context, Writer writer) throws Exception {
+			template.render(context, writer);
+		}
+
+		public void render(Map<String, Object> context, OutputStream stream) throws Exception {
+			template.render(context, stream);
+		}
+
+	}
+
+	private static class FreemarkerRenderer extends Renderer {
+
+		private final freemarker.template.Template template;
+
+		FreemarkerRenderer(String scenario) throws IOException {
+			freemarker.template.Configuration configuration = new freemarker.template.Configuration();
+			configuration.setClassForTemplateLoading(Renderer.class, "/" + TEMPLATE_DIRECTORY);
+			configuration.setDefaultEncoding("UTF-8");
+			configuration.setNumberFormat("computer");
+			template = configuration.getTemplate(scenario + ".ftl");
+		}
+
+		public void render(Map<String, Object> context, Writer writer) throws Exception {
+			template.process(context, writer);
+		}
+
+	}
+
+	private static class VelocityRenderer extends Renderer {
+
+		private final org.apache.velocity.Template template;
+
+		VelocityRenderer(String scenario) throws Exception {
+			org.apache.velocity.app.VelocityEngine engine = new org.apache.velocity.app.VelocityEngine();
+			engine.setProperty("resource.loader", "class");
+			engine.setProperty("class.resource.loader.class", "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
+			engine.setProperty("runtime.log.logsystem.class", "org.apache.velocity.runtime.log.NullLogChute");
+			engine.init();
+			template = engine.getTemplate(TEMPLATE_DIRECTORY + scenario + ".vm", "UTF-8");
+		}
+
+		public void render(Map<String, Object> context, Writer writer) throws Exception {
+			template.merge(new org.apache.velocity.VelocityContext(context), writer);
+		}
+
+	}
+
+}
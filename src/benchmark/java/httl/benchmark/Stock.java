@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import java.io.Serializable;
+
+/**
+ * Stock. (Model)
+ * 
+ * The model of the "stocks" template benchmark scenario.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class Stock implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String name;
+
+	private String name2;
+
+	private String url;
+
+	private String symbol;
+
+	private double price;
+
+	private double change;
+
+	private double ratio;
+
+	public Stock() {
+	}
+
+	public Stock(String name, String name2, String url, String symbol, double price, double change, double ratio) {
+		this.name = name;
+		this.name2 = name2;
+		this.url = url;
+		this.symbol = symbol;
+		this.price = price;
+		this.change = change;
+		this.ratio = ratio;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getName2() {
+		return name2;
+	}
+
+	public void setName2(String name2) {
+		this.name2 = name2;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public void setSymbol(String symbol) {
+		this.symbol = symbol;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public void setPrice(double price) {
+		this.price = price;
+	}
+
+	public double getChange() {
+		return change;
+	}
+
+	public void setChange(double change) {
+		this.change = change;
+	}
+
+	public double getRatio() {
+		return ratio;
+	}
+
+	public void setRatio(double ratio) {
+		this.ratio = ratio;
+	}
+
+}
@@ -0,0 +1,27 @@
+<#escape x as x?html><!DOCTYPE html>
+<html>
+<head>
+<title>Books</title>
+<meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+</head>
+<body>
+<h1>${user.name}'s books</h1>
+<table>
+<tr><th>#</th><th>title</th><th>author</th><th>publisher</th><th>price</th><th>discount</th></tr>
+<#list books as book>
+<tr class="${(book_index % 2 == 0)?string('odd', 'even')}">
+<td>${book_index + 1}</td>
+<td>${book.title}</td>
+<td>${book.author}</td>
+<td>${book.publisher}</td>
+<td>${book.price}</td>
+<#if (book.discount > 70)>
+<td class="sale">${book.discount}%</td>
+<#else>
+<td>${book.discount}%</td>
+</#if>
+</tr>
+</#list>
+</table>
+</body>
+</html></#escape>
@@ -0,0 +1,33 @@
+<#escape x as x?html><!DOCTYPE html>
+<html>
+<head>
+<title>Stock Prices</title>
+<meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+<link rel="stylesheet" type="text/css" href="/css/style.css" media="all">
+</head>
+<body>
+<h1>Stock Prices</h1>
+<table>
+<thead>
+<tr><th>#</th><th>symbol</th><th>name</th><th>price</th><th>change</th><th>ratio</th></tr>
+</thead>
+<tbody>
+<#list items as item>
+<tr class="${(item_index % 2 == 0)?string('odd', 'even')}">
+<td>${item_index + 1}</td>
+<td><a href="/stocks/${item.symbol}">${item.symbol}</a></td>
+<td><a href="${item.url}">${item.name}</a></td>
+<td><strong>${item.price}</strong></td>
+<#if (item.change < 0.0)>
+<td class="minus">${item.change}</td>
+<td class="minus">${item.ratio}</td>
+<#else>
+<td>${item.change}</td>
+<td>${item.ratio}</td>
+</#if>
+</tr>
+</#list>
+</tbody>
+</table>
+</body>
+</html></#escape>
@@ -69,6 +69,15 @@ public final class Context extends DelegateMap<String, Object> {
 		return context;
 	}
 
+	/**
+	 * Get the current context from thread local, without creating it.
+	 * 
+	 * @return current context, or null if no context is bound to the current thread
+	 */
+	public static Context peekContext() {
+		return LOCAL.get();
+	}
+
 	/**
 	 * Push the current context to thread local.
 	 * 
@@ -87,12 +96,13 @@ public final class Context extends DelegateMap<String, Object> {
 
 	/**
 	 * Pop the current context from thread local, and restore parent context to thread local.
+	 * If the parent is an empty root context, remove it, so no context is left on the thread after rendering.
 	 */
 	public static void popContext() {
 		Context context = LOCAL.get();
 		if (context != null) {
 			Context parent = context.getParent();
-			if (parent != null) {
+			if (parent != null && (parent.getParent() != null || ! parent.isEmpty())) {
 				LOCAL.set(parent);
 			} else {
 				LOCAL.remove();
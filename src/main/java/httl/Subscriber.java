@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Subscriber. (API, Prototype, ThreadSafe)
+ * 
+ * <pre>
+ * AsyncUtils.renderAsync(template, parameters, new Subscriber() {
+ *     public void onSubscribe(Subscription subscription) {
+ *         this.subscription = subscription;
+ *         subscription.request(1);
+ *     }
+ *     public void onNext(ByteBuffer chunk) {
+ *         channel.write(chunk);
+ *         subscription.request(1);
+ *     }
+ *     ...
+ * });
+ * </pre>
+ * 
+ * @see httl.util.AsyncUtils#renderAsync(Template, java.util.Map, Subscriber)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public interface Subscriber {
+
+	/**
+	 * Invoked once before any chunk, on the render thread.
+	 * 
+	 * @param subscription - request chunks or cancel the render
+	 */
+	void onSubscribe(Subscription subscription);
+
+	/**
+	 * Invoked with the next rendered chunk, only as many times as requested.
+	 * 
+	 * @param chunk - rendered bytes in the output encoding, owned by the subscriber
+	 */
+	void onNext(ByteBuffer chunk);
+
+	/**
+	 * Invoked once if the render failed, no other method will be invoked after it.
+	 * 
+	 * @param e - render error
+	 */
+	void onError(Throwable e);
+
+	/**
+	 * Invoked once after the last chunk, no other method will be invoked after it.
+	 */
+	void onComplete();
+
+	/**
+	 * Subscription. (API, Prototype, ThreadSafe)
+	 * 
+	 * @see httl.Subscriber#onSubscribe(Subscription)
+	 */
+	interface Subscription {
+
+		/**
+		 * Request more chunks. The render thread waits while no chunk is requested.
+		 * 
+		 * @param n - the number of chunks, must be positive
+		 */
+		void request(long n);
+
+		/**
+		 * Cancel the render, the rendered chunks not yet delivered are discarded.
+		 */
+		void cancel();
+
+	}
+
+}
@@ -17,13 +17,16 @@ package httl.spi.compilers;
 
 import httl.spi.Compiler;
 import httl.spi.Logger;
+import httl.util.CacheStatistics;
 import httl.util.ClassUtils;
 import httl.util.VolatileReference;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.text.ParseException;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
@@ -42,11 +45,23 @@ public abstract class AbstractCompiler implements Compiler {
 	
 	private static final Pattern CLASS_PATTERN = Pattern.compile("class\\s+([_a-zA-Z][_a-zA-Z0-9]*)\\s+");
 
-	private static final ConcurrentMap<String, VolatileReference<Class<?>>> CLASS_CACHE = new ConcurrentHashMap<String, VolatileReference<Class<?>>>();
+	// 弱引用编译后的类, 以便不再使用的模板类可以被卸载
+	private static final ConcurrentMap<String, VolatileReference<WeakReference<Class<?>>>> CLASS_CACHE = new ConcurrentHashMap<String, VolatileReference<WeakReference<Class<?>>>>();
+
+	private static final CacheStatistics CLASS_CACHE_STATISTICS = new CacheStatistics("class.cache");
+
+	/**
+	 * Get the compiled class cache statistics, shared by all the compilers.
+	 * 
+	 * @return class cache statistics
+	 */
+	public static CacheStatistics getClassCacheStatistics() {
+		return CLASS_CACHE_STATISTICS;
+	}
 
 	private File compileDirectory;
 	
-	private Logger logger;
+	protected Logger logger;
 	
 	private volatile boolean first = true;
 
@@ -110,24 +125,28 @@ public abstract class AbstractCompiler implements Compiler {
 				throw new ParseException("No such class name in java code.", 0);
 			}
 			className = pkg != null && pkg.length() > 0 ? pkg + "." + classSimpleName : classSimpleName;
-			VolatileReference<Class<?>> ref = CLASS_CACHE.get(className);
+			VolatileReference<WeakReference<Class<?>>> ref = CLASS_CACHE.get(className);
 			if (ref == null) {
-				ref = new VolatileReference<Class<?>>();
-				VolatileReference<Class<?>> old = CLASS_CACHE.putIfAbsent(className, ref);
+				ref = new VolatileReference<WeakReference<Class<?>>>();
+				VolatileReference<WeakReference<Class<?>>> old = CLASS_CACHE.putIfAbsent(className, ref);
 				if (old != null) {
 					ref = old;
 				}
 			}
-			Class<?> cls = ref.get();
+			Class<?> cls = getClass(ref);
 			if (cls == null) {
 				synchronized(ref) {
-					cls = ref.get();
+					cls = getClass(ref);
 					if (cls == null) {
+						CLASS_CACHE_STATISTICS.miss();
+						removeUnloaded();
 						cls = doCompile(className, code);
-						ref.set(cls);
+						ref.set(new WeakReference<Class<?>>(cls));
+						return cls;
 					}
 				}
 			}
+			CLASS_CACHE_STATISTICS.hit();
 			return cls;
 		} catch (Throwable t) {
 			if (logger != null && logger.isErrorEnabled()) {
@@ -140,6 +159,20 @@ public abstract class AbstractCompiler implements Compiler {
 		}
 	}
 	
+	private static Class<?> getClass(VolatileReference<WeakReference<Class<?>>> ref) {
+		WeakReference<Class<?>> reference = ref.get();
+		return reference == null ? null : reference.get();
+	}
+
+	private static void removeUnloaded() {
+		for (Iterator<VolatileReference<WeakReference<Class<?>>>> i = CLASS_CACHE.values().iterator(); i.hasNext();) {
+			WeakReference<Class<?>> reference = i.next().get();
+			if (reference != null && reference.get() == null) {
+				i.remove();
+			}
+		}
+	}
+
 	protected abstract Class<?> doCompile(String name, String source) throws Exception;
 
 }
\ No newline at end of file
@@ -34,6 +34,8 @@ public class AdaptiveCompiler implements Compiler {
 
 	private Logger logger;
 
+	private boolean hiddenClass;
+
 	/**
 	 * httl.properties: loggers=httl.spi.loggers.Log4jLogger
 	 */
@@ -53,6 +55,16 @@ public class AdaptiveCompiler implements Compiler {
 		}
 	}
 
+	/**
+	 * httl.properties: hidden.class=true
+	 */
+	public void setHiddenClass(boolean hiddenClass) {
+		this.hiddenClass = hiddenClass;
+		if (compiler instanceof JdkCompiler) {
+			((JdkCompiler) compiler).setHiddenClass(hiddenClass);
+		}
+	}
+
 	/**
 	 * httl.properties: java.version=1.7
 	 */
@@ -65,6 +77,7 @@ public class AdaptiveCompiler implements Compiler {
 			JdkCompiler jdkCompiler = new JdkCompiler();
 			jdkCompiler.setJavaVersion(version);
 			jdkCompiler.setLogger(logger);
+			jdkCompiler.setHiddenClass(hiddenClass);
 			compiler = jdkCompiler;
 		}
 	}
@@ -17,6 +17,7 @@ package httl.spi.compilers;
 
 import httl.spi.Compiler;
 import httl.util.ClassUtils;
+import httl.util.CompileStatistics;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -63,6 +64,7 @@ public class JavassistCompiler extends AbstractCompiler {
 		try {
 			return pool.get(name).toClass();
 		} catch (NotFoundException e) {
+			long start = System.nanoTime();
 			int i = name.lastIndexOf('.');
 			String className = i < 0 ? name : name.substring(i + 1);
 			Matcher matcher = IMPORT_PATTERN.matcher(source);
@@ -128,7 +130,11 @@ public class JavassistCompiler extends AbstractCompiler {
 				}
 			}
 			saveBytecode(name, cls.toBytecode());
-			return cls.toClass();
+			long compiled = System.nanoTime();
+			CompileStatistics.record(CompileStatistics.COMPILE, compiled - start);
+			Class<?> clazz = cls.toClass();
+			CompileStatistics.record(CompileStatistics.LOAD, System.nanoTime() - compiled);
+			return clazz;
 		}
 	}
 
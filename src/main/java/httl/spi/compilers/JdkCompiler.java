@@ -17,13 +17,18 @@ package httl.spi.compilers;
 
 import httl.spi.Compiler;
 import httl.util.ClassUtils;
+import httl.util.CompileStatistics;
 import httl.util.UnsafeByteArrayInputStream;
 import httl.util.UnsafeByteArrayOutputStream;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -31,13 +36,16 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.tools.DiagnosticCollector;
 import javax.tools.FileObject;
@@ -54,30 +62,74 @@ import javax.tools.ToolProvider;
 /**
  * JdkCompiler. (SPI, Singleton, ThreadSafe)
  * 
+ * Every compilation defines its classes in a new class loader, so the classes of a replaced
+ * or evicted template can be unloaded once the template is no longer referenced.
+ * The bytecode is dropped once the class is defined. Templates reference the classes of
+ * other compilations through httl.util.ClassCache, so javac never reads their bytecode.
+ * With hidden.class=true, classes are defined by Lookup.defineHiddenClass on Java 15+.
+ * 
  * @see httl.spi.parsers.AbstractParser#setCompiler(Compiler)
  * 
  * @author Liang Fei (liangfei0201 AT gmail DOT com)
  */
 public class JdkCompiler extends AbstractCompiler {
 
+	private static final Object LOOKUP;
+
+	private static final Method PRIVATE_LOOKUP_IN;
+
+	private static final Method DEFINE_HIDDEN_CLASS;
+
+	private static final Method LOOKUP_CLASS;
+
+	private static final Object CLASS_OPTIONS;
+
+	static {
+		Object lookup = null;
+		Method privateLookupIn = null;
+		Method defineHiddenClass = null;
+		Method lookupClass = null;
+		Object classOptions = null;
+		try {
+			// 通过反射调用, 兼容Java15以前的版本
+			Class<?> methodHandles = Class.forName("java.lang.invoke.MethodHandles");
+			Class<?> lookupType = Class.forName("java.lang.invoke.MethodHandles$Lookup");
+			Class<?> classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			classOptions = Array.newInstance(classOption, 0);
+			defineHiddenClass = lookupType.getMethod("defineHiddenClass", byte[].class, boolean.class, classOptions.getClass());
+			privateLookupIn = methodHandles.getMethod("privateLookupIn", Class.class, lookupType);
+			lookupClass = lookupType.getMethod("lookupClass");
+			lookup = methodHandles.getMethod("lookup").invoke(null);
+		} catch (Throwable e) {
+			lookup = null;
+		}
+		LOOKUP = lookup;
+		PRIVATE_LOOKUP_IN = privateLookupIn;
+		DEFINE_HIDDEN_CLASS = defineHiddenClass;
+		LOOKUP_CLASS = lookupClass;
+		CLASS_OPTIONS = classOptions;
+	}
+
 	private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
 
-	private final DiagnosticCollector<JavaFileObject> diagnosticCollector = new DiagnosticCollector<JavaFileObject>();
-	
-	private final ClassLoaderImpl classLoader;
+	private final StandardJavaFileManager manager;
 	
-	private final JavaFileManagerImpl javaFileManager;
+	private final ClassLoader parentClassLoader;
+
+	// 已编译类所在的类加载器, 弱引用, 类卸载后自动失效
+	private final ConcurrentMap<String, WeakReference<ClassLoaderImpl>> classLoaders = new ConcurrentHashMap<String, WeakReference<ClassLoaderImpl>>();
+
+	private volatile boolean hiddenClass;
 
 	private final List<String> options = new ArrayList<String>();
 
 	private final List<String> lintOptions = new ArrayList<String>();
 
-	@SuppressWarnings("resource")
 	public JdkCompiler(){
 		if (compiler == null) {
 			throw new IllegalStateException("Can not get system java compiler. Please add jdk tools.jar to your classpath.");
 		}
-		StandardJavaFileManager manager = compiler.getStandardFileManager(diagnosticCollector, null, null);
+		manager = compiler.getStandardFileManager(new DiagnosticCollector<JavaFileObject>(), null, null);
 		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
 		if (loader instanceof URLClassLoader 
 				&& (! loader.getClass().getName().equals("sun.misc.Launcher$AppClassLoader"))) {
@@ -92,12 +144,7 @@ public class JdkCompiler extends AbstractCompiler {
 				throw new IllegalStateException(e.getMessage(), e);
 			}
 		}
-		classLoader = AccessController.doPrivileged(new PrivilegedAction<ClassLoaderImpl>() {
-			public ClassLoaderImpl run() {
-				return new ClassLoaderImpl(loader);
-			}
-		});
-		javaFileManager = new JavaFileManagerImpl(manager, classLoader);
+		parentClassLoader = loader;
 		lintOptions.add("-Xlint:unchecked");
 	}
 
@@ -122,6 +169,13 @@ public class JdkCompiler extends AbstractCompiler {
 			options.add("-Xlint:unchecked");
 		}
 	}
+
+	/**
+	 * httl.properties: hidden.class=true
+	 */
+	public void setHiddenClass(boolean hiddenClass) {
+		this.hiddenClass = hiddenClass && LOOKUP != null;
+	}
 	
 	@Override
 	protected Class<?> doCompile(String name, String sourceCode) throws Exception {
@@ -140,24 +194,107 @@ public class JdkCompiler extends AbstractCompiler {
 	}
 
 	private Class<?> doCompile(String name, String sourceCode, List<String> options) throws Exception {
+		ClassLoaderImpl loaded = getClassLoader(name);
+		if (loaded != null) {
+			return loaded.loadClass(name);
+		}
+		int i = name.lastIndexOf('.');
+		String packageName = i < 0 ? "" : name.substring(0, i);
+		String className = i < 0 ? name : name.substring(i + 1);
+		long start = System.nanoTime();
+		ClassLoaderImpl classLoader = AccessController.doPrivileged(new PrivilegedAction<ClassLoaderImpl>() {
+			public ClassLoaderImpl run() {
+				return new ClassLoaderImpl(parentClassLoader);
+			}
+		});
+		// 源码文件及编译诊断信息只在本次编译中使用, 编译后即可回收
+		JavaFileManagerImpl javaFileManager = new JavaFileManagerImpl(manager, classLoader);
+		DiagnosticCollector<JavaFileObject> diagnosticCollector = new DiagnosticCollector<JavaFileObject>();
+		JavaFileObjectImpl javaFileObject = new JavaFileObjectImpl(className, sourceCode);
+		javaFileManager.putFileForInput(StandardLocation.SOURCE_PATH, packageName, 
+										className + ClassUtils.JAVA_EXTENSION, javaFileObject);
+		Boolean result = compiler.getTask(null, javaFileManager, diagnosticCollector, options, 
+										  null, Arrays.asList(new JavaFileObject[]{javaFileObject})).call();
+		if (result == null || ! result.booleanValue()) {
+			throw new IllegalStateException("Compilation failed. class: " + name + ", diagnostics: " + diagnosticCollector.getDiagnostics());
+		}
+		long compiled = System.nanoTime();
+		CompileStatistics.record(CompileStatistics.COMPILE, compiled - start);
+		removeUnloaded();
+		// 隐藏类不能按类名引用, 不登记其类加载器
+		Class<?> cls = hiddenClass ? defineHiddenClass(name, classLoader) : null;
+		if (cls == null) {
+			// 定义类后即释放其字节码, 先取出本次编译的类名
+			Set<String> compiledNames = new HashSet<String>(classLoader.names());
+			cls = classLoader.loadClass(name);
+			WeakReference<ClassLoaderImpl> reference = new WeakReference<ClassLoaderImpl>(classLoader);
+			for (String compiledName : compiledNames) {
+				classLoaders.put(compiledName, reference);
+			}
+		}
+		CompileStatistics.record(CompileStatistics.LOAD, System.nanoTime() - compiled);
+		return cls;
+	}
+
+	private Class<?> defineHiddenClass(String name, ClassLoaderImpl classLoader) throws Exception {
+		// 含内部类的编译单元, 或引用了其它编译单元的类时, 仍使用类加载器定义
+		if (classLoader.names().size() != 1) {
+			return null;
+		}
+		byte[] bytes = classLoader.getByteCode(name);
+		ClassInfo info = new ClassInfo(bytes);
+		for (String reference : info.references) {
+			if (! reference.equals(name) && getClassLoader(reference) != null) {
+				return null;
+			}
+		}
+		// 隐藏类与宿主类同包同加载器, 宿主类取同包的父类或接口
+		int i = name.lastIndexOf('.');
+		String packageName = i < 0 ? "" : name.substring(0, i);
+		Class<?> host = null;
+		for (String superName : info.supers) {
+			int j = superName.lastIndexOf('.');
+			if (packageName.equals(j < 0 ? "" : superName.substring(0, j))) {
+				try {
+					Class<?> superClass = Class.forName(superName, false, parentClassLoader);
+					if (superClass.getClassLoader() == parentClassLoader) {
+						host = superClass;
+						break;
+					}
+				} catch (ClassNotFoundException e) {
+				}
+			}
+		}
+		if (host == null) {
+			return null;
+		}
+		Class<?> cls;
 		try {
-			return classLoader.findClass(name);
-		} catch (ClassNotFoundException e) {
-			int i = name.lastIndexOf('.');
-			String packageName = i < 0 ? "" : name.substring(0, i);
-			String className = i < 0 ? name : name.substring(i + 1);
-			JavaFileObjectImpl javaFileObject = new JavaFileObjectImpl(className, sourceCode);
-			javaFileManager.putFileForInput(StandardLocation.SOURCE_PATH, packageName, 
-											className + ClassUtils.JAVA_EXTENSION, javaFileObject);
-			Boolean result = compiler.getTask(null, javaFileManager, diagnosticCollector, options, 
-											  null, Arrays.asList(new JavaFileObject[]{javaFileObject})).call();
-			if (result == null || ! result.booleanValue()) {
-				throw new IllegalStateException("Compilation failed. class: " + name + ", diagnostics: " + diagnosticCollector.getDiagnostics());
+			Object hostLookup = PRIVATE_LOOKUP_IN.invoke(null, host, LOOKUP);
+			cls = (Class<?>) LOOKUP_CLASS.invoke(DEFINE_HIDDEN_CLASS.invoke(hostLookup, bytes, false, CLASS_OPTIONS));
+		} catch (Exception e) {
+			if (logger != null && logger.isWarnEnabled()) {
+				logger.warn("Failed to define hidden class " + name + ", cause: " + ClassUtils.toString(e));
 			}
-			return classLoader.loadClass(name);
+			return null;
 		}
+		saveBytecode(name, bytes);
+		return cls;
 	}
-	
+
+	private ClassLoaderImpl getClassLoader(String name) {
+		WeakReference<ClassLoaderImpl> reference = classLoaders.get(name);
+		return reference == null ? null : reference.get();
+	}
+
+	private void removeUnloaded() {
+		for (Iterator<WeakReference<ClassLoaderImpl>> i = classLoaders.values().iterator(); i.hasNext();) {
+			if (i.next().get() == null) {
+				i.remove();
+			}
+		}
+	}
+
 	private final class ClassLoaderImpl extends ClassLoader {
 		
 		private final Map<String, JavaFileObject> classes = new HashMap<String, JavaFileObject>();
@@ -166,8 +303,12 @@ public class JdkCompiler extends AbstractCompiler {
 			super(parentClassLoader);
 		}
 
-		Collection<JavaFileObject> files() {
-			return Collections.unmodifiableCollection(classes.values());
+		Set<String> names() {
+			return Collections.unmodifiableSet(classes.keySet());
+		}
+
+		byte[] getByteCode(String qualifiedClassName) {
+			return ((JavaFileObjectImpl) classes.get(qualifiedClassName)).getByteCode();
 		}
 
 		@Override
@@ -180,7 +321,14 @@ public class JdkCompiler extends AbstractCompiler {
 				} catch (IOException e) {
 					throw new IllegalStateException(e.getMessage(), e);
 				}
-				return defineClass(qualifiedClassName, bytes, 0, bytes.length);
+				Class<?> cls = defineClass(qualifiedClassName, bytes, 0, bytes.length);
+				classes.remove(qualifiedClassName);
+				return cls;
+			}
+			// 引用其它编译单元的类, 如模板引用宏模板的类
+			ClassLoaderImpl classLoader = getClassLoader(qualifiedClassName);
+			if (classLoader != null && classLoader != this) {
+				return classLoader.loadClass(qualifiedClassName);
 			}
 			try {
 				return Class.forName(qualifiedClassName);
@@ -211,6 +359,95 @@ public class JdkCompiler extends AbstractCompiler {
 		}
 	}
 	
+	/**
+	 * Class names read from the class file constant pool.
+	 */
+	private static final class ClassInfo {
+
+		final List<String> supers = new ArrayList<String>();
+
+		final Set<String> references = new HashSet<String>();
+
+		ClassInfo(byte[] bytes) throws IOException {
+			DataInputStream in = new DataInputStream(new UnsafeByteArrayInputStream(bytes));
+			in.skipBytes(8); // magic, minor_version, major_version
+			int count = in.readUnsignedShort();
+			String[] utf8s = new String[count];
+			int[] classes = new int[count];
+			for (int i = 1; i < count; i ++) {
+				int tag = in.readUnsignedByte();
+				switch (tag) {
+					case 1: // Utf8
+						utf8s[i] = in.readUTF();
+						break;
+					case 7: // Class
+						classes[i] = in.readUnsignedShort();
+						break;
+					case 5: // Long
+					case 6: // Double
+						in.skipBytes(8);
+						i ++;
+						break;
+					case 8: // String
+					case 16: // MethodType
+					case 19: // Module
+					case 20: // Package
+						in.skipBytes(2);
+						break;
+					case 15: // MethodHandle
+						in.skipBytes(3);
+						break;
+					case 3: // Integer
+					case 4: // Float
+					case 9: // Fieldref
+					case 10: // Methodref
+					case 11: // InterfaceMethodref
+					case 12: // NameAndType
+					case 17: // Dynamic
+					case 18: // InvokeDynamic
+						in.skipBytes(4);
+						break;
+					default:
+						throw new IOException("Unknown constant pool tag " + tag);
+				}
+			}
+			for (int i = 1; i < count; i ++) {
+				if (classes[i] > 0) {
+					addReference(utf8s[classes[i]]);
+				} else if (utf8s[i] != null) {
+					// 字段及方法描述符中的类型
+					String utf8 = utf8s[i];
+					int end = 0;
+					int start;
+					while ((start = utf8.indexOf('L', end)) >= 0 && (end = utf8.indexOf(';', start)) > 0) {
+						addReference(utf8.substring(start + 1, end));
+					}
+				}
+			}
+			in.skipBytes(4); // access_flags, this_class
+			int superClass = in.readUnsignedShort();
+			if (superClass > 0) {
+				supers.add(utf8s[classes[superClass]].replace('/', '.'));
+			}
+			int interfaces = in.readUnsignedShort();
+			for (int i = 0; i < interfaces; i ++) {
+				supers.add(utf8s[classes[in.readUnsignedShort()]].replace('/', '.'));
+			}
+		}
+
+		private void addReference(String name) {
+			int i = name.lastIndexOf('[');
+			if (i >= 0) {
+				if (name.length() <= i + 2 || name.charAt(i + 1) != 'L') {
+					return;
+				}
+				name = name.substring(i + 2, name.length() - 1);
+			}
+			references.add(name.replace('/', '.'));
+		}
+
+	}
+
 	private static final class JavaFileObjectImpl extends SimpleJavaFileObject {
 
 		private UnsafeByteArrayOutputStream bytecode;
@@ -255,7 +492,7 @@ public class JdkCompiler extends AbstractCompiler {
 		}
 	}
 	
-	private static final class JavaFileManagerImpl extends ForwardingJavaFileManager<JavaFileManager> {
+	private final class JavaFileManagerImpl extends ForwardingJavaFileManager<JavaFileManager> {
 		
 		private final ClassLoaderImpl classLoader;
 
@@ -322,8 +559,6 @@ public class JdkCompiler extends AbstractCompiler {
 						files.add(file);
 					}
 				}
-
-				files.addAll(classLoader.files());
 			} else if (location == StandardLocation.SOURCE_PATH && kinds.contains(JavaFileObject.Kind.SOURCE)) {
 				for (JavaFileObject file : fileObjects.values()) {
 					if (file.getKind() == Kind.SOURCE && file.getName().startsWith(packageName)) {
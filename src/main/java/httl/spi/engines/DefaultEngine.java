@@ -24,10 +24,17 @@ import httl.spi.Logger;
 import httl.spi.Parser;
 import httl.spi.Resolver;
 import httl.spi.Translator;
+import httl.spi.compilers.AbstractCompiler;
 import httl.spi.loaders.StringLoader;
+import httl.spi.loaders.resources.StringResource;
+import httl.spi.translators.expressions.ExpressionImpl;
+import httl.util.CacheStatistics;
 import httl.util.ClassUtils;
+import httl.util.CompileStatistics;
+import httl.util.ConcurrentLinkedHashMap;
 import httl.util.ConfigUtils;
 import httl.util.Digest;
+import httl.util.Histogram;
 import httl.util.StringUtils;
 import httl.util.UrlUtils;
 import httl.util.Version;
@@ -44,6 +51,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 /**
  * DefaultEngine. (SPI, Singleton, ThreadSafe)
@@ -58,6 +66,18 @@ public class DefaultEngine extends Engine {
 	// @see parseTemplate()
 	private final StringLoader stringLoader;
 
+	// The fixed weight of each string template, about the size of its parsed template and generated class.
+	private static final int STRING_TEMPLATE_WEIGHT = 4096;
+
+	// The string templates, weighted by the fixed weight plus the source length, evicted in LRU order.
+	// @see parseTemplate()
+	private ConcurrentLinkedHashMap<String, StringTemplate> stringTemplates = newStringTemplates(Long.MAX_VALUE);
+
+	// The names of the recently parsed sources, looked up by the source instance.
+	private final StringTemplateName[] stringTemplateNames = new StringTemplateName[64];
+
+	private final CacheStatistics stringTemplateCacheStatistics = new CacheStatistics("string.template.cache");
+
 	// httl.properties: loaders=httl.spi.loaders.ClasspathLoader
 	private Loader loader;
 
@@ -79,6 +99,16 @@ public class DefaultEngine extends Engine {
 	// httl.properties: expression.cache=java.util.concurrent.ConcurrentHashMap
 	private Map<Object, Object> expressionCache;
 
+	private final CacheStatistics templateCacheStatistics = new CacheStatistics("template.cache");
+
+	private final CacheStatistics expressionCacheStatistics = new CacheStatistics("expression.cache");
+
+	// httl.properties: executor=httl.spi.executors.AdaptiveExecutor
+	private Executor executor;
+
+	// httl.properties: subscriber.executor=httl.spi.executors.SubscriberExecutor
+	private Executor subscriberExecutor;
+
 	// httl.properties: template.suffix=.httl
 	private String templateSuffix;
 
@@ -163,6 +193,7 @@ public class DefaultEngine extends Engine {
 		}
 		Map<Object, Object> cache = this.expressionCache; // safe copy reference
 		if (cache == null) {
+			expressionCacheStatistics.miss();
 			return translator.translate(source, parameterTypes, 0);
 		}
 		VolatileReference<Expression> reference = (VolatileReference<Expression>) cache.get(source);
@@ -189,11 +220,14 @@ public class DefaultEngine extends Engine {
 			synchronized (reference) { // reference lock
 				expression = (Expression) reference.get();
 				if (expression == null) { // double check
+					expressionCacheStatistics.miss();
 					expression = translator.translate(source, parameterTypes, 0); // slowly
 					reference.set(expression);
+					return expression;
 				}
 			}
 		}
+		expressionCacheStatistics.hit();
 		assert(expression != null);
 		return expression;
 	}
@@ -214,6 +248,7 @@ public class DefaultEngine extends Engine {
 		name = UrlUtils.cleanName(name);
 		Map<Object, Object> cache = this.templateCache; // safe copy reference
 		if (cache == null) {
+			templateCacheStatistics.miss();
 			return parseTemplate(name, locale, encoding, null);
 		}
 		Resource resource = null;
@@ -262,11 +297,14 @@ public class DefaultEngine extends Engine {
 			synchronized (reference) { // reference lock
 				template = (Template) reference.get();
 				if (template == null || template.getLastModified() < lastModified) { // double check
+					templateCacheStatistics.miss();
 					template = parseTemplate(name, locale, encoding, resource); // slowly
 					reference.set(template);
+					return template;
 				}
 			}
 		}
+		templateCacheStatistics.hit();
 		assert(template != null);
 		return template;
 	}
@@ -338,17 +376,140 @@ public class DefaultEngine extends Engine {
 	 * @throws ParseException - If the template cannot be parsed
 	 */
 	public Template parseTemplate(String source) throws ParseException {
-		String name = "/$" + Digest.getMD5(source);
-		if (! hasResource(name)) {
-			stringLoader.add(name, source);
-		}
+		String name = getStringTemplateName(source);
 		try {
-			return getTemplate(name);
+			ConcurrentLinkedHashMap<String, StringTemplate> templates = this.stringTemplates; // safe copy reference
+			if (source.length() > templates.capacity()) {
+				// Heavier than the whole cache, parse it without caching.
+				stringTemplateCacheStatistics.miss();
+				return parseStringTemplate(name, source);
+			}
+			StringTemplate template = getStringTemplate(templates, name, source);
+			if (template == null) {
+				// Hash collision, use the md5 name instead.
+				name = "/$" + Digest.getMD5(source);
+				template = getStringTemplate(templates, name, source);
+				if (template == null) {
+					return parseStringTemplate(name, source);
+				}
+			}
+			Template result = template.getTemplate();
+			if (result == null) {
+				result = template.compile();
+				if (result == null) {
+					// Evicted by another thread before compiled, parse it without caching.
+					result = parseStringTemplate(name, source);
+				} else if (! source.equals(result.getSource())) {
+					// The class of the same name is compiled from another source, use the md5 name instead.
+					templates.remove(name, template);
+					template.remove();
+					result = parseStringTemplate("/$" + Digest.getMD5(source), source);
+				}
+			}
+			return result;
 		} catch (IOException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
 	}
 
+	// Get the name of the string template, the same source instance is not hashed again.
+	private String getStringTemplateName(String source) {
+		int index = System.identityHashCode(source) & (stringTemplateNames.length - 1);
+		StringTemplateName cached = stringTemplateNames[index];
+		if (cached != null && cached.source == source) {
+			return cached.name;
+		}
+		String name = "/$" + Digest.getHash(source);
+		stringTemplateNames[index] = new StringTemplateName(source, name);
+		return name;
+	}
+
+	// Get or add the string template, return null if the name is used by another source.
+	private StringTemplate getStringTemplate(ConcurrentLinkedHashMap<String, StringTemplate> templates, String name, String source) {
+		StringTemplate template = templates.get(name); // touch the lru order
+		if (template == null) {
+			stringTemplateCacheStatistics.miss();
+			template = new StringTemplate(name, source);
+			StringTemplate old = templates.putIfAbsent(name, template);
+			if (old == null) {
+				return template;
+			}
+			template = old;
+		}
+		if (template.source == source || template.source.equals(source)) {
+			stringTemplateCacheStatistics.hit();
+			return template;
+		}
+		return null;
+	}
+
+	// Parse the string template, without the string loader and the template cache.
+	private Template parseStringTemplate(String name, String source) throws IOException, ParseException {
+		return parseTemplate(name, null, null, new StringResource(this, name, null, "UTF-8", System.currentTimeMillis(), source));
+	}
+
+	private static final class StringTemplateName {
+
+		final String source;
+
+		final String name;
+
+		StringTemplateName(String source, String name) {
+			this.source = source;
+			this.name = name;
+		}
+
+	}
+
+	/**
+	 * The cached string template, compiled and removed under the same lock,
+	 * so the string loader and the template cache only hold the tracked templates.
+	 */
+	private final class StringTemplate {
+
+		final String name;
+
+		final String source;
+
+		private volatile Template template;
+
+		private boolean removed;
+
+		StringTemplate(String name, String source) {
+			this.name = name;
+			this.source = source;
+		}
+
+		Template getTemplate() {
+			return template;
+		}
+
+		// Compile the template, return null if removed.
+		synchronized Template compile() throws IOException, ParseException {
+			if (template == null) {
+				if (removed) {
+					return null;
+				}
+				stringLoader.add(name, source);
+				template = DefaultEngine.this.getTemplate(name);
+			}
+			return template;
+		}
+
+		// Remove the evicted template, the compiled class is unloaded with the template.
+		synchronized void remove() {
+			removed = true;
+			template = null;
+			stringTemplateCacheStatistics.evict();
+			stringLoader.remove(name);
+			Map<Object, Object> cache = templateCache; // safe copy reference
+			if (cache != null) {
+				cache.remove(name);
+			}
+		}
+
+	}
+
 	/**
 	 * Tests whether the resource denoted by this abstract pathname exists.
 	 * 
@@ -362,6 +523,72 @@ public class DefaultEngine extends Engine {
 		return stringLoader.exists(name, locale) || loader.exists(name, locale);
 	}
 
+	/**
+	 * Get the template cache statistics of this engine.
+	 * 
+	 * @return template cache statistics
+	 */
+	public CacheStatistics getTemplateCacheStatistics() {
+		return templateCacheStatistics;
+	}
+
+	/**
+	 * Get the expression cache statistics of this engine.
+	 * 
+	 * @return expression cache statistics
+	 */
+	public CacheStatistics getExpressionCacheStatistics() {
+		return expressionCacheStatistics;
+	}
+
+	/**
+	 * Get the string template cache statistics of this engine.
+	 * 
+	 * @see #parseTemplate(String)
+	 * @return string template cache statistics
+	 */
+	public CacheStatistics getStringTemplateCacheStatistics() {
+		return stringTemplateCacheStatistics;
+	}
+
+	/**
+	 * Get the total length of the cached string template sources.
+	 * 
+	 * @see #parseTemplate(String)
+	 * @return cached source length
+	 */
+	public long getStringTemplateCacheWeight() {
+		return stringTemplates.weightedSize();
+	}
+
+	/**
+	 * Get the compiled class cache statistics, shared by all the engines.
+	 * 
+	 * @return class cache statistics
+	 */
+	public CacheStatistics getClassCacheStatistics() {
+		return AbstractCompiler.getClassCacheStatistics();
+	}
+
+	/**
+	 * Get the expression evaluator cache statistics, shared by all the engines.
+	 * 
+	 * @return evaluator cache statistics
+	 */
+	public CacheStatistics getEvaluatorCacheStatistics() {
+		return ExpressionImpl.getEvaluatorCacheStatistics();
+	}
+
+	/**
+	 * Get the compile stage time histograms in nanoseconds, shared by all the engines.
+	 * 
+	 * @see httl.util.CompileStatistics
+	 * @return stage name to histogram
+	 */
+	public Map<String, Histogram> getCompileStatistics() {
+		return CompileStatistics.getStages();
+	}
+
 	/**
 	 * Init the engine.
 	 */
@@ -457,6 +684,20 @@ public class DefaultEngine extends Engine {
 		this.logger = logger;
 	}
 
+	/**
+	 * httl.properties: executor=httl.spi.executors.AdaptiveExecutor
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * httl.properties: subscriber.executor=httl.spi.executors.SubscriberExecutor
+	 */
+	public void setSubscriberExecutor(Executor subscriberExecutor) {
+		this.subscriberExecutor = subscriberExecutor;
+	}
+
 	/**
 	 * httl.properties: expression.cache=java.util.concurrent.ConcurrentHashMap
 	 */
@@ -464,6 +705,28 @@ public class DefaultEngine extends Engine {
 		this.expressionCache = cache;
 	}
 	
+	/**
+	 * httl.properties: string.template.cache.capacity=800000
+	 */
+	public void setStringTemplateCacheCapacity(long capacity) {
+		this.stringTemplates = newStringTemplates(capacity > 0 ? capacity : Long.MAX_VALUE);
+	}
+
+	private ConcurrentLinkedHashMap<String, StringTemplate> newStringTemplates(long capacity) {
+		return new ConcurrentLinkedHashMap.Builder<String, StringTemplate>()
+				.maximumWeightedCapacity(capacity)
+				.weigher(new ConcurrentLinkedHashMap.Weigher<StringTemplate>() {
+					public int weightOf(StringTemplate template) {
+						return STRING_TEMPLATE_WEIGHT + template.source.length();
+					}
+				})
+				.listener(new ConcurrentLinkedHashMap.EvictionListener<String, StringTemplate>() {
+					public void onEviction(String name, StringTemplate template) {
+						template.remove();
+					}
+				}).build();
+	}
+
 	/**
 	 * httl.properties: template.cache=java.util.concurrent.ConcurrentHashMap
 	 */
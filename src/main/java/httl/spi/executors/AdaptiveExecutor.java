@@ -0,0 +1,59 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.executors;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AdaptiveExecutor. (SPI, Singleton, ThreadSafe)
+ * 
+ * Run the asynchronous renders on a fixed number of daemon threads, set by the executor.threads config.
+ * 
+ * @see httl.spi.engines.DefaultEngine#setExecutor(Executor)
+ * @see httl.util.AsyncUtils#renderAsync(httl.Template, java.util.Map)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class AdaptiveExecutor implements Executor {
+
+	private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+	private static final int DEFAULT_THREADS = 100;
+
+	private ExecutorService executor;
+
+	/**
+	 * httl.properties: executor.threads=100
+	 */
+	public void setExecutorThreads(int threads) {
+		DaemonThreadFactory factory = new DaemonThreadFactory("httl-render-" + POOL_SEQ.incrementAndGet() + "-");
+		executor = Executors.newFixedThreadPool(threads > 0 ? threads : DEFAULT_THREADS, factory);
+	}
+
+	public void init() {
+		if (executor == null) {
+			setExecutorThreads(0);
+		}
+	}
+
+	public void execute(Runnable command) {
+		executor.execute(command);
+	}
+
+}
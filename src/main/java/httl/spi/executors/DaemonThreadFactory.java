@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.executors;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DaemonThreadFactory. (Tool, Prototype, ThreadSafe)
+ * 
+ * @see httl.spi.executors.AdaptiveExecutor
+ * @see httl.spi.executors.SubscriberExecutor
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	private final AtomicInteger threadSeq = new AtomicInteger();
+
+	private final String prefix;
+
+	public DaemonThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, prefix + threadSeq.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
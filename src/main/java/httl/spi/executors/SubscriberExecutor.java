@@ -0,0 +1,61 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.executors;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SubscriberExecutor. (SPI, Singleton, ThreadSafe)
+ * 
+ * Run the subscriber renders on their own fixed number of daemon threads, set by the subscriber.threads config.
+ * A subscriber render blocks its thread while the subscriber has not requested the next chunk,
+ * so the slow subscribers only hold these threads, and never starve the render executor.
+ * 
+ * @see httl.spi.engines.DefaultEngine#setSubscriberExecutor(Executor)
+ * @see httl.util.AsyncUtils#renderAsync(httl.Template, java.util.Map, httl.Subscriber)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class SubscriberExecutor implements Executor {
+
+	private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+	private static final int DEFAULT_THREADS = 10;
+
+	private ExecutorService executor;
+
+	/**
+	 * httl.properties: subscriber.threads=10
+	 */
+	public void setSubscriberThreads(int threads) {
+		DaemonThreadFactory factory = new DaemonThreadFactory("httl-subscriber-" + POOL_SEQ.incrementAndGet() + "-");
+		executor = Executors.newFixedThreadPool(threads > 0 ? threads : DEFAULT_THREADS, factory);
+	}
+
+	public void init() {
+		if (executor == null) {
+			setSubscriberThreads(0);
+		}
+	}
+
+	public void execute(Runnable command) {
+		executor.execute(command);
+	}
+
+}
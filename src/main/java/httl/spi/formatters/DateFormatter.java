@@ -17,8 +17,8 @@ package httl.spi.formatters;
 
 import httl.spi.Formatter;
 import httl.util.DateUtils;
+import httl.util.FastDateFormat;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -35,20 +35,34 @@ public class DateFormatter implements Formatter<Date> {
 
 	private TimeZone timeZone;
 
+	private volatile FastDateFormat formatter;
+
 	/**
 	 * httl.properties: date.format=yyyy-MM-dd HH:mm:ss
 	 */
 	public void setDateFormat(String dateFormat) {
-		new SimpleDateFormat(dateFormat).format(new Date());
+		this.formatter = DateUtils.getFastDateFormat(dateFormat, timeZone);
 		this.dateFormat = dateFormat;
 	}
 
+	/**
+	 * httl.properties: time.zone=+8
+	 */
 	public void setTimeZone(String timeZone) {
 		this.timeZone = TimeZone.getTimeZone(timeZone);
+		this.formatter = DateUtils.getFastDateFormat(dateFormat, this.timeZone);
 	}
 
 	public String format(Date value) {
-		return DateUtils.format(value, dateFormat, timeZone);
+		if (value == null) {
+			return null;
+		}
+		FastDateFormat formatter = this.formatter;
+		if (formatter == null) {
+			formatter = DateUtils.getFastDateFormat(dateFormat, timeZone);
+			this.formatter = formatter;
+		}
+		return formatter.format(value);
 	}
 
 }
\ No newline at end of file
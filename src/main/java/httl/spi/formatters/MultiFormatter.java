@@ -19,6 +19,7 @@ import httl.spi.Formatter;
 import httl.util.ClassUtils;
 import httl.util.StringUtils;
 
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -31,9 +32,22 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class MultiFormatter implements Formatter<Object> {
 	
+	// 解析缓存超过此数量时清空，防止动态生成的类撑满内存
+	private static final int MAX_RESOLVED_SIZE = 1024;
+
+	// 未注册格式化器的类型，ConcurrentHashMap不能存null值
+	private static final Formatter<Object> NONE = new Formatter<Object>() {
+		public String format(Object value) {
+			return StringUtils.toString(value);
+		}
+	};
+
 	private final Map<Class<?>, Formatter<?>> formatters = new ConcurrentHashMap<Class<?>, Formatter<?>>();
+
+	private final Map<Class<?>, Formatter<?>> resolved = new ConcurrentHashMap<Class<?>, Formatter<?>>();
 	
 	public void setFormatters(Formatter<?>[] formatters) {
+		resolved.clear();
 		if (formatters != null && formatters.length > 0) {
 			for (Formatter<?> formatter : formatters) {
 				if (formatter != null) {
@@ -51,6 +65,66 @@ public class MultiFormatter implements Formatter<Object> {
 		return (Formatter)formatters.get((Class)type);
 	}
 
+	/**
+	 * Get the formatter registered for the type, or for the nearest super class,
+	 * or for the nearest interface if none of the classes matched.
+	 * The interfaces are not looked up for strings, booleans, characters and boxed numbers.
+	 * 
+	 * @param type - value type
+	 * @return formatter, or null if none
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <T> Formatter<T> resolve(Class<T> type) {
+		Formatter<?> formatter = resolved.get(type);
+		if (formatter == null) {
+			formatter = lookup(type);
+			if (formatter == null) {
+				formatter = NONE;
+			}
+			if (resolved.size() >= MAX_RESOLVED_SIZE) {
+				resolved.clear();
+			}
+			resolved.put(type, formatter);
+		}
+		return formatter == NONE ? null : (Formatter) formatter;
+	}
+
+	// 先找类本身及其继承链(含Object)，都没有时才按层次找接口
+	private Formatter<?> lookup(Class<?> type) {
+		for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+			Formatter<?> formatter = formatters.get(cls);
+			if (formatter != null) {
+				return formatter;
+			}
+		}
+		if (isValueType(type)) {
+			return null;
+		}
+		LinkedList<Class<?>> queue = new LinkedList<Class<?>>();
+		for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+			for (Class<?> i : cls.getInterfaces()) {
+				queue.add(i);
+			}
+		}
+		while (! queue.isEmpty()) {
+			Class<?> cls = queue.removeFirst();
+			Formatter<?> formatter = formatters.get(cls);
+			if (formatter != null) {
+				return formatter;
+			}
+			for (Class<?> i : cls.getInterfaces()) {
+				queue.add(i);
+			}
+		}
+		return null;
+	}
+
+	// 字符串, 布尔, 字符及装箱数值原样输出, 不按其实现的Serializable, Comparable等接口找格式化器
+	private static boolean isValueType(Class<?> type) {
+		return type == String.class || type == Boolean.class || type == Character.class
+				|| (Number.class.isAssignableFrom(type) && type.getName().startsWith("java.lang."));
+	}
+
 	@SuppressWarnings("unchecked")
 	public String format(Object value) {
 		if (value == null) {
@@ -60,7 +134,7 @@ public class MultiFormatter implements Formatter<Object> {
 			}
 			return null;
 		} else {
-			Formatter<Object> formatter = (Formatter<Object>) formatters.get(value.getClass());
+			Formatter<Object> formatter = (Formatter<Object>) resolve(value.getClass());
 			if (formatter != null) {
 				return formatter.format(value);
 			}
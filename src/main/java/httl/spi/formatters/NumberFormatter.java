@@ -16,10 +16,9 @@
 package httl.spi.formatters;
 
 import httl.spi.Formatter;
+import httl.util.FastNumberFormat;
 import httl.util.NumberUtils;
 
-import java.text.DecimalFormat;
-
 /**
  * NumberFormatter. (SPI, Singleton, ThreadSafe)
  * 
@@ -29,18 +28,17 @@ import java.text.DecimalFormat;
  */
 public class NumberFormatter implements Formatter<Number> {
 	
-	private String numberFormat;
+	private FastNumberFormat numberFormat = NumberUtils.getFastNumberFormat(null);
 	
 	/**
 	 * httl.properties: number.format=###,##0.###
 	 */
 	public void setNumberFormat(String numberFormat) {
-		new DecimalFormat(numberFormat).format(0);
-		this.numberFormat = numberFormat;
+		this.numberFormat = NumberUtils.getFastNumberFormat(numberFormat);
 	}
 
 	public String format(Number value) {
-		return NumberUtils.format(value, numberFormat);
+		return numberFormat.format(value);
 	}
 
 }
\ No newline at end of file
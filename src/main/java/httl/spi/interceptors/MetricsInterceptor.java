@@ -0,0 +1,279 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.interceptors;
+
+import httl.Context;
+import httl.Engine;
+import httl.Template;
+import httl.spi.Interceptor;
+import httl.spi.Listener;
+import httl.spi.Logger;
+import httl.spi.Reporter;
+import httl.util.TemplateMetrics;
+import httl.util.UnsafeBufferedOutputStream;
+import httl.util.UnsafeBufferedWriter;
+import httl.util.UnsafeByteArrayOutputStream;
+import httl.util.UnsafeStringWriter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics Interceptor. (SPI, Singleton, ThreadSafe)
+ * 
+ * Record the render count, time percentiles, output size and nested depth of each template,
+ * export them as MBeans, and report them periodically to the reporter.
+ * 
+ * Call destroy() when the engine is discarded, e.g. on webapp redeploy,
+ * to unregister the MBeans and stop the reporter.
+ * 
+ * httl.properties: interceptors+=httl.spi.interceptors.MetricsInterceptor
+ * 
+ * @see httl.spi.parsers.AbstractParser#setInterceptor(Interceptor)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class MetricsInterceptor implements Interceptor {
+
+	// 超过此数量的模板合并统计，避免动态模板撑爆内存
+	private static final int MAX_TEMPLATES = 1000;
+
+	private static final String OVERFLOW_NAME = "*";
+
+	private static final AtomicInteger INSTANCE_SEQUENCE = new AtomicInteger();
+
+	// 同名引擎的多个实例，各自注册独立的MBean
+	private final int instance = INSTANCE_SEQUENCE.incrementAndGet();
+
+	private final ConcurrentMap<String, TemplateMetrics> metrics = new ConcurrentHashMap<String, TemplateMetrics>();
+
+	private String engineName;
+
+	private Reporter reporter;
+
+	private Logger logger;
+
+	private int reportInterval;
+
+	private boolean jmx;
+
+	private volatile MBeanServer mbeanServer;
+
+	private final Set<ObjectName> objectNames = new CopyOnWriteArraySet<ObjectName>();
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * httl.properties: engine=httl.spi.engines.DefaultEngine
+	 */
+	public void setEngine(Engine engine) {
+		this.engineName = engine.getName();
+	}
+
+	/**
+	 * httl.properties: reporter=httl.spi.reporters.LoggerReporter
+	 */
+	public void setReporter(Reporter reporter) {
+		this.reporter = reporter;
+	}
+
+	/**
+	 * httl.properties: loggers=httl.spi.loggers.Log4jLogger
+	 */
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * httl.properties: metrics.report.interval=60
+	 */
+	public void setMetricsReportInterval(int seconds) {
+		this.reportInterval = seconds;
+	}
+
+	/**
+	 * httl.properties: metrics.jmx=true
+	 */
+	public void setMetricsJmx(boolean jmx) {
+		this.jmx = jmx;
+	}
+
+	public void init() {
+		if (jmx) {
+			try {
+				mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			} catch (Throwable e) {
+				if (logger != null && logger.isWarnEnabled()) {
+					logger.warn("Failed to get platform mbean server, cause: " + e.getMessage(), e);
+				}
+			}
+		}
+		if (reporter != null && reportInterval > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "httl-metrics-reporter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						reporter.report(getMetrics());
+					} catch (Throwable e) {
+						if (logger != null && logger.isErrorEnabled()) {
+							logger.error("Failed to report template metrics, cause: " + e.getMessage(), e);
+						}
+					}
+				}
+			}, reportInterval, reportInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Unregister the template metrics mbeans, and stop the reporter.
+	 */
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+		MBeanServer server = mbeanServer;
+		mbeanServer = null;
+		if (server != null) {
+			for (ObjectName objectName : objectNames) {
+				try {
+					if (server.isRegistered(objectName)) {
+						server.unregisterMBean(objectName);
+					}
+				} catch (Throwable e) {
+					if (logger != null && logger.isWarnEnabled()) {
+						logger.warn("Failed to unregister template metrics mbean, cause: " + e.getMessage(), e);
+					}
+				}
+			}
+		}
+		objectNames.clear();
+	}
+
+	/**
+	 * Get all the template metrics.
+	 * 
+	 * @return template metrics
+	 */
+	public Collection<TemplateMetrics> getMetrics() {
+		return Collections.unmodifiableCollection(metrics.values());
+	}
+
+	/**
+	 * Get the template metrics.
+	 * 
+	 * @param name - template name
+	 * @return template metrics, null if not rendered
+	 */
+	public TemplateMetrics getMetrics(String name) {
+		return metrics.get(name);
+	}
+
+	public void render(Context context, Listener listener) throws IOException, ParseException {
+		Template template = context.getTemplate();
+		Object out = context.getOut();
+		long size = getOutputSize(out);
+		boolean error = true;
+		long start = System.nanoTime();
+		try {
+			listener.render(context);
+			error = false;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			if (template != null) {
+				if (size >= 0) {
+					long end = getOutputSize(out);
+					size = end >= size ? end - size : -1;
+				}
+				getTemplateMetrics(template.getName()).record(nanos, size, context.getLevel(), error);
+			}
+		}
+	}
+
+	private static long getOutputSize(Object out) {
+		if (out instanceof UnsafeBufferedWriter) {
+			return ((UnsafeBufferedWriter) out).getCount();
+		} else if (out instanceof UnsafeBufferedOutputStream) {
+			return ((UnsafeBufferedOutputStream) out).getCount();
+		} else if (out instanceof UnsafeStringWriter) {
+			return ((UnsafeStringWriter) out).getBuffer().length();
+		} else if (out instanceof UnsafeByteArrayOutputStream) {
+			return ((UnsafeByteArrayOutputStream) out).size();
+		}
+		return -1;
+	}
+
+	private TemplateMetrics getTemplateMetrics(String name) {
+		TemplateMetrics m = metrics.get(name);
+		if (m == null) {
+			if (metrics.size() >= MAX_TEMPLATES) {
+				name = OVERFLOW_NAME;
+				m = metrics.get(name);
+				if (m != null) {
+					return m;
+				}
+			}
+			m = new TemplateMetrics(name);
+			TemplateMetrics old = metrics.putIfAbsent(name, m);
+			if (old != null) {
+				return old;
+			}
+			register(m);
+		}
+		return m;
+	}
+
+	private void register(TemplateMetrics m) {
+		MBeanServer server = mbeanServer;
+		if (server == null) {
+			return;
+		}
+		try {
+			ObjectName objectName = new ObjectName("httl:type=TemplateMetrics,engine="
+					+ ObjectName.quote(engineName == null ? "" : engineName)
+					+ ",instance=" + instance
+					+ ",name=" + ObjectName.quote(m.getName()));
+			server.registerMBean(m, objectName);
+			objectNames.add(objectName);
+		} catch (Throwable e) {
+			if (logger != null && logger.isWarnEnabled()) {
+				logger.warn("Failed to register template metrics mbean, cause: " + e.getMessage(), e);
+			}
+		}
+	}
+
+}
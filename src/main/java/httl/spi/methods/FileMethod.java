@@ -20,14 +20,18 @@ import httl.Engine;
 import httl.Expression;
 import httl.Resource;
 import httl.Template;
+import httl.spi.parsers.templates.AsyncTemplate;
 import httl.util.IOUtils;
 import httl.util.StringUtils;
 import httl.util.UrlUtils;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.ParseException;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * FileMethod. (SPI, Singleton, ThreadSafe)
@@ -40,6 +44,10 @@ public class FileMethod {
 
 	private String extendsDirectory;
 
+	private Executor executor;
+
+	private int asyncTimeout;
+
 	/**
 	 * httl.properties: engine=httl.spi.engines.DefaultEngine
 	 */
@@ -57,6 +65,20 @@ public class FileMethod {
 		}
 	}
 
+	/**
+	 * httl.properties: executor=httl.spi.executors.AdaptiveExecutor
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * httl.properties: async.timeout=10000
+	 */
+	public void setAsyncTimeout(int asyncTimeout) {
+		this.asyncTimeout = asyncTimeout;
+	}
+
 	public Template $extends(String name) throws IOException, ParseException {
 		return $extends(name, (Locale) null, (String) null);
 	}
@@ -223,6 +245,39 @@ public class FileMethod {
 		return include(name, locale, encoding);
 	}
 
+	public Template includeAsync(String name) throws IOException, ParseException {
+		return async(include(name));
+	}
+
+	public Template includeAsync(String name, Map<String, Object> parameters) throws IOException, ParseException {
+		return async(include(name), asyncTimeout, null, parameters);
+	}
+
+	public Template async(Template template) {
+		return async(template, asyncTimeout, null, null);
+	}
+
+	public Template async(Template template, int timeout) {
+		return async(template, timeout, null, null);
+	}
+
+	public Template async(Template template, int timeout, String fallback) {
+		return async(template, timeout, fallback, null);
+	}
+
+	private Template async(Template template, int timeout, String fallback, Map<String, Object> parameters) {
+		if (template == null) {
+			throw new IllegalArgumentException("async template == null");
+		}
+		// 异步线程不能访问当前线程的上下文，所以复制当前变量
+		Context context = Context.getContext();
+		Map<String, Object> variables = new HashMap<String, Object>(context);
+		if (parameters != null) {
+			variables.putAll(parameters);
+		}
+		return new AsyncTemplate(template, variables, context.getOut() instanceof OutputStream, executor, timeout, fallback);
+	}
+
 	public Resource read(String name) throws IOException, ParseException {
 		return read(name, null, null);
 	}
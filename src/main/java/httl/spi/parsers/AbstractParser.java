@@ -30,17 +30,24 @@ import httl.spi.Switcher;
 import httl.spi.Translator;
 import httl.spi.parsers.templates.AbstractTemplate;
 import httl.spi.parsers.templates.AdaptiveTemplate;
+import httl.spi.parsers.templates.OutputStreamMacroTemplate;
 import httl.spi.parsers.templates.OutputStreamTemplate;
 import httl.spi.parsers.templates.ResourceTemplate;
 import httl.spi.parsers.templates.TemplateFormatter;
+import httl.spi.parsers.templates.WriterMacroTemplate;
 import httl.spi.parsers.templates.WriterTemplate;
 import httl.spi.translators.expressions.ExpressionImpl;
 import httl.util.ByteCache;
+import httl.util.ClassCache;
 import httl.util.ClassUtils;
+import httl.util.CompileStatistics;
+import httl.util.Digest;
 import httl.util.ForeachStatus;
 import httl.util.IOUtils;
 import httl.util.LocaleUtils;
 import httl.util.OrderedMap;
+import httl.util.ProfilePoint;
+import httl.util.Profiler;
 import httl.util.StringCache;
 import httl.util.StringUtils;
 import httl.util.UnsafeStringWriter;
@@ -48,6 +55,8 @@ import httl.util.UnsafeStringWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -55,7 +64,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -108,11 +119,34 @@ public abstract class AbstractParser implements Parser {
 	protected static final Pattern VAR_PATTERN = Pattern.compile("([_0-9a-zA-Z>\\]]\\s[_0-9a-zA-Z]+)\\s?[,]?\\s?");
 
 	protected static final Pattern BLANK_PATTERN = Pattern.compile("\\s+");
+
+	protected static final Pattern TEXT_WRITE_PATTERN = Pattern.compile("\t\\$output\\.write\\(" + SPECIAL + "([0-9]+)" + SPECIAL + "\\);\n");
+
+	private static final String LITERAL_CODE = "(\"([^\"\\\\]|\\\\.)*\"|'([^'\\\\]|\\\\.)*'|[0-9][0-9a-zA-Z_.]*|true|false|null)";
+
+	// 只匹配赋值为字面量的#set, 及其放入上下文的语句, 它们不会抛出异常, 静态文本可以越过它们合并
+	protected static final Pattern SET_CODE_PATTERN = Pattern.compile("\t(\\w+ = \\([^()]+\\)\\(" + LITERAL_CODE + "\\);|(\\$context|\\(\\$context\\.getParent\\(\\) != null \\? \\$context\\.getParent\\(\\) : \\$context\\))\\.put\\(\"\\w+\", " + ClassUtils.class.getName().replace(".", "\\.") + "\\.boxed\\(\\w+\\)\\);)\n");
+
+	protected static final String PROFILE_MARK = "$profile$";
+
+	protected static final Pattern PROFILE_PATTERN = Pattern.compile("\\$profile\\$\\((?:\"(\\w+)\", ([0-9]+), (\"(?:[^\"\\\\]|\\\\.)*\"))?\\)");
+
+	protected static final Pattern LOCAL_PATTERN = Pattern.compile("^\\s*([_$a-zA-Z][_$a-zA-Z0-9\\.]*(?:\\[\\])*)\\s+([_$a-zA-Z][_$a-zA-Z0-9]*)\\s*=[^=]");
+
+	protected static final String RENDER_METHOD = "$doRender";
 	
 	protected static final String CDATA_LEFT = LEFT + "11" + RIGHT;
 	
 	protected static final String CDATA_RIGHT = LEFT + "3" + RIGHT;
 
+	private static final String CDATA_START = "<![CDATA[##";
+
+	private static final String CDATA_END = "]]>";
+
+	private static final String COMMENT_START = "<!--##";
+
+	private static final String COMMENT_END = "-->";
+
 	protected static final String VAR = "var";
 
 	protected static final String SET = "set";
@@ -211,6 +245,32 @@ public abstract class AbstractParser implements Parser {
 	
 	protected Class<?> defaultParameterType;
 
+	protected boolean profile;
+
+	protected boolean reloadable;
+
+	protected int maxMethodLength;
+
+	protected boolean mergeMacros;
+
+	protected boolean filterChunked;
+
+	// 当前线程正在编译的顶层模板的合并宏状态
+	private final ThreadLocal<MacroMerger> macroMergers = new ThreadLocal<MacroMerger>();
+
+	// 子类覆盖了filterCData, filterComment或filterEscape时, filterSource仍逐个调用这些方法
+	private final boolean sourceFiltersOverridden = isOverridden("filterCData") || isOverridden("filterComment") || isOverridden("filterEscape");
+
+	// 当前线程正在编译的模板类放入ClassCache的键, 编译结束后清除未取出的类, 合并的宏计入所在模板类
+	private final ThreadLocal<List<String>> classCacheIds = new ThreadLocal<List<String>>();
+
+	// 正在解析的模板源码, 用于计算宏中剖析点在模板文件中的行号
+	private final ThreadLocal<ProfileSource> profileSources = new ThreadLocal<ProfileSource>();
+
+	// 宏类缓存, 模板修改重新加载时, 内容和位置未变的宏直接复用已编译的类
+	// 弱引用宏类, 模板移除后宏类被卸载时, 缓存项随之清除
+	private final Map<String, MacroClass> macroClasses = new ConcurrentHashMap<String, MacroClass>();
+
 	/**
 	 * httl.properties: default.parameter.type=java.lang.String
 	 */
@@ -330,6 +390,44 @@ public abstract class AbstractParser implements Parser {
 		this.textInClass = textInClass;
 	}
 
+	/**
+	 * httl.properties: profile=true
+	 */
+	public void setProfile(boolean profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * httl.properties: reloadable=true
+	 */
+	public void setReloadable(boolean reloadable) {
+		this.reloadable = reloadable;
+	}
+
+	/**
+	 * httl.properties: merge.macros=true
+	 */
+	public void setMergeMacros(boolean mergeMacros) {
+		this.mergeMacros = mergeMacros;
+	}
+
+	/**
+	 * httl.properties: filter.chunked=true
+	 * 
+	 * Render the filtered macros straight into the output and filter each written chunk,
+	 * only for the filters which give the same result on the chunks as on the whole text.
+	 */
+	public void setFilterChunked(boolean filterChunked) {
+		this.filterChunked = filterChunked;
+	}
+
+	/**
+	 * httl.properties: max.method.length=10000
+	 */
+	public void setMaxMethodLength(int maxMethodLength) {
+		this.maxMethodLength = maxMethodLength;
+	}
+
 	/**
 	 * httl.properties: remove.directive.blank=true
 	 */
@@ -433,13 +531,17 @@ public abstract class AbstractParser implements Parser {
 			Template streamTemplate = null;
 			if (isOutputWriter || ! isOutputStream) {
 				Class<?> clazz = parseClass(resource, false, 0);
+				long start = System.nanoTime();
 				writerTemplate = (Template) clazz.getConstructor(Engine.class, Interceptor.class, Switcher.class, Filter.class, Formatter.class, Map.class, Map.class)
 						.newInstance(engine, interceptor, valueSwitcher, valueFilter, formatter, functions, importMacroTemplates);
+				CompileStatistics.record(CompileStatistics.INSTANTIATE, System.nanoTime() - start);
 			}
 			if (isOutputStream) {
 				Class<?> clazz = parseClass(resource, true, 0);
+				long start = System.nanoTime();
 				streamTemplate = (Template) clazz.getConstructor(Engine.class, Interceptor.class, Switcher.class, Filter.class, Formatter.class, Map.class, Map.class)
 						.newInstance(engine, interceptor, valueSwitcher, valueFilter, formatter, functions, importMacroTemplates);
+				CompileStatistics.record(CompileStatistics.INSTANTIATE, System.nanoTime() - start);
 			}
 			if (writerTemplate != null && streamTemplate != null) {
 				return new AdaptiveTemplate(writerTemplate, streamTemplate);
@@ -458,6 +560,11 @@ public abstract class AbstractParser implements Parser {
 	}
 	
 	private String getTemplateClassName(Resource resource, boolean stream) {
+		return getTemplateClassName(resource, stream, true);
+	}
+
+	// 宏复用的键不含修改时间, 但区分编码和区域, 生成的类中固定了它们
+	private String getTemplateClassName(Resource resource, boolean stream, boolean modified) {
 		String name = resource.getName();
 		String encoding = resource.getEncoding();
 		Locale locale = resource.getLocale();
@@ -472,15 +579,62 @@ public abstract class AbstractParser implements Parser {
 			buf.append("_");
 			buf.append(locale);
 		}
-		if (lastModified > 0) {
+		if (modified && lastModified > 0) {
 			buf.append("_");
 			buf.append(lastModified);
 		}
+		if (profile) {
+			buf.append("_profile");
+		} else if (mergeMacros) {
+			buf.append("_merged");
+		}
 		buf.append(stream ? "_stream" : "_writer");
 		return TEMPLATE_CLASS_PREFIX + SYMBOL_PATTERN.matcher(buf.toString()).replaceAll("_");
 	}
 	
 	protected Class<?> parseClass(Resource resource, boolean stream, int offset) throws IOException, ParseException {
+		if (! mergeMacros || profile) {
+			return parseClass(resource, stream, offset, null);
+		}
+		if (offset > 0 || resource.getName().indexOf(POUND) >= 0) {
+			return parseClass(resource, stream, offset, macroMergers.get());
+		}
+		MacroMerger previous = macroMergers.get();
+		macroMergers.set(new MacroMerger());
+		try {
+			return parseClass(resource, stream, offset, macroMergers.get());
+		} finally {
+			if (previous == null) {
+				macroMergers.remove();
+			} else {
+				macroMergers.set(previous);
+			}
+		}
+	}
+
+	private Class<?> parseClass(Resource resource, boolean stream, int offset, MacroMerger merger) throws IOException, ParseException {
+		if (merger != null && (offset > 0 || resource.getName().indexOf(POUND) >= 0)) {
+			return doParseClass(resource, stream, offset, merger);
+		}
+		List<String> previous = classCacheIds.get();
+		List<String> ids = new ArrayList<String>();
+		classCacheIds.set(ids);
+		try {
+			return doParseClass(resource, stream, offset, merger);
+		} finally {
+			if (previous == null) {
+				classCacheIds.remove();
+			} else {
+				classCacheIds.set(previous);
+			}
+			// 编译失败或命中已编译的同名类时, 类未被取出, 清除以免不能卸载
+			for (String id : ids) {
+				ClassCache.getAndRemove(id);
+			}
+		}
+	}
+
+	private Class<?> doParseClass(Resource resource, boolean stream, int offset, MacroMerger merger) throws IOException, ParseException {
 		String name = getTemplateClassName(resource, stream);
 		try {
 			return Class.forName(name, true, Thread.currentThread().getContextClassLoader());
@@ -507,13 +661,51 @@ public abstract class AbstractParser implements Parser {
 			List<Class<?>> parameterTypes = new ArrayList<Class<?>>();
 			Map<String, Class<?>> macros = new HashMap<String, Class<?>>();
 			StringBuilder textFields = new StringBuilder();
+			long start = System.nanoTime();
 			String source = IOUtils.readToString(resource.getReader());
-			String src = source;
-			src = filterCData(src);
-			src = filterComment(src);
-			src = filterEscape(src);
-			src = doParse(resource, stream, src, translator, parameters, parameterTypes, setVariables, getVariables, types, returnTypes, macros);
-			String code = filterStatement(src, textFields, getVariables, types, new AtomicInteger(), stream, resource);
+			long read = System.nanoTime();
+			boolean isMacro = offset > 0 || resource.getName().indexOf(POUND) >= 0;
+			boolean merged = isMacro && merger != null;
+			String macroKey = null;
+			if (reloadable && isMacro && merger == null && ! profile) { // 剖析行号与宏所在位置相关, 不复用
+				macroKey = getTemplateClassName(resource, stream, false);
+				MacroClass macroClass = macroClasses.get(macroKey);
+				Class<?> type = macroClass == null ? null : macroClass.type.get();
+				if (type != null && macroClass.offset == offset && macroClass.source.equals(source)) {
+					if (logger != null && logger.isDebugEnabled()) {
+						logger.debug("Reused unchanged macro " + resource.getName() + (stream ? " for stream" : " for writer") + ", class: " + type.getName());
+					}
+					return type;
+				}
+			}
+			String src = filterSource(source);
+			List<MergedMacro> mergedMacros = null;
+			ProfileSource profileSource = null;
+			if (merger != null) {
+				merger.stack.addFirst(new ArrayList<MergedMacro>());
+				try {
+					src = doParse(resource, stream, src, translator, parameters, parameterTypes, setVariables, getVariables, types, returnTypes, macros);
+				} finally {
+					mergedMacros = merger.stack.removeFirst();
+				}
+			} else if (profile) {
+				ProfileSource parent = profileSources.get();
+				profileSource = new ProfileSource(source, isMacro && parent != null ? parent.getLine(offset) : 1);
+				profileSources.set(profileSource);
+				try {
+					src = doParse(resource, stream, src, translator, parameters, parameterTypes, setVariables, getVariables, types, returnTypes, macros);
+				} finally {
+					if (parent == null) {
+						profileSources.remove();
+					} else {
+						profileSources.set(parent);
+					}
+				}
+			} else {
+				src = doParse(resource, stream, src, translator, parameters, parameterTypes, setVariables, getVariables, types, returnTypes, macros);
+			}
+			String code = filterStatement(src, textFields, getVariables, types, merger == null ? new AtomicInteger() : merger.textSeq, stream, resource);
+			long parsed = System.nanoTime();
 			int i = name.lastIndexOf('.');
 			String packageName = i < 0 ? "" : name.substring(0, i);
 			String className = i < 0 ? name : name.substring(i + 1);
@@ -530,7 +722,7 @@ public abstract class AbstractParser implements Parser {
 			StringBuilder declare = new StringBuilder();
 			if (getVariables.contains("this")) {
 				defined.add("this");
-				declare.append("	" + Template.class.getName() + " " + ClassUtils.filterJavaKeyword("this") + " = this;\n");
+				declare.append("	" + Template.class.getName() + " " + ClassUtils.filterJavaKeyword("this") + " = " + (merged ? "$macro" : "this") + ";\n");
 			}
 			if (getVariables.contains("super")) {
 				defined.add("super");
@@ -553,9 +745,13 @@ public abstract class AbstractParser implements Parser {
 				types.put(macro, Template.class);
 				if (getVariables.contains(macro) && ! defined.contains(macro)) {
 					defined.add(macro);
-					macroFields.append("private final " + Template.class.getName() + " " + macro + ";\n");
-					macroInits.append("	" + macro + " = getMacros().get(\"" + macro + "\");\n");
-					declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", this." + macro + ");\n");
+					if (merged) {
+						declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", (" + Template.class.getName() + ") $macro.getMacros().get(\"" + macro + "\"));\n");
+					} else {
+						macroFields.append("private final " + Template.class.getName() + " " + macro + ";\n");
+						macroInits.append("	" + macro + " = getMacros().get(\"" + macro + "\");\n");
+						declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", this." + macro + ");\n");
+					}
 				}
 			}
 			if (importTypes != null && importTypes.size() > 0) {
@@ -570,9 +766,13 @@ public abstract class AbstractParser implements Parser {
 			for (String macro : importMacroTemplates.keySet()) {
 				if (getVariables.contains(macro) && ! defined.contains(macro)) {
 					defined.add(macro);
-					macroFields.append("private final " + Template.class.getName() + " " + macro + ";\n");
-					macroInits.append("	" + macro + " = getImportMacros().get(\"" + macro + "\");\n");
-					declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", this." + macro + ");\n");
+					if (merged) {
+						declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", (" + Template.class.getName() + ") getImportMacros().get(\"" + macro + "\"));\n");
+					} else {
+						macroFields.append("private final " + Template.class.getName() + " " + macro + ";\n");
+						macroInits.append("	" + macro + " = getImportMacros().get(\"" + macro + "\");\n");
+						declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", this." + macro + ");\n");
+					}
 				}
 			}
 			for (String var : setVariables) {
@@ -613,19 +813,48 @@ public abstract class AbstractParser implements Parser {
 			}
 			
 			String methodCode = statusInit.toString() + declare + code;
+			String renderCode = methodCode;
+			StringBuilder renderMethods = new StringBuilder();
+			if (profile) {
+				methodCode = filterProfile(methodCode, profileSource, resource.getName(), textFields);
+				renderCode = methodCode;
+			} else if (! merged && maxMethodLength > 0 && code.length() > maxMethodLength) {
+				renderCode = statusInit.toString() + declare + splitMethod(statusInit.toString() + declare, code, stream, renderMethods);
+			}
 			
-			if (sourceInClass) {
-				textFields.append("private static final String $SRC = \"" + StringUtils.escapeString(source) + "\";\n");
-				textFields.append("private static final String $CODE = \"" + StringUtils.escapeString(methodCode) + "\";\n");
-			} else {
-				String sourceCodeId = StringCache.put(source);
-				textFields.append("private static final String $SRC = " + StringCache.class.getName() +  ".getAndRemove(\"" + sourceCodeId + "\");\n");
-				String methodCodeId = StringCache.put(methodCode);
-				textFields.append("private static final String $CODE = " + StringCache.class.getName() +  ".getAndRemove(\"" + methodCodeId + "\");\n");
+			if (merged) {
+				int index = merger.macroSeq.incrementAndGet();
+				String prefix = "$M" + index + "_";
+				appendResourceFields(textFields, prefix, source, methodCode, parameters, parameterTypes, returnTypes);
+				StringBuilder method = new StringBuilder();
+				method.append("private void " + prefix + "doRender(" + Template.class.getName() + " $macro, " 
+						+ Context.class.getName() + " $context, " + (stream ? OutputStream.class.getName() : Writer.class.getName()) 
+						+ " $output) throws " + Exception.class.getName() + " {\n");
+				method.append(methodCode);
+				method.append("}\n");
+				method.append("\n");
+				merger.stack.getFirst().add(new MergedMacro(index, resource.getName(), offset, textFields.toString(), method.toString(), mergedMacros));
+				CompileStatistics.record(CompileStatistics.READ, read - start);
+				CompileStatistics.record(CompileStatistics.PARSE, parsed - read);
+				return stream ? OutputStreamMacroTemplate.class : WriterMacroTemplate.class;
+			}
+			appendResourceFields(textFields, "$", source, methodCode, parameters, parameterTypes, returnTypes);
+			StringBuilder mergedMethods = new StringBuilder();
+			Map<String, Class<?>> macroTypes = macros;
+			if (mergedMacros != null && mergedMacros.size() > 0) {
+				macroTypes = new HashMap<String, Class<?>>(macros);
+				for (MergedMacro mergedMacro : mergedMacros) {
+					macroTypes.remove(mergedMacro.var);
+				}
+				appendMergedMacros(textFields, mergedMethods, mergedMacros, stream);
 			}
 			
-			textFields.append("private static final Map $PTS = " + toTypeCode(parameters, parameterTypes) + ";\n");
-			textFields.append("private static final Map $CTS = " + toTypeCode(returnTypes) + ";\n");
+			String macroTypesCode = toTypeCode(macroTypes);
+			if (macroTypesCode.indexOf(ClassCache.class.getName()) >= 0) {
+				// 只初始化一次, 以取出隐藏类
+				textFields.append("private static final Map $MTS = " + macroTypesCode + ";\n");
+				macroTypesCode = "$MTS";
+			}
 			
 			String sorceCode = "package " + packageName + ";\n" 
 					+ "\n"
@@ -655,9 +884,11 @@ public abstract class AbstractParser implements Parser {
 					+ "protected void doRender(" + Context.class.getName() + " $context, " 
 					+ (stream ? OutputStream.class.getName() : Writer.class.getName())
 					+ " $output) throws " + Exception.class.getName() + " {\n" 
-					+ methodCode
+					+ renderCode
 					+ "}\n"
 					+ "\n"
+					+ renderMethods
+					+ mergedMethods
 					+ "public " + String.class.getSimpleName() + " getName() {\n"
 					+ "	return \"" + resource.getName() + "\";\n"
 					+ "}\n"
@@ -695,7 +926,7 @@ public abstract class AbstractParser implements Parser {
 					+ "}\n"
 					+ "\n"
 					+ "public " + Map.class.getName() + " getMacroTypes() {\n"
-					+ "	return " + toTypeCode(macros) + ";\n"
+					+ "	return " + macroTypesCode + ";\n"
 					+ "}\n"
 					+ "\n"
 					+ "public boolean isMacro() {\n"
@@ -707,15 +938,44 @@ public abstract class AbstractParser implements Parser {
 					+ "}\n"
 					+ "\n"
 					+ "}\n";
+			long generated = System.nanoTime();
+			CompileStatistics.record(CompileStatistics.READ, read - start);
+			CompileStatistics.record(CompileStatistics.PARSE, parsed - read);
+			CompileStatistics.record(CompileStatistics.GENERATE, generated - parsed);
 			if (logger != null && logger.isDebugEnabled()) {
 				logger.debug("\n================================\n" + resource.getName() + "\n================================\n" + sorceCode + "\n================================\n");
 			}
-			return compiler.compile(sorceCode);
+			Class<?> cls = compiler.compile(sorceCode);
+			long compiled = System.nanoTime();
+			if (! classCacheIds.get().isEmpty()) {
+				initClassCache(cls);
+			}
+			if (macroKey != null) {
+				removeUnloadedMacros();
+				macroClasses.put(macroKey, new MacroClass(source, offset, cls));
+			}
+			if (logger != null && logger.isDebugEnabled()) {
+				logger.debug("Parsed template " + resource.getName() + (stream ? " for stream" : " for writer") + ": " 
+						+ CompileStatistics.toEvent(new String[] { CompileStatistics.READ, CompileStatistics.PARSE, CompileStatistics.GENERATE, CompileStatistics.COMPILE + "+" + CompileStatistics.LOAD }, 
+								new long[] { read - start, parsed - read, generated - parsed, compiled - generated }));
+			}
+			return cls;
 		} catch (Exception e) {
 			throw new ParseException("Filed to parse template: " + resource.getName() + ", cause: " + ClassUtils.toString(e), 0);
 		}
 	}
 	
+	// 初始化模板类以取出其引用的类
+	private static void initClassCache(Class<?> cls) {
+		try {
+			Field field = cls.getDeclaredField("$SRC");
+			field.setAccessible(true);
+			field.get(null);
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
 	private String getTypeCode(Class<?> type, String var) {
 		String typeName = getTypeName(type);
 		if (type.isPrimitive()) {
@@ -737,6 +997,20 @@ public abstract class AbstractParser implements Parser {
 		return typeName;
 	}
 
+	// 隐藏类, 及定义在各自类加载器中的模板类, 不能按类名引用, 通过ClassCache传入, 编译时也无需其字节码
+	private String toClassCode(Class<?> type) {
+		if (type.getCanonicalName() == null 
+				|| (Template.class.isAssignableFrom(type) && type.getClassLoader() != Template.class.getClassLoader())) {
+			String id = ClassCache.put(type);
+			List<String> ids = classCacheIds.get();
+			if (ids != null) {
+				ids.add(id);
+			}
+			return ClassCache.class.getName() + ".getAndRemove(\"" + id + "\")";
+		}
+		return type.getCanonicalName() + ".class";
+	}
+
 	protected String toTypeCode(Map<String, Class<?>> types) {
 		StringBuilder keyBuf = new StringBuilder();
 		StringBuilder valueBuf = new StringBuilder();
@@ -758,8 +1032,7 @@ public abstract class AbstractParser implements Parser {
 				keyBuf.append(StringUtils.escapeString(entry.getKey()));
 				keyBuf.append("\"");
 				
-				valueBuf.append(entry.getValue().getCanonicalName());
-				valueBuf.append(".class");;
+				valueBuf.append(toClassCode(entry.getValue()));
 			}
 			keyBuf.append("}");
 			valueBuf.append("}");
@@ -809,8 +1082,7 @@ public abstract class AbstractParser implements Parser {
 				} else {
 					buf.append(", ");
 				}
-				buf.append(cls.getCanonicalName());
-				buf.append(".class");
+				buf.append(toClassCode(cls));
 			}
 			buf.append("}");
 		}
@@ -861,37 +1133,565 @@ public abstract class AbstractParser implements Parser {
 		return buf.toString();
 	}
 	
+	private boolean isOverridden(String method) {
+		for (Class<?> cls = getClass(); cls != null && cls != AbstractParser.class; cls = cls.getSuperclass()) {
+			try {
+				cls.getDeclaredMethod(method, String.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Filter the CDATA, comment and escape in one pass, same as filterCData, filterComment, then filterEscape.
+	 * 
+	 * If a subclass overrides any of these methods, they are called in that order instead.
+	 * 
+	 * @param source - template source
+	 * @return filtered source
+	 */
+	protected String filterSource(String source) {
+		if (sourceFiltersOverridden) {
+			return filterEscape(filterComment(filterCData(source)));
+		}
+		int length = source.length();
+		StringBuilder buf = null;
+		int last = 0;
+		int i = 0;
+		while (i < length) {
+			char ch = source.charAt(i);
+			int end = -1;
+			if (ch == '<') {
+				if (source.startsWith(CDATA_START, i)) {
+					int close = source.indexOf(CDATA_END, i + CDATA_START.length());
+					if (close >= 0) {
+						end = close + CDATA_END.length();
+						buf = appendSkipped(buf, source, last, i);
+						buf.append(CDATA_LEFT);
+						for (int j = i + CDATA_START.length(); j < close; j ++) {
+							char c = source.charAt(j);
+							buf.append(c == POUND ? POUND_SPECIAL : (c == DOLLAR ? DOLLAR_SPECIAL : c));
+						}
+						buf.append(CDATA_RIGHT);
+					}
+				} else if (source.startsWith(COMMENT_START, i)) {
+					int close = source.indexOf(COMMENT_END, i + COMMENT_START.length());
+					if (close >= 0) {
+						end = close + COMMENT_END.length();
+						buf = appendSkipped(buf, source, last, i);
+						buf.append(LEFT);
+						buf.append(end - i);
+						buf.append(RIGHT);
+					}
+				}
+			} else if (ch == '\\') {
+				int j = i + 1;
+				while (j < length && source.charAt(j) == '\\') {
+					j ++;
+				}
+				if (j < length && (source.charAt(j) == POUND || source.charAt(j) == DOLLAR)) {
+					// 奇数个反斜杠转义指令符，偶数个反斜杠输出一半
+					int slashes = j - i;
+					int half = slashes / 2;
+					char symbol = source.charAt(j);
+					if (slashes % 2 != 0) {
+						symbol = symbol == DOLLAR ? DOLLAR_SPECIAL : POUND_SPECIAL;
+					}
+					end = j + 1;
+					buf = appendSkipped(buf, source, last, i);
+					buf.append(LEFT);
+					buf.append(slashes - half);
+					buf.append(RIGHT);
+					for (int k = 0; k < half; k ++) {
+						buf.append('\\');
+					}
+					buf.append(symbol);
+				} else {
+					i = j;
+					continue;
+				}
+			}
+			if (end < 0) {
+				i ++;
+			} else {
+				i = end;
+				last = end;
+			}
+		}
+		if (buf == null) {
+			return source;
+		}
+		buf.append(source, last, length);
+		return buf.toString();
+	}
+
+	private static StringBuilder appendSkipped(StringBuilder buf, String source, int begin, int end) {
+		if (buf == null) {
+			buf = new StringBuilder(source.length() + 64);
+		}
+		buf.append(source, begin, end);
+		return buf;
+	}
+
 	protected String filterStatement(String message, StringBuilder textFields, Set<String> getVariables, Map<String, Class<?>> types, AtomicInteger seq, boolean stream, Resource resource) throws IOException, ParseException {
 		int offset = 0;
 		message = RIGHT + message + LEFT;
-		StringBuffer buf = new StringBuffer();
-		Matcher matcher = DIRECTIVE_PATTERN.matcher(message);
-		while (matcher.find()) {
-			String text = matcher.group(1);
-			String len = matcher.group(2);
-			String next = matcher.group(3);
+		List<String> texts = new ArrayList<String>();
+		StringBuilder buf = new StringBuilder(message.length());
+		int last = 0;
+		int begin = 0;
+		// 逐段扫描"RIGHT文本LEFT长度指令"，同DIRECTIVE_PATTERN
+		while ((begin = message.indexOf(RIGHT, begin)) >= 0) {
+			int textStart = begin + RIGHT.length();
+			int special = message.indexOf(SPECIAL, textStart);
+			if (special < 0) {
+				break;
+			}
+			if (special - 1 < textStart || message.charAt(special - 1) != '<') {
+				begin ++;
+				continue;
+			}
+			String text = message.substring(textStart, special - 1);
+			int end = special + 1;
 			int length = 0;
-			if (len != null && len.length() > 0) {
-				length = Integer.parseInt(len);
+			int lengthStart = end;
+			while (end < message.length() && message.charAt(end) >= '0' && message.charAt(end) <= '9') {
+				end ++;
+			}
+			if (end > lengthStart) {
+				length = Integer.parseInt(message.substring(lengthStart, end));
 			}
-			if (next == null) {
-				next = "";
+			int nextStart = end;
+			while (end < message.length() && message.charAt(end) >= 'a' && message.charAt(end) <= 'z') {
+				end ++;
 			}
+			String next = message.substring(nextStart, end);
+			buf.append(message, last, begin);
 			if ("else".equals(next)) {
-				if (text != null && text.trim().length() > 0) {
+				if (text.trim().length() > 0) {
 					throw new ParseException("Found invaild text \"" + text.trim() + "\" before " + next + " directive!", offset);
 				}
-				matcher.appendReplacement(buf, next);
+				buf.append(next);
 			} else {
-				matcher.appendReplacement(buf, Matcher.quoteReplacement("	$output.write(" + filterExpression(text, translator, textFields, getVariables, types, offset, seq, stream, resource) + ");\n" + next));
-			}
-			if (text != null) {
-				offset += text.length();
+				buf.append("	$output.write(");
+				buf.append(filterExpression(text, translator, texts, getVariables, types, offset, stream, resource));
+				buf.append(");\n");
+				buf.append(next);
 			}
+			offset += text.length();
 			offset += length;
+			last = end;
+			begin = end;
 		}
-		matcher.appendTail(buf);
-		return buf.toString().replace("	$output.write();\n", "");
+		buf.append(message, last, message.length());
+		String code = buf.toString().replace("	$output.write();\n", "");
+		return mergeText(code, texts, textFields, seq, stream);
+	}
+
+	private void appendResourceFields(StringBuilder textFields, String prefix, String source, String methodCode, 
+			List<String> parameters, List<Class<?>> parameterTypes, Map<String, Class<?>> returnTypes) {
+		if (sourceInClass) {
+			textFields.append("private static final String " + prefix + "SRC = \"" + StringUtils.escapeString(source) + "\";\n");
+			textFields.append("private static final String " + prefix + "CODE = \"" + StringUtils.escapeString(methodCode) + "\";\n");
+		} else {
+			String sourceCodeId = StringCache.put(source);
+			textFields.append("private static final String " + prefix + "SRC = " + StringCache.class.getName() +  ".getAndRemove(\"" + sourceCodeId + "\");\n");
+			String methodCodeId = StringCache.put(methodCode);
+			textFields.append("private static final String " + prefix + "CODE = " + StringCache.class.getName() +  ".getAndRemove(\"" + methodCodeId + "\");\n");
+		}
+		textFields.append("private static final Map " + prefix + "PTS = " + toTypeCode(parameters, parameterTypes) + ";\n");
+		textFields.append("private static final Map " + prefix + "CTS = " + toTypeCode(returnTypes) + ";\n");
+	}
+
+	// 将合并的宏(含嵌套宏)生成为模板类的方法, 由doRenderMacro按序号分派, initMergedMacros创建宏模板
+	private void appendMergedMacros(StringBuilder textFields, StringBuilder methods, List<MergedMacro> mergedMacros, boolean stream) {
+		String output = stream ? OutputStream.class.getName() : Writer.class.getName();
+		String macroType = stream ? OutputStreamMacroTemplate.class.getName() : WriterMacroTemplate.class.getName();
+		StringBuilder cases = new StringBuilder();
+		StringBuilder inits = new StringBuilder();
+		appendMergedMacros(textFields, methods, cases, inits, mergedMacros, "$macros", macroType);
+		methods.append("protected void doRenderMacro(int $index, " + Template.class.getName() + " $macro, " 
+				+ Context.class.getName() + " $context, " + output + " $output) throws " + Exception.class.getName() + " {\n");
+		methods.append("	switch ($index) {\n");
+		methods.append(cases);
+		methods.append("	default: super.doRenderMacro($index, $macro, $context, $output);\n");
+		methods.append("	}\n");
+		methods.append("}\n");
+		methods.append("\n");
+		methods.append("protected void initMergedMacros(" + Map.class.getName() + " $macros, " 
+				+ Engine.class.getName() + " engine, " 
+				+ Interceptor.class.getName() + " interceptor, " 
+				+ Switcher.class.getName() + " switcher, " 
+				+ Filter.class.getName() + " filter, "
+				+ Formatter.class.getName() + " formatter, "
+				+ Map.class.getName() + " functions, " 
+				+ Map.class.getName() + " importMacros) {\n");
+		methods.append(inits);
+		methods.append("}\n");
+		methods.append("\n");
+	}
+
+	private void appendMergedMacros(StringBuilder textFields, StringBuilder methods, StringBuilder cases, StringBuilder inits, 
+			List<MergedMacro> mergedMacros, String map, String macroType) {
+		for (MergedMacro mergedMacro : mergedMacros) {
+			String prefix = "$M" + mergedMacro.index + "_";
+			textFields.append(mergedMacro.fields);
+			methods.append(mergedMacro.method);
+			cases.append("	case " + mergedMacro.index + ": " + prefix + "doRender($macro, $context, $output); break;\n");
+			String nested = Collections.class.getName() + ".EMPTY_MAP";
+			if (mergedMacro.macros.size() > 0) {
+				nested = prefix + "macros";
+				inits.append("	" + Map.class.getName() + " " + nested + " = new " + HashMap.class.getName() + "();\n");
+				appendMergedMacros(textFields, methods, cases, inits, mergedMacro.macros, nested, macroType);
+				nested = Collections.class.getName() + ".unmodifiableMap(" + nested + ")";
+			}
+			inits.append("	" + map + ".put(\"" + mergedMacro.var + "\", new " + macroType + "(this, " + mergedMacro.index 
+					+ ", \"" + StringUtils.escapeString(mergedMacro.name) + "\", " + prefix + "SRC, " + prefix + "CODE, " + prefix + "PTS, " + prefix + "CTS, " 
+					+ mergedMacro.offset + ", " + nested + ", engine, interceptor, switcher, filter, formatter, functions, importMacros));\n");
+		}
+	}
+
+	// 将超长的渲染代码按语句拆分到多个私有方法, 避免超出JIT编译(HugeMethodLimit)及64K方法长度限制。
+	// 局部变量作为参数传入, 拆分方法中赋值的局部变量(如#set及过滤器切换)以数组返回, 调用后写回, 超长的循环体递归拆分。
+	// 含return, break或continue的语句保留在原方法中, foreach循环与其后恢复状态的语句不拆开, foreach状态变量在循环结束时已恢复。
+	private String splitMethod(String declare, String code, boolean stream, StringBuilder methods) {
+		String parameters = Context.class.getName() + " $context, " + (stream ? OutputStream.class.getName() : Writer.class.getName()) + " $output";
+		Map<String, String> locals = new LinkedHashMap<String, String>();
+		for (String line : declare.split("\n")) {
+			Matcher matcher = LOCAL_PATTERN.matcher(line);
+			if (matcher.find()) {
+				locals.put(matcher.group(2), matcher.group(1));
+			}
+		}
+		return splitBlock(code, locals, parameters, methods, new AtomicInteger());
+	}
+
+	private String splitBlock(String code, Map<String, String> outerLocals, String parameters, StringBuilder methods, AtomicInteger seq) {
+		if (outerLocals.size() > 100) { // 方法参数最多255个slot, long及double占两个
+			return code;
+		}
+		Map<String, String> locals = new LinkedHashMap<String, String>(outerLocals);
+		List<String> units = splitStatements(code);
+		String restore = foreachVariable + " = ";
+		StringBuilder buf = new StringBuilder();
+		StringBuilder chunk = new StringBuilder();
+		for (int i = 0; i < units.size(); i ++) {
+			String unit = units.get(i);
+			// foreach循环与其后恢复状态的语句不能拆开
+			while (i < units.size() - 1 && units.get(i + 1).trim().startsWith(restore)) {
+				i ++;
+				unit = unit + units.get(i);
+			}
+			boolean pinned = containsWord(unit, "return") || containsWord(unit, "break") || containsWord(unit, "continue");
+			Matcher matcher = LOCAL_PATTERN.matcher(unit);
+			boolean declared = ! pinned && matcher.find() && ! unit.trim().endsWith("}");
+			if (declared) {
+				pinned = true;
+			} else if (unit.length() > maxMethodLength) {
+				String loop = splitLoop(unit, locals, parameters, methods, seq);
+				if (loop != null) {
+					pinned = true;
+					unit = loop;
+				}
+			}
+			if (pinned || (chunk.length() > 0 && chunk.length() + unit.length() > maxMethodLength)) {
+				appendMethod(buf, chunk, methods, locals, parameters, seq);
+			}
+			if (declared) {
+				// 局部变量声明保留在原方法中, 其后的语句将其作为参数传入
+				locals.put(matcher.group(2), matcher.group(1));
+			}
+			if (pinned) {
+				buf.append(unit);
+			} else {
+				chunk.append(unit);
+			}
+		}
+		appendMethod(buf, chunk, methods, locals, parameters, seq);
+		return buf.toString();
+	}
+
+	// 拆分超长的循环体, 循环头中声明的迭代变量作为拆分方法的参数, 非循环语句返回null
+	private String splitLoop(String unit, Map<String, String> locals, String parameters, StringBuilder methods, AtomicInteger seq) {
+		String trimmed = unit.trim();
+		int open = unit.indexOf('\n');
+		if (! (trimmed.startsWith("for (") || trimmed.startsWith("while (")) 
+				|| open < 0 || unit.charAt(open - 1) != '{') {
+			return null;
+		}
+		int close = getBlockEnd(unit, open - 1);
+		if (close < 0) {
+			return null;
+		}
+		int end = unit.lastIndexOf('\n', close) + 1;
+		Map<String, String> loopLocals = new LinkedHashMap<String, String>(locals);
+		Matcher matcher = LOCAL_PATTERN.matcher(trimmed.substring(trimmed.indexOf('(') + 1));
+		if (matcher.find()) {
+			loopLocals.put(matcher.group(2), matcher.group(1));
+		}
+		return unit.substring(0, open + 1) + splitBlock(unit.substring(open + 1, end), loopLocals, parameters, methods, seq) + unit.substring(end);
+	}
+
+	// 查找与指定左括号匹配的右括号位置, 跳过字符串及字符常量
+	private static int getBlockEnd(String code, int open) {
+		int depth = 0;
+		char quote = 0;
+		for (int i = open; i < code.length(); i ++) {
+			char ch = code.charAt(i);
+			if (quote != 0) {
+				if (ch == '\\') {
+					i ++;
+				} else if (ch == quote) {
+					quote = 0;
+				}
+			} else if (ch == '\"' || ch == '\'') {
+				quote = ch;
+			} else if (ch == '{') {
+				depth ++;
+			} else if (ch == '}') {
+				depth --;
+				if (depth == 0) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void appendMethod(StringBuilder buf, StringBuilder chunk, StringBuilder methods, Map<String, String> locals, String parameters, AtomicInteger seq) {
+		if (chunk.length() > 0) {
+			if (chunk.length() < maxMethodLength / 8) {
+				buf.append(chunk);
+			} else {
+				String method = RENDER_METHOD + seq.incrementAndGet();
+				StringBuilder params = new StringBuilder(parameters);
+				StringBuilder arguments = new StringBuilder("$context, $output");
+				List<String> assigned = new ArrayList<String>();
+				for (Map.Entry<String, String> entry : locals.entrySet()) {
+					String var = entry.getKey();
+					params.append(", " + entry.getValue() + " " + var);
+					arguments.append(", " + var);
+					if (! foreachVariable.equals(var) && Pattern.compile("(?<![_$a-zA-Z0-9\\.])" + Pattern.quote(var) 
+							+ "\\s*(?:=[^=]|\\+\\+|--|[-+*/%&|^]=|<<=|>>>?=)|(?:\\+\\+|--)\\s*" + Pattern.quote(var) + "(?![_$a-zA-Z0-9])").matcher(chunk).find()) {
+						assigned.add(var);
+					}
+				}
+				String result = "$locals" + seq.get();
+				if (assigned.size() == 0) {
+					buf.append("	" + method + "(" + arguments + ");\n");
+				} else {
+					buf.append("	" + Object.class.getName() + "[] " + result + " = " + method + "(" + arguments + ");\n");
+					for (int i = 0; i < assigned.size(); i ++) {
+						String var = assigned.get(i);
+						String type = locals.get(var);
+						String boxed = getBoxedTypeName(type);
+						buf.append("	" + var + " = " + (boxed == null ? "(" + type + ") " + result + "[" + i + "]" 
+								: ClassUtils.class.getName() + ".unboxed((" + boxed + ") " + result + "[" + i + "])") + ";\n");
+					}
+				}
+				methods.append("private " + (assigned.size() == 0 ? "void" : Object.class.getName() + "[]") + " " + method + "(" + params + ") throws " + Exception.class.getName() + " {\n");
+				methods.append(chunk);
+				if (assigned.size() > 0) {
+					methods.append("	return new " + Object.class.getName() + "[] {");
+					for (int i = 0; i < assigned.size(); i ++) {
+						String var = assigned.get(i);
+						methods.append(i == 0 ? " " : ", ");
+						methods.append(getBoxedTypeName(locals.get(var)) == null ? var : ClassUtils.class.getName() + ".boxed(" + var + ")");
+					}
+					methods.append(" };\n");
+				}
+				methods.append("}\n");
+				methods.append("\n");
+			}
+			chunk.setLength(0);
+		}
+	}
+
+	private static String getBoxedTypeName(String type) {
+		for (Class<?> primitive : new Class<?>[] { boolean.class, char.class, byte.class, short.class, int.class, long.class, float.class, double.class }) {
+			if (primitive.getName().equals(type)) {
+				return ClassUtils.getBoxedClass(primitive).getName();
+			}
+		}
+		return null;
+	}
+
+	// 按顶层语句切分代码, 跳过字符串及字符常量中的括号
+	private static List<String> splitStatements(String code) {
+		List<String> units = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		char quote = 0;
+		for (int i = 0; i < code.length(); i ++) {
+			char ch = code.charAt(i);
+			if (quote != 0) {
+				if (ch == '\\') {
+					i ++;
+				} else if (ch == quote) {
+					quote = 0;
+				}
+			} else if (ch == '\"' || ch == '\'') {
+				quote = ch;
+			} else if (ch == '{' || ch == '(') {
+				depth ++;
+			} else if (ch == '}' || ch == ')') {
+				depth --;
+			} else if (ch == '\n' && depth == 0) {
+				String unit = code.substring(start, i + 1);
+				String trimmed = unit.trim();
+				if (trimmed.length() == 0 || trimmed.endsWith(";") || trimmed.endsWith("}")) {
+					units.add(unit);
+					start = i + 1;
+				}
+			}
+		}
+		if (start < code.length()) {
+			units.add(code.substring(start));
+		}
+		return units;
+	}
+
+	// 判断代码中是否含有指定的关键字, 跳过字符串及字符常量
+	private static boolean containsWord(String code, String word) {
+		char quote = 0;
+		for (int i = 0; i < code.length(); i ++) {
+			char ch = code.charAt(i);
+			if (quote != 0) {
+				if (ch == '\\') {
+					i ++;
+				} else if (ch == quote) {
+					quote = 0;
+				}
+			} else if (ch == '\"' || ch == '\'') {
+				quote = ch;
+			} else if (code.startsWith(word, i)
+					&& (i == 0 || ! Character.isJavaIdentifierPart(code.charAt(i - 1)))
+					&& (i + word.length() >= code.length() || ! Character.isJavaIdentifierPart(code.charAt(i + word.length())))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// 将生成代码中的剖析标记提升为静态字段，并按foreach的嵌套关系确定父节点，行号按模板文件计算，跳过字符串中的标记。
+	// 剖析点按源码摘要区分版本，模板修改后重新编译时替换旧版本的剖析点。
+	private String filterProfile(String code, ProfileSource source, String name, StringBuilder textFields) {
+		String pointType = ProfilePoint.class.getName();
+		String template = "\"" + StringUtils.escapeString(name) + "\", \"" + Digest.getMD5(source.source) + "\"";
+		textFields.append("private static final " + pointType + " $PROF0 = " + Profiler.class.getName() + ".getPoint(null, " 
+				+ template + ", \"" + Profiler.TEMPLATE + "\", 1, 0, \"" + StringUtils.escapeString(name) + "\");\n");
+		LinkedList<String> stack = new LinkedList<String>();
+		stack.addFirst("$PROF0");
+		StringBuilder buf = new StringBuilder(code.length() + 100);
+		buf.append("	long $profile = System.nanoTime();\n");
+		buf.append("	try {\n");
+		Matcher matcher = PROFILE_PATTERN.matcher(code);
+		int length = code.length();
+		int seq = 0;
+		int last = 0;
+		char quote = 0;
+		for (int i = 0; i < length; i ++) {
+			char ch = code.charAt(i);
+			if (quote != 0) {
+				if (ch == '\\') {
+					i ++;
+				} else if (ch == quote) {
+					quote = 0;
+				}
+				continue;
+			} else if (ch == '\"' || ch == '\'') {
+				quote = ch;
+				continue;
+			} else if (ch != '$' || ! matcher.region(i, length).lookingAt()) {
+				continue;
+			}
+			buf.append(code, last, i);
+			last = matcher.end();
+			i = last - 1;
+			String kind = matcher.group(1);
+			if (kind == null) {
+				if (stack.size() > 1) {
+					stack.removeFirst();
+				}
+				continue;
+			}
+			int offset = Integer.parseInt(matcher.group(2));
+			String var = "$PROF" + (++ seq);
+			textFields.append("private static final " + pointType + " " + var + " = " + Profiler.class.getName() + ".getPoint(" 
+					+ stack.getFirst() + ", " + template + ", \"" + kind + "\", " + source.getLine(offset) + ", " + offset + ", " + matcher.group(3) + ");\n");
+			buf.append(var);
+			if (Profiler.FOREACH.equals(kind)) {
+				stack.addFirst(var);
+			}
+		}
+		buf.append(code, last, length);
+		buf.append("	} finally {\n");
+		buf.append("	$PROF0.record(System.nanoTime() - $profile);\n");
+		buf.append("	}\n");
+		return buf.toString();
+	}
+
+	protected String getProfileCode(String kind, int offset, String label) {
+		return PROFILE_MARK + "(\"" + kind + "\", " + offset + ", \"" + StringUtils.escapeString(label) + "\")";
+	}
+
+	// 合并相邻的静态文本输出，包括中间隔着#set等无输出指令的文本，每段合并后的文本只生成一个字段和一次write调用。
+	private String mergeText(String code, List<String> texts, StringBuilder textFields, AtomicInteger seq, boolean stream) {
+		StringBuilder buf = new StringBuilder(code.length());
+		StringBuilder text = new StringBuilder();
+		int begin = 0;
+		int length = code.length();
+		while (begin < length) {
+			int end = code.indexOf('\n', begin);
+			end = end < 0 ? length : end + 1;
+			String line = code.substring(begin, end);
+			begin = end;
+			Matcher matcher = TEXT_WRITE_PATTERN.matcher(line);
+			if (matcher.matches()) {
+				text.append(texts.get(Integer.parseInt(matcher.group(1))));
+			} else if (text.length() == 0 || isOutputFree(line)) {
+				buf.append(line);
+			} else {
+				appendTextCode(buf, text.toString(), textFields, seq, stream);
+				text.setLength(0);
+				buf.append(line);
+			}
+		}
+		appendTextCode(buf, text.toString(), textFields, seq, stream);
+		return buf.toString();
+	}
+
+	// 不产生输出、不改变控制流且不会抛出异常的语句，静态文本可以越过它合并。
+	private boolean isOutputFree(String line) {
+		return SET_CODE_PATTERN.matcher(line).matches() 
+				|| line.startsWith("	" + filterVariable + " = enter(\"");
+	}
+
+	private void appendTextCode(StringBuilder buf, String txt, StringBuilder textFields, AtomicInteger seq, boolean stream) {
+		if (txt.length() == 0) {
+			return;
+		}
+		String var = "$TXT" + seq.incrementAndGet();
+		if (stream) {
+			if (textInClass) {
+				textFields.append("private static final byte[] " + var + " = new byte[] {" + StringUtils.toByteString(StringUtils.toBytes(txt, outputEncoding)) + "};\n");
+			} else {
+				String txtId = ByteCache.put(StringUtils.toBytes(txt, outputEncoding));
+				textFields.append("private static final byte[] " + var + " = " + ByteCache.class.getName() +  ".getAndRemove(\"" + txtId + "\");\n");
+			}
+		} else {
+			if (textInClass) {
+				textFields.append("private static final String " + var + " = \"" + StringUtils.escapeString(txt) + "\";\n");
+			} else {
+				String txtId = StringCache.put(txt);
+				textFields.append("private static final String " + var + " = " + StringCache.class.getName() +  ".getAndRemove(\"" + txtId + "\");\n");
+			}
+		}
+		buf.append("	$output.write(");
+		buf.append(var);
+		buf.append(");\n");
 	}
 	
 	protected String getExpressionCode(String symbol, String code, Class<?> returnType, boolean stream, Set<String> getVariables) {
@@ -902,6 +1702,14 @@ public abstract class AbstractParser implements Parser {
 			buf.append("(");
 			buf.append(code);
 			buf.append(").render($output);\n");
+		} else if (filterChunked && Template.class.isAssignableFrom(returnType)) {
+			// 宏直接渲染到当前输出，逐段经过过滤器写出，不经过evaluate()再format()和serialize()
+			getVariables.add(filterVariable);
+			buf.append("	doFilterRender(");
+			buf.append(filterVariable);
+			buf.append(", ");
+			buf.append(code);
+			buf.append(", $output);\n");
 		} else if (nofilter && Resource.class.isAssignableFrom(returnType)) {
 			buf.append("	");
 			buf.append(IOUtils.class.getName());
@@ -913,6 +1721,19 @@ public abstract class AbstractParser implements Parser {
 				buf.append(").getReader()");
 			}
 			buf.append(", $output);\n");
+		} else if (int.class.equals(returnType) || long.class.equals(returnType)
+				|| float.class.equals(returnType) || double.class.equals(returnType)) {
+			// 数字直接写出字符或字节，不经过String.valueOf()和serialize()
+			String filter = "null";
+			if (! nofilter) {
+				getVariables.add(filterVariable);
+				filter = filterVariable;
+			}
+			buf.append("	getFormatter().write($output, ");
+			buf.append(code);
+			buf.append(", ");
+			buf.append(filter);
+			buf.append(");\n");
 		} else {
 			if (Expression.class.isAssignableFrom(returnType)) {
 				code = "(" + code + ").evaluate()";
@@ -922,6 +1743,7 @@ public abstract class AbstractParser implements Parser {
 				returnType = String.class;
 			}
 			String pre = "";
+			String post = "";
 			boolean direct = false;
 			if (nofilter) {
 				if (stream) {
@@ -931,11 +1753,20 @@ public abstract class AbstractParser implements Parser {
 				}
 			}
 			if (! direct) {
-				if (nofilter && stream && Object.class.equals(returnType)) {
+				if (nofilter && Object.class.equals(returnType)) {
 					String var = "__obj" + TMP_VAR_SEQ.getAndIncrement();
-					pre = "	Object " + var + " = " + code + ";\n";
-					// 如果是byte[]类型，防止先format()成String，再serialize()回byte[]，浪费转换性能。
-					code = var + " instanceof byte[] ? (byte[]) " + var + " : getFormatter().serialize(getFormatter().format(" + var + "))";
+					// 如果是模板，直接渲染到当前输出，防止先evaluate()到临时缓冲区，再拷贝输出。
+					pre = "	Object " + var + " = " + code + ";\n"
+							+ "	if (" + var + " instanceof " + Template.class.getName() + ") {\n"
+							+ "	((" + Template.class.getName() + ") " + var + ").render($output);\n"
+							+ "	} else {\n";
+					post = "	}\n";
+					if (stream) {
+						// 如果是byte[]类型，防止先format()成String，再serialize()回byte[]，浪费转换性能。
+						code = var + " instanceof byte[] ? (byte[]) " + var + " : getFormatter().serialize(getFormatter().format(" + var + "))";
+					} else {
+						code = "getFormatter().format(" + var + ")";
+					}
 				} else {
 					code = "getFormatter().format(" + code + ")";
 					if (! nofilter) {
@@ -951,12 +1782,13 @@ public abstract class AbstractParser implements Parser {
 			buf.append("	$output.write(");
 			buf.append(code);
 			buf.append(");\n");
+			buf.append(post);
 		}
 		return buf.toString();
 	}
 	
 	@SuppressWarnings("unchecked")
-	protected String filterExpression(String message, Translator translator, StringBuilder textFields, Set<String> getVariables, Map<String, Class<?>> types, int offset, AtomicInteger seq, boolean stream, Resource resource) throws IOException, ParseException {
+	protected String filterExpression(String message, Translator translator, List<String> texts, Set<String> getVariables, Map<String, Class<?>> types, int offset, boolean stream, Resource resource) throws IOException, ParseException {
 		if (message == null || message.length() == 0) {
 			return "";
 		}
@@ -968,21 +1800,32 @@ public abstract class AbstractParser implements Parser {
 		}
 		TemplateFormatter templateFormatter = new TemplateFormatter(engine, formatter);
 		StringBuffer buf = new StringBuffer();
-		Matcher matcher = EXPRESSION_PATTERN.matcher(message);
+		int[] range = new int[2];
 		int last = 0;
-		while (matcher.find()) {
-			String symbol = matcher.group(1);
-			String expression = matcher.group(2);
-			int off = matcher.start(2) + offset;
-			String txt = message.substring(last, matcher.start());
-			appendSwitcher(buf, txt, textFields, seq, stream, getVariables);
+		int start;
+		while ((start = findExpression(message, last, range)) >= 0) {
+			String symbol = message.substring(start, range[0] - 1);
+			String expression = message.substring(range[0], range[1]);
+			int off = range[0] + offset;
+			String txt = message.substring(last, start);
+			appendSwitcher(buf, txt, texts, getVariables);
 			buf.append(");\n");
 			if (symbol.charAt(0) == '$') {
 				Expression expr = translator.translate(expression, types, off);
 				getVariables.addAll(expr.getParameterTypes().keySet());
 				String code = expr.getCode();
 				Class<?> returnType = expr.getReturnType();
-				buf.append(getExpressionCode(symbol, code, returnType, stream, getVariables));
+				if (profile) {
+					String var = "__prof" + TMP_VAR_SEQ.getAndIncrement();
+					buf.append("	long " + var + " = System.nanoTime();\n");
+					buf.append("	try {\n");
+					buf.append(getExpressionCode(symbol, code, returnType, stream, getVariables));
+					buf.append("	} finally {\n");
+					buf.append("	" + getProfileCode(Profiler.EXPRESSION, off, symbol + "{" + expression + "}") + ".record(System.nanoTime() - " + var + ");\n");
+					buf.append("	}\n");
+				} else {
+					buf.append(getExpressionCode(symbol, code, returnType, stream, getVariables));
+				}
 			} else {
 				boolean nofilter = "#!".equals(symbol);
 				Expression expr = translator.translate(expression, Collections.EMPTY_MAP, off);
@@ -1002,12 +1845,12 @@ public abstract class AbstractParser implements Parser {
 						str = valueFilter.filter(str);
 					}
 					buf.append("	$output.write(");
-					appendSwitcher(buf, str, textFields, seq, stream, getVariables);
+					appendSwitcher(buf, str, texts, getVariables);
 					buf.append(");\n");
 					String msg = writer.getBuffer().toString();
 					if (msg != null && msg.length() > 0) {
 						buf.append("	$output.write(");
-						appendSwitcher(buf, msg, textFields, seq, stream, getVariables);
+						appendSwitcher(buf, msg, texts, getVariables);
 						buf.append(");\n");
 					}
 				} finally {
@@ -1016,7 +1859,7 @@ public abstract class AbstractParser implements Parser {
 				
 			}
 			buf.append("	$output.write(");
-			last = matcher.end();
+			last = range[1] + 1;
 		}
 		String txt;
 		if (last == 0) {
@@ -1026,11 +1869,35 @@ public abstract class AbstractParser implements Parser {
 		} else {
 			txt = null;
 		}
-		appendSwitcher(buf, txt, textFields, seq, stream, getVariables);
+		appendSwitcher(buf, txt, texts, getVariables);
 		return buf.toString();
 	}
 
-	private void appendSwitcher(StringBuffer buf, String txt, StringBuilder textFields, AtomicInteger seq, boolean stream, Set<String> getVariables) {
+	// 查找下一个${}或#{}表达式，同EXPRESSION_PATTERN，返回起始位置，表达式内容的起止位置存入range
+	private static int findExpression(String message, int from, int[] range) {
+		int length = message.length();
+		for (int i = from; i < length - 2; i ++) {
+			char ch = message.charAt(i);
+			if (ch == DOLLAR || ch == POUND) {
+				int j = i + 1;
+				if (message.charAt(j) == '!') {
+					j ++;
+				}
+				if (j < length && message.charAt(j) == '{') {
+					int close = message.indexOf('}', j + 1);
+					if (close < 0) {
+						return -1;
+					}
+					range[0] = j + 1;
+					range[1] = close;
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void appendSwitcher(StringBuffer buf, String txt, List<String> texts, Set<String> getVariables) {
 		if (txt == null || txt.length() == 0) {
 			return;
 		}
@@ -1064,7 +1931,7 @@ public abstract class AbstractParser implements Parser {
 					int begin = 0;
 					for (Map.Entry<Integer, Set<String>> entry : switchesd.entrySet()) {
 						int end = entry.getKey();
-						appendText(buf, txt.substring(begin, end), filter, textFields, seq, stream);
+						appendText(buf, txt.substring(begin, end), filter, texts);
 						begin = end;
 						buf.append(");\n");
 						for (String location : entry.getValue()) {
@@ -1081,10 +1948,10 @@ public abstract class AbstractParser implements Parser {
 				}
 			}
 		}
-		appendText(buf, txt, filter, textFields, seq, stream);
+		appendText(buf, txt, filter, texts);
 	}
 
-	private void appendText(StringBuffer buf, String txt, Filter filter, StringBuilder textFields, AtomicInteger seq, boolean stream) {
+	private void appendText(StringBuffer buf, String txt, Filter filter, List<String> texts) {
 		if (txt == null || txt.length() == 0) {
 			return;
 		}
@@ -1094,23 +1961,11 @@ public abstract class AbstractParser implements Parser {
 			txt = filter.filter(txt);
 		}
 		if (txt != null && txt.length() > 0) {
-			String var = "$TXT" + seq.incrementAndGet();
-			if (stream) {
-				if (textInClass) {
-					textFields.append("private static final byte[] " + var + " = new byte[] {" + StringUtils.toByteString(StringUtils.toBytes(txt, outputEncoding)) + "};\n");
-				} else {
-					String txtId = ByteCache.put(StringUtils.toBytes(txt, outputEncoding));
-					textFields.append("private static final byte[] " + var + " = " + ByteCache.class.getName() +  ".getAndRemove(\"" + txtId + "\");\n");
-				}
-			} else {
-				if (textInClass) {
-					textFields.append("private static final String " + var + " = \"" + StringUtils.escapeString(txt) + "\";\n");
-				} else {
-					String txtId = StringCache.put(txt);
-					textFields.append("private static final String " + var + " = " + StringCache.class.getName() +  ".getAndRemove(\"" + txtId + "\");\n");
-				}
-			}
-			buf.append(var);
+			// 先占位，由mergeText()合并相邻文本后再生成字段
+			texts.add(txt);
+			buf.append(SPECIAL);
+			buf.append(texts.size() - 1);
+			buf.append(SPECIAL);
 		}
 	}
 	
@@ -1118,6 +1973,9 @@ public abstract class AbstractParser implements Parser {
 		if (ifDirective.equals(name) || elseifDirective.equals(name) || elseDirective.equals(name)) {
 			return "	}\n"; // 插入结束指令
 		} else if (foreachDirective.equals(name)) {
+			if (profile) {
+				return "	" + foreachVariable + ".increment();\n	}\n	" + foreachVariable + " = " + foreachVariable + ".end();" + PROFILE_MARK + "()\n"; // 插入结束指令
+			}
 			return "	" + foreachVariable + ".increment();\n	}\n	" + foreachVariable + " = " + foreachVariable + ".getParent();\n"; // 插入结束指令
 		}
 		return "";
@@ -1215,7 +2073,11 @@ public abstract class AbstractParser implements Parser {
 				code = ClassUtils.class.getName() + ".entrySet(" + code + ")";
 			}
 			setVariables.add(foreachVariable);
-			buf.append(getForeachCode(type, clazz, var, code));
+			if (profile) {
+				buf.append(getForeachCode(type, clazz, var, code, getProfileCode(Profiler.FOREACH, offset, "#" + foreachDirective + "(" + value + ")")));
+			} else {
+				buf.append(getForeachCode(type, clazz, var, code));
+			}
 		} else if (breakifDirective.equals(name)) {
 			if (value == null || value.length() == 0) {
 				throw new ParseException("The breakif expression == null!", begin);
@@ -1394,9 +2256,13 @@ public abstract class AbstractParser implements Parser {
 	}
 
 	protected String getForeachCode(String type, Class<?> clazz, String var, String code) {
+		return getForeachCode(type, clazz, var, code, null);
+	}
+
+	protected String getForeachCode(String type, Class<?> clazz, String var, String code, String point) {
 		StringBuilder buf = new StringBuilder();
 		String name = "_i_" + var;
-		buf.append("	for (" + Iterator.class.getName() + " " + name + " = " + ClassUtils.class.getName() + ".toIterator((" + foreachVariable + " = new " + ForeachStatus.class.getName() + "(" + foreachVariable + ", " + code + ")).getData()); " + name + ".hasNext();) {\n");
+		buf.append("	for (" + Iterator.class.getName() + " " + name + " = " + ClassUtils.class.getName() + ".toIterator((" + foreachVariable + " = new " + ForeachStatus.class.getName() + "(" + foreachVariable + ", " + code + (point == null ? "" : ", " + point) + ")).getData()); " + name + ".hasNext();) {\n");
 		if (clazz.isPrimitive()) {
 			buf.append("	" + type + " " + var + " = " + ClassUtils.class.getName() + ".unboxed((" + ClassUtils.getBoxedClass(clazz).getSimpleName() + ")" + name + ".next());\n");
 		} else {
@@ -1413,4 +2279,92 @@ public abstract class AbstractParser implements Parser {
 		return template + POUND + value;
 	}
 
+	// 合并宏的编译状态, 每个顶层模板编译时创建
+	private static final class MacroMerger {
+
+		private final AtomicInteger textSeq = new AtomicInteger();
+
+		private final AtomicInteger macroSeq = new AtomicInteger();
+
+		private final LinkedList<List<MergedMacro>> stack = new LinkedList<List<MergedMacro>>();
+
+	}
+
+	private static final class MergedMacro {
+
+		private final int index;
+
+		private final String name;
+
+		private final String var;
+
+		private final int offset;
+
+		private final String fields;
+
+		private final String method;
+
+		private final List<MergedMacro> macros;
+
+		MergedMacro(int index, String name, int offset, String fields, String method, List<MergedMacro> macros) {
+			this.index = index;
+			this.name = name;
+			this.var = name.substring(name.lastIndexOf(POUND) + 1);
+			this.offset = offset;
+			this.fields = fields;
+			this.method = method;
+			this.macros = macros;
+		}
+
+	}
+
+	private void removeUnloadedMacros() {
+		for (Iterator<MacroClass> i = macroClasses.values().iterator(); i.hasNext();) {
+			if (i.next().type.get() == null) {
+				i.remove();
+			}
+		}
+	}
+
+	private static final class ProfileSource {
+
+		private final String source;
+
+		// 源码首行在模板文件中的行号
+		private final int line;
+
+		ProfileSource(String source, int line) {
+			this.source = source;
+			this.line = line;
+		}
+
+		int getLine(int offset) {
+			int result = line;
+			int end = Math.min(offset, source.length());
+			for (int i = 0; i < end; i ++) {
+				if (source.charAt(i) == '\n') {
+					result ++;
+				}
+			}
+			return result;
+		}
+
+	}
+
+	private static final class MacroClass {
+
+		private final String source;
+
+		private final int offset;
+
+		private final WeakReference<Class<?>> type;
+
+		MacroClass(String source, int offset, Class<?> type) {
+			this.source = source;
+			this.offset = offset;
+			this.type = new WeakReference<Class<?>>(type);
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -60,7 +60,7 @@ public class CommentParser extends AbstractParser {
 		int macroStart = 0;
 		int macroParameterStart = 0;
 		StringBuffer buf = new StringBuffer();
-		Matcher matcher = getPattern().matcher(source);
+		StatementMatcher matcher = new StatementMatcher(getPattern(), source);
 		while (matcher.find()) {
 			String name = matcher.group(1);
 			String value = matcher.group(2);
@@ -192,5 +192,152 @@ public class CommentParser extends AbstractParser {
 		matcher.appendTail(buf);
 		return buf.toString();
 	}
-	
+
+	/**
+	 * Scan the comment statements in one pass without regex backtracking, same as STATEMENT_PATTERN.
+	 * The custom pattern from getPattern() is still matched by regex.
+	 */
+	private static final class StatementMatcher {
+
+		private final String source;
+
+		private final Matcher matcher;
+
+		private int from;
+
+		private int append;
+
+		private int start = -1;
+
+		private int end;
+
+		private int nameStart;
+
+		private int nameEnd;
+
+		private int valueStart;
+
+		private int valueEnd;
+
+		StatementMatcher(Pattern pattern, String source) {
+			this.source = source;
+			this.matcher = pattern == STATEMENT_PATTERN ? null : pattern.matcher(source);
+		}
+
+		boolean find() {
+			if (matcher != null) {
+				return matcher.find();
+			}
+			int length = source.length();
+			int i = from;
+			while ((i = source.indexOf("<!--", i)) >= 0) {
+				int j = skipSpace(source, i + 4);
+				if (j < length && source.charAt(j) == '#') {
+					j = skipSpace(source, j + 1);
+					int n = j;
+					while (j < length && source.charAt(j) >= 'a' && source.charAt(j) <= 'z') {
+						j ++;
+					}
+					if (j > n) {
+						int ne = j;
+						j = skipSpace(source, j);
+						if (j < length && source.charAt(j) == '(') {
+							j ++;
+						}
+						int close = source.indexOf("-->", j);
+						if (close < 0) {
+							return false;
+						}
+						// 去掉结尾的空白和右括号
+						int ve = close;
+						while (ve > j && isSpace(source.charAt(ve - 1))) {
+							ve --;
+						}
+						if (ve > j && source.charAt(ve - 1) == ')') {
+							ve --;
+						}
+						start = i;
+						end = close + 3;
+						nameStart = n;
+						nameEnd = ne;
+						valueStart = j;
+						valueEnd = ve;
+						from = end;
+						return true;
+					}
+				}
+				i ++;
+			}
+			return false;
+		}
+
+		private static int skipSpace(String source, int i) {
+			while (i < source.length() && isSpace(source.charAt(i))) {
+				i ++;
+			}
+			return i;
+		}
+
+		private static boolean isSpace(char ch) {
+			return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+		}
+
+		String group() {
+			return matcher != null ? matcher.group() : source.substring(start, end);
+		}
+
+		String group(int group) {
+			if (matcher != null) {
+				return matcher.group(group);
+			}
+			return group == 1 ? source.substring(nameStart, nameEnd) : source.substring(valueStart, valueEnd);
+		}
+
+		int start() {
+			return matcher != null ? matcher.start() : start;
+		}
+
+		int start(int group) {
+			if (matcher != null) {
+				return matcher.start(group);
+			}
+			return group == 1 ? nameStart : valueStart;
+		}
+
+		int end() {
+			return matcher != null ? matcher.end() : end;
+		}
+
+		int end(int group) {
+			if (matcher != null) {
+				return matcher.end(group);
+			}
+			return group == 1 ? nameEnd : valueEnd;
+		}
+
+		// 只支持""和"$0"两种替换
+		void appendReplacement(StringBuffer buf, String replacement) {
+			if (matcher != null) {
+				matcher.appendReplacement(buf, replacement);
+				return;
+			}
+			buf.append(source, append, start);
+			if ("$0".equals(replacement)) {
+				buf.append(source, start, end);
+			} else {
+				buf.append(replacement);
+			}
+			append = end;
+		}
+
+		void appendTail(StringBuffer buf) {
+			if (matcher != null) {
+				matcher.appendTail(buf);
+				return;
+			}
+			buf.append(source, append, source.length());
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -22,6 +22,8 @@ import httl.spi.Interceptor;
 import httl.spi.Switcher;
 import httl.spi.Filter;
 import httl.spi.Formatter;
+import httl.util.FilteredOutputStream;
+import httl.util.FilteredWriter;
 import httl.util.UnsafeByteArrayInputStream;
 
 import java.io.IOException;
@@ -47,6 +49,10 @@ public abstract class AbstractTemplate implements Template, Serializable {
 	
 	private static final long serialVersionUID = 8780375327644594903L;
 
+	private static final String OUTPUT_BUFFER_SIZE = "output.buffer.size";
+
+	private static final String OUTPUT_BUFFER_WATERMARK = "output.buffer.watermark";
+
 	private transient final Engine engine;
 
 	private transient final Interceptor interceptor;
@@ -61,6 +67,10 @@ public abstract class AbstractTemplate implements Template, Serializable {
 
 	private final Map<String, Template> macros;
 
+	private transient final int outputBufferSize;
+
+	private transient final int outputBufferWatermark;
+
 	public AbstractTemplate(Engine engine, Interceptor interceptor, 
 			Switcher switcher, Filter filter, 
 			Formatter<?> formatter, Map<Class<?>, Object> functions,
@@ -71,6 +81,8 @@ public abstract class AbstractTemplate implements Template, Serializable {
 		this.filter = filter;
 		this.formatter = new TemplateFormatter(engine, formatter);
 		this.importMacros = importMacros;
+		this.outputBufferSize = engine.getProperty(OUTPUT_BUFFER_SIZE, 0);
+		this.outputBufferWatermark = engine.getProperty(OUTPUT_BUFFER_WATERMARK, 0);
 		this.macros = initMacros(engine, filter, formatter, functions, importMacros);
 	}
 
@@ -91,6 +103,25 @@ public abstract class AbstractTemplate implements Template, Serializable {
 		return value;
 	}
 
+	// 将模板直接渲染到当前输出，逐段过滤，不经过evaluate()的中间缓冲区
+	protected void doFilterRender(Filter filter, Template template, Writer output) throws IOException, ParseException {
+		if (filter == null) {
+			template.render(output);
+		} else {
+			template.render(new FilteredWriter(output, filter));
+		}
+	}
+
+	protected void doFilterRender(Filter filter, Template template, OutputStream output) throws IOException, ParseException {
+		if (filter == null) {
+			template.render(output);
+		} else {
+			FilteredOutputStream stream = new FilteredOutputStream(output, filter, formatter.getOutputEncoding());
+			template.render(stream);
+			stream.close();
+		}
+	}
+
 	protected Filter getFilter(Context context, String key) {
 		Object value = context.get(key);
 		if (value instanceof Filter) {
@@ -111,6 +142,14 @@ public abstract class AbstractTemplate implements Template, Serializable {
 		return formatter;
 	}
 
+	protected int getOutputBufferSize() {
+		return outputBufferSize;
+	}
+
+	protected int getOutputBufferWatermark() {
+		return outputBufferWatermark;
+	}
+
 	public Reader getReader() throws IOException {
 		return new StringReader(getSource());
 	}
@@ -139,6 +178,7 @@ public abstract class AbstractTemplate implements Template, Serializable {
 			Formatter<?> formatter, Map<Class<?>, Object> functions,
 			Map<String, Template> importMacros) {
 		Map<String, Template> macros = new HashMap<String, Template>();
+		initMergedMacros(macros, engine, interceptor, switcher, filter, formatter, functions, importMacros);
 		Map<String, Class<?>> macroTypes = getMacroTypes();
 		if (macroTypes == null || macroTypes.size() == 0) {
 			return Collections.unmodifiableMap(macros);
@@ -166,6 +206,16 @@ public abstract class AbstractTemplate implements Template, Serializable {
 	
 	protected abstract Map<String, Class<?>> getMacroTypes();
 
+	/**
+	 * Create the macros compiled into methods of this template class.
+	 * 
+	 * Called from the constructor, so the implementation must only use the arguments and static fields.
+	 */
+	protected void initMergedMacros(Map<String, Template> macros, Engine engine, Interceptor interceptor, 
+			Switcher switcher, Filter filter, Formatter<?> formatter, 
+			Map<Class<?>, Object> functions, Map<String, Template> importMacros) {
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -91,8 +91,14 @@ public class AdaptiveTemplate implements Template, Serializable {
 		return writerTemplate.getEngine();
 	}
 
+	// 只查看当前上下文，不在线程上创建上下文
+	private static boolean isOutputStream() {
+		Context context = Context.peekContext();
+		return context != null && context.getOut() instanceof OutputStream;
+	}
+
 	public Class<?> getReturnType() {
-		if (Context.getContext().getOut() instanceof OutputStream) {
+		if (isOutputStream()) {
 			return streamTemplate.getReturnType();
 		} else {
 			return writerTemplate.getReturnType();
@@ -100,7 +106,7 @@ public class AdaptiveTemplate implements Template, Serializable {
 	}
 
 	public Object evaluate() throws ParseException {
-		if (Context.getContext().getOut() instanceof OutputStream) {
+		if (isOutputStream()) {
 			return streamTemplate.evaluate();
 		} else {
 			return writerTemplate.evaluate();
@@ -108,7 +114,7 @@ public class AdaptiveTemplate implements Template, Serializable {
 	}
 
 	public Object evaluate(Map<String, Object> parameters) throws ParseException {
-		if (Context.getContext().getOut() instanceof OutputStream) {
+		if (isOutputStream()) {
 			return streamTemplate.evaluate(parameters);
 		} else {
 			return writerTemplate.evaluate(parameters);
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.parsers.templates;
+
+import httl.Template;
+import httl.util.AsyncUtils;
+import httl.util.BufferPool;
+import httl.util.UnsafeByteArrayOutputStream;
+import httl.util.UnsafeStringWriter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AsyncTemplate. (SPI, Prototype, ThreadSafe)
+ * 
+ * Start rendering the fragment on the executor when created, and write the result where it is rendered,
+ * so the independent fragments are rendered concurrently, and stitched in document order.
+ * The nested async fragments are rendered inline on the executor thread,
+ * so they never wait for the tasks queued behind their parents.
+ * 
+ * @see httl.spi.methods.FileMethod#async(Template)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class AsyncTemplate extends TemplateWrapper {
+
+	private static final String OUTPUT_ENCODING = "output.encoding";
+
+	private final FutureTask<Object> future;
+
+	private final int timeout;
+
+	private final String fallback;
+
+	private final String encoding;
+
+	/**
+	 * Start rendering the template.
+	 * 
+	 * @param template - fragment template
+	 * @param parameters - the snapshot of the caller variables
+	 * @param stream - render to bytes, else chars
+	 * @param executor - render executor, or render on the current thread if null or already rendering asynchronously
+	 * @param timeout - the milliseconds to wait the result, or wait forever if not positive
+	 * @param fallback - the output on timeout or failure, or throw the error if null
+	 */
+	public AsyncTemplate(final Template template, final Map<String, Object> parameters, final boolean stream, 
+			Executor executor, int timeout, String fallback) {
+		super(template);
+		this.timeout = timeout;
+		this.fallback = fallback;
+		this.encoding = template.getEngine().getProperty(OUTPUT_ENCODING, String.class);
+		this.future = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				return render(template, parameters, stream);
+			}
+		});
+		AsyncUtils.execute(executor, future);
+	}
+
+	private static Object render(Template template, Map<String, Object> parameters, boolean stream) throws IOException, ParseException {
+		if (stream) {
+			UnsafeByteArrayOutputStream output = BufferPool.getOutputStream(0);
+			try {
+				template.render(parameters, output);
+				return output.toByteArray();
+			} finally {
+				BufferPool.putOutputStream(output);
+			}
+		} else {
+			UnsafeStringWriter writer = BufferPool.getWriter(0);
+			try {
+				template.render(parameters, writer);
+				return writer.toString();
+			} finally {
+				BufferPool.putWriter(writer);
+			}
+		}
+
+	}
+
+	@Override
+	public void render(Map<String, Object> parameters, OutputStream stream)
+			throws IOException, ParseException {
+		Object result = getResult();
+		if (result instanceof byte[]) {
+			stream.write((byte[]) result);
+		} else {
+			String value = (String) result;
+			stream.write(encoding == null ? value.getBytes() : value.getBytes(encoding));
+		}
+	}
+
+	@Override
+	public void render(Map<String, Object> parameters, Writer writer)
+			throws IOException, ParseException {
+		Object result = getResult();
+		if (result instanceof byte[]) {
+			byte[] bytes = (byte[]) result;
+			writer.write(encoding == null ? new String(bytes) : new String(bytes, encoding));
+		} else {
+			writer.write((String) result);
+		}
+	}
+
+	private Object getResult() throws IOException, ParseException {
+		try {
+			if (timeout > 0) {
+				return future.get(timeout, TimeUnit.MILLISECONDS);
+			}
+			return future.get();
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			if (fallback != null) {
+				return fallback;
+			}
+			throw new IllegalStateException("Render the template " + getName() + " timeout, over " + timeout + "ms.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (fallback != null) {
+				return fallback;
+			}
+			throw new InterruptedIOException("Interrupted while waiting the template " + getName() + " rendering.");
+		} catch (ExecutionException e) {
+			if (fallback != null) {
+				return fallback;
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof ParseException) {
+				throw (ParseException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause.getMessage(), cause);
+		}
+	}
+
+}
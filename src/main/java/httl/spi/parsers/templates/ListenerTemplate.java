@@ -44,8 +44,8 @@ public class ListenerTemplate extends TemplateWrapper {
 	@Override
 	public void render(Map<String, Object> parameters, OutputStream stream)
 			throws IOException, ParseException {
-		Context context = Context.getContext();
-		if (context.getOut() != stream) {
+		Context context = Context.peekContext();
+		if (context == null || context.getOut() != stream) {
 			context = Context.pushContext(this, parameters, stream);
 			try {
 				listener.render(context);
@@ -60,8 +60,8 @@ public class ListenerTemplate extends TemplateWrapper {
 	@Override
 	public void render(Map<String, Object> parameters, Writer writer)
 			throws IOException, ParseException {
-		Context context = Context.getContext();
-		if (context.getOut() != writer) {
+		Context context = Context.peekContext();
+		if (context == null || context.getOut() != writer) {
 			context = Context.pushContext(this, parameters, writer);
 			try {
 				listener.render(context);
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.parsers.templates;
+
+import httl.Template;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * MacroInfo, the resource of a macro compiled into a method of the owner template class. (SPI, Prototype, ThreadSafe)
+ * 
+ * Shared by WriterMacroTemplate and OutputStreamMacroTemplate.
+ * 
+ * @see httl.spi.parsers.templates.WriterMacroTemplate
+ * @see httl.spi.parsers.templates.OutputStreamMacroTemplate
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+final class MacroInfo implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	final Template owner;
+
+	final int index;
+
+	final String name;
+
+	final String source;
+
+	final String code;
+
+	final Map<String, Class<?>> parameterTypes;
+
+	final Map<String, Class<?>> contextTypes;
+
+	final int offset;
+
+	final Map<String, Template> macros;
+
+	MacroInfo(Template owner, int index, String name, String source, String code, 
+			Map<String, Class<?>> parameterTypes, Map<String, Class<?>> contextTypes, int offset, Map<String, Template> macros) {
+		if (owner == null) 
+			throw new IllegalArgumentException("owner == null");
+		this.owner = owner;
+		this.index = index;
+		this.name = name;
+		this.source = source;
+		this.code = code;
+		this.parameterTypes = parameterTypes;
+		this.contextTypes = contextTypes;
+		this.offset = offset;
+		this.macros = macros;
+	}
+
+}
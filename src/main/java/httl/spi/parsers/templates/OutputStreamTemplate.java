@@ -23,6 +23,9 @@ import httl.spi.Formatter;
 import httl.spi.Interceptor;
 import httl.spi.Listener;
 import httl.spi.Switcher;
+import httl.util.BufferPool;
+import httl.util.FilteredOutputStream;
+import httl.util.UnsafeBufferedOutputStream;
 import httl.util.UnsafeByteArrayOutputStream;
 import httl.util.WriterOutputStream;
 
@@ -43,6 +46,9 @@ public abstract class OutputStreamTemplate extends AbstractTemplate {
 
 	private static final long serialVersionUID = 7127901461769617745L;
 
+	// The last evaluated size, as the pooled buffer size hint.
+	private transient int evaluateSize;
+
 	public OutputStreamTemplate(Engine engine, Interceptor interceptor, Switcher switcher, Filter filter, 
 			Formatter<?> formatter, Map<Class<?>, Object> functions,
 			Map<String, Template> importMacros){
@@ -54,13 +60,16 @@ public abstract class OutputStreamTemplate extends AbstractTemplate {
 	}
 
 	public Object evaluate(Map<String, Object> parameters) throws ParseException {
-		UnsafeByteArrayOutputStream output = new UnsafeByteArrayOutputStream();
+		UnsafeByteArrayOutputStream output = BufferPool.getOutputStream(evaluateSize);
 		try {
 			render(parameters, output);
+			evaluateSize = output.size();
+			return output.toByteArray();
 		} catch (IOException e) {
 			throw new RuntimeException(e.getMessage(), e);
+		} finally {
+			BufferPool.putOutputStream(output);
 		}
-		return output.toByteArray();
 	}
 
 	public void render(Map<String, Object> parameters, Writer writer) throws IOException, ParseException {
@@ -72,8 +81,23 @@ public abstract class OutputStreamTemplate extends AbstractTemplate {
 	public void render(Map<String, Object> parameters, OutputStream stream) throws IOException, ParseException {
 		if (stream == null) 
 			throw new IllegalArgumentException("output == null");
-		if (Context.getContext().getTemplate() == this)
+		Context current = Context.peekContext();
+		if (current != null && current.getTemplate() == this)
 			throw new IllegalStateException("The template " + getName() + " can not be recursive rendering the self template.");
+		int bufferSize = getOutputBufferSize();
+		if (bufferSize > 0 && ! (stream instanceof UnsafeBufferedOutputStream) 
+				&& ! (stream instanceof UnsafeByteArrayOutputStream)
+				&& ! (stream instanceof FilteredOutputStream)) {
+			// 外层渲染时，先无锁写入缓冲区，再大块写出，当渲染失败时，丢弃已缓冲的内容
+			UnsafeBufferedOutputStream buffer = new UnsafeBufferedOutputStream(stream, bufferSize, getOutputBufferWatermark());
+			try {
+				render(parameters, buffer);
+				buffer.flushBuffer();
+			} finally {
+				buffer.release();
+			}
+			return;
+		}
 		Context context = Context.pushContext(this, parameters, stream);
 		try {
 			Interceptor interceptor = getInterceptor();
@@ -107,4 +131,9 @@ public abstract class OutputStreamTemplate extends AbstractTemplate {
 
 	protected abstract void doRender(Context context, OutputStream stream) throws Exception;
 
+	// 合并到模板类中的宏, 由模板类按序号分派到对应的宏方法, see OutputStreamMacroTemplate
+	protected void doRenderMacro(int index, Template macro, Context context, OutputStream stream) throws Exception {
+		throw new IllegalStateException("No such merged macro " + index + " in template " + getName());
+	}
+
 }
\ No newline at end of file
@@ -19,13 +19,20 @@ import httl.Engine;
 import httl.Expression;
 import httl.Resource;
 import httl.Template;
+import httl.spi.Filter;
 import httl.spi.Formatter;
 import httl.spi.formatters.MultiFormatter;
+import httl.util.FastNumberFormat;
 import httl.util.StringUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * TemplateFormatter. (SPI, Prototype, ThreadSafe)
@@ -42,7 +49,20 @@ public class TemplateFormatter {
 
 	private static final String OUTPUT_ENCODING	 = "output.encoding";
 
+	// 按具体类型缓存分派结果，代替instanceof链，超过此数量时清空
+	private static final int MAX_KINDS_SIZE = 1024;
+
+	private static final Map<Class<?>, Integer> KINDS = new ConcurrentHashMap<Class<?>, Integer>();
+
+	private static final int OTHER = 0, STRING = 1, BOOLEAN = 2, CHARACTER = 3, BYTE = 4, SHORT = 5, INTEGER = 6, 
+			LONG = 7, FLOAT = 8, DOUBLE = 9, NUMBER = 10, DATE = 11, BYTES = 12, TEMPLATE = 13, EXPRESSION = 14, RESOURCE = 15;
+
+	// String.valueOf(数字)可能输出的所有字符
+	private static final String NUMBER_CHARS = "-0123456789.EInfinityNaN";
+
 	private transient final Formatter<Object> formatter;
+
+	private transient final MultiFormatter multiFormatter;
 	
 	private transient final Formatter<Boolean> booleanFormatter;
 	
@@ -71,12 +91,19 @@ public class TemplateFormatter {
 	private transient final String falseValue;
 
 	private transient final String outputEncoding;
+
+	private transient final boolean asciiOutput;
+
+	private transient volatile Filter numberSafeFilter;
+
+	private transient volatile Filter numberUnsafeFilter;
 	
 	@SuppressWarnings("unchecked")
 	public TemplateFormatter(Engine engine, Formatter<?> formatter) {
 		this.formatter = (Formatter<Object>) formatter;
 		if (formatter instanceof MultiFormatter) {
 			MultiFormatter multi = (MultiFormatter) formatter;
+			this.multiFormatter = multi;
 			this.numberFormatter = multi.get(Number.class);
 			this.booleanFormatter = multi.get(Boolean.class);
 			this.byteFormatter = getFormatter(multi, Byte.class, numberFormatter);
@@ -88,6 +115,7 @@ public class TemplateFormatter {
 			this.doubleFormatter = getFormatter(multi, Double.class, numberFormatter);
 			this.dateFormatter = multi.get(Date.class);
 		} else {
+			this.multiFormatter = null;
 			this.numberFormatter = null;
 			this.booleanFormatter = null;
 			this.byteFormatter = null;
@@ -103,6 +131,143 @@ public class TemplateFormatter {
 		this.trueValue = engine.getProperty(TRUE_VALUE, "true");
 		this.falseValue = engine.getProperty(FALSE_VALUE, "false");
 		this.outputEncoding = engine.getProperty(OUTPUT_ENCODING, String.class);
+		this.asciiOutput = isAsciiCompatible(outputEncoding);
+	}
+
+	private static boolean isAsciiCompatible(String encoding) {
+		byte[] bytes;
+		try {
+			bytes = encoding == null ? NUMBER_CHARS.getBytes() : NUMBER_CHARS.getBytes(encoding);
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+		if (bytes.length != NUMBER_CHARS.length()) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i ++) {
+			if (bytes[i] != NUMBER_CHARS.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// 过滤器不改变数字时，数字可以不经过String直接写出
+	private boolean isNumberSafe(Filter filter) {
+		if (filter == null || filter == numberSafeFilter) {
+			return true;
+		}
+		if (filter == numberUnsafeFilter) {
+			return false;
+		}
+		if (NUMBER_CHARS.equals(filter.filter(NUMBER_CHARS))) {
+			numberSafeFilter = filter;
+			return true;
+		}
+		numberUnsafeFilter = filter;
+		return false;
+	}
+
+	private static void writeAscii(OutputStream output, char[] chars, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i ++) {
+			bytes[i] = (byte) chars[i];
+		}
+		output.write(bytes, 0, length);
+	}
+
+	private String doFilter(Filter filter, String value) {
+		if (filter != null)
+			return filter.filter(value);
+		return value;
+	}
+
+	public void write(Writer output, int value, Filter filter) throws IOException {
+		if (intFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[20];
+			output.write(chars, 0, FastNumberFormat.toChars(value, chars, 0));
+		} else {
+			output.write(doFilter(filter, format(value)));
+		}
+	}
+
+	public void write(Writer output, long value, Filter filter) throws IOException {
+		if (longFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[20];
+			output.write(chars, 0, FastNumberFormat.toChars(value, chars, 0));
+		} else {
+			output.write(doFilter(filter, format(value)));
+		}
+	}
+
+	public void write(Writer output, float value, Filter filter) throws IOException {
+		if (floatFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[26];
+			int length = FastNumberFormat.toChars(value, chars, 0);
+			if (length >= 0) {
+				output.write(chars, 0, length);
+				return;
+			}
+		}
+		output.write(doFilter(filter, format(value)));
+	}
+
+	public void write(Writer output, double value, Filter filter) throws IOException {
+		if (doubleFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[26];
+			int length = FastNumberFormat.toChars(value, chars, 0);
+			if (length >= 0) {
+				output.write(chars, 0, length);
+				return;
+			}
+		}
+		output.write(doFilter(filter, format(value)));
+	}
+
+	public void write(OutputStream output, int value, Filter filter) throws IOException {
+		if (asciiOutput && intFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[20];
+			writeAscii(output, chars, FastNumberFormat.toChars(value, chars, 0));
+		} else {
+			output.write(serialize(doFilter(filter, format(value))));
+		}
+	}
+
+	public void write(OutputStream output, long value, Filter filter) throws IOException {
+		if (asciiOutput && longFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[20];
+			writeAscii(output, chars, FastNumberFormat.toChars(value, chars, 0));
+		} else {
+			output.write(serialize(doFilter(filter, format(value))));
+		}
+	}
+
+	public void write(OutputStream output, float value, Filter filter) throws IOException {
+		if (asciiOutput && floatFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[26];
+			int length = FastNumberFormat.toChars(value, chars, 0);
+			if (length >= 0) {
+				writeAscii(output, chars, length);
+				return;
+			}
+		}
+		output.write(serialize(doFilter(filter, format(value))));
+	}
+
+	public void write(OutputStream output, double value, Filter filter) throws IOException {
+		if (asciiOutput && doubleFormatter == null && isNumberSafe(filter)) {
+			char[] chars = new char[26];
+			int length = FastNumberFormat.toChars(value, chars, 0);
+			if (length >= 0) {
+				writeAscii(output, chars, length);
+				return;
+			}
+		}
+		output.write(serialize(doFilter(filter, format(value))));
+	}
+
+	public String getOutputEncoding() {
+		return outputEncoding;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -210,6 +375,14 @@ public class TemplateFormatter {
 		return value.toString();
 	}
 	
+	public String format(Float value) {
+		if (value == null)
+			return nullValue;
+		if (floatFormatter != null) 
+			return floatFormatter.format(value);
+		return value.toString();
+	}
+	
 	public String format(Double value) {
 		if (value == null)
 			return nullValue;
@@ -221,28 +394,44 @@ public class TemplateFormatter {
 	public String format(Number value) {
 		if (value == null)
 			return nullValue;
-		if (value instanceof Byte)
-			return format((Byte) value);
-		if (value instanceof Short)
-			return format((Short) value);
-		if (value instanceof Integer)
-			return format((Integer) value);
-		if (value instanceof Long)
-			return format((Long) value);
-		if (value instanceof Float)
-			return format((Float) value);
-		if (value instanceof Double)
-			return format((Double) value);
-		if (numberFormatter != null) 
-			return numberFormatter.format(value);
+		switch (getKind(value.getClass())) {
+			case BYTE:
+				return format((Byte) value);
+			case SHORT:
+				return format((Short) value);
+			case INTEGER:
+				return format((Integer) value);
+			case LONG:
+				return format((Long) value);
+			case FLOAT:
+				return format((Float) value);
+			case DOUBLE:
+				return format((Double) value);
+			default:
+				return formatNumber(value);
+		}
+	}
+
+	// 非基本数字类型，如BigDecimal，可以注册子类的格式化器
+	@SuppressWarnings("unchecked")
+	private String formatNumber(Number value) {
+		Formatter<Number> formatter = multiFormatter == null ? null : (Formatter<Number>) multiFormatter.resolve(value.getClass());
+		if (formatter == null)
+			formatter = numberFormatter;
+		if (formatter != null) 
+			return formatter.format(value);
 		return value.toString();
 	}
 
+	@SuppressWarnings("unchecked")
 	public String format(Date value) {
 		if (value == null)
 			return nullValue;
-		if (dateFormatter != null) 
-			return dateFormatter.format(value);
+		Formatter<Date> formatter = dateFormatter;
+		if (multiFormatter != null && value.getClass() != Date.class)
+			formatter = (Formatter<Date>) multiFormatter.resolve(value.getClass());
+		if (formatter != null) 
+			return formatter.format(value);
 		return value.toString();
 	}
 
@@ -281,27 +470,90 @@ public class TemplateFormatter {
 	public String format(Object value) throws ParseException {
 		if (value == null)
 			return nullValue;
-		if (value instanceof String)
+		Class<?> type = value.getClass();
+		if (type == String.class)
 			return (String) value;
-		if (value instanceof Boolean)
-			return format((Boolean) value);
-		if (value instanceof Character)
-			return format((Character) value);
-		if (value instanceof Number)
-			return format((Number) value);
-		if (value instanceof Date)
-			return format((Date) value);
-		if (value instanceof byte[])
-			return format((byte[]) value);
-		if (value instanceof Template)
-			return format((Template) value);
-		if (value instanceof Expression)
-			return format((Expression) value);
-		if (value instanceof Resource)
-			return format((Resource) value);
-		if (formatter != null)
-			return formatter.format(value);
-		return StringUtils.toString(value);
+		switch (getKind(type)) {
+			case BOOLEAN:
+				return format((Boolean) value);
+			case CHARACTER:
+				return format((Character) value);
+			case BYTE:
+				return format((Byte) value);
+			case SHORT:
+				return format((Short) value);
+			case INTEGER:
+				return format((Integer) value);
+			case LONG:
+				return format((Long) value);
+			case FLOAT:
+				return format((Float) value);
+			case DOUBLE:
+				return format((Double) value);
+			case NUMBER:
+				return formatNumber((Number) value);
+			case DATE:
+				return format((Date) value);
+			case BYTES:
+				return format((byte[]) value);
+			case TEMPLATE:
+				return format((Template) value);
+			case EXPRESSION:
+				return format((Expression) value);
+			case RESOURCE:
+				return format((Resource) value);
+			default:
+				if (formatter != null)
+					return formatter.format(value);
+				return StringUtils.toString(value);
+		}
+	}
+
+	private static int getKind(Class<?> type) {
+		Integer kind = KINDS.get(type);
+		if (kind == null) {
+			kind = resolveKind(type);
+			if (KINDS.size() >= MAX_KINDS_SIZE) {
+				KINDS.clear();
+			}
+			KINDS.put(type, kind);
+		}
+		return kind.intValue();
+	}
+
+	// 与原instanceof链的判断顺序一致
+	private static int resolveKind(Class<?> type) {
+		if (String.class.isAssignableFrom(type))
+			return STRING;
+		if (Boolean.class.isAssignableFrom(type))
+			return BOOLEAN;
+		if (Character.class.isAssignableFrom(type))
+			return CHARACTER;
+		if (Byte.class.isAssignableFrom(type))
+			return BYTE;
+		if (Short.class.isAssignableFrom(type))
+			return SHORT;
+		if (Integer.class.isAssignableFrom(type))
+			return INTEGER;
+		if (Long.class.isAssignableFrom(type))
+			return LONG;
+		if (Float.class.isAssignableFrom(type))
+			return FLOAT;
+		if (Double.class.isAssignableFrom(type))
+			return DOUBLE;
+		if (Number.class.isAssignableFrom(type))
+			return NUMBER;
+		if (Date.class.isAssignableFrom(type))
+			return DATE;
+		if (byte[].class.equals(type))
+			return BYTES;
+		if (Template.class.isAssignableFrom(type))
+			return TEMPLATE;
+		if (Expression.class.isAssignableFrom(type))
+			return EXPRESSION;
+		if (Resource.class.isAssignableFrom(type))
+			return RESOURCE;
+		return OTHER;
 	}
 
 	public byte[] serialize(String value) {
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.parsers.templates;
+
+import httl.Context;
+import httl.Engine;
+import httl.Template;
+import httl.spi.Filter;
+import httl.spi.Formatter;
+import httl.spi.Interceptor;
+import httl.spi.Switcher;
+
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writer Macro Template, a macro compiled into a method of the owner template class. (SPI, Prototype, ThreadSafe)
+ * 
+ * @see httl.spi.parsers.AbstractParser#setMergeMacros(boolean)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class WriterMacroTemplate extends WriterTemplate {
+
+	private static final long serialVersionUID = 1L;
+
+	private final MacroInfo info;
+
+	public WriterMacroTemplate(WriterTemplate owner, int index, String name, String source, String code, 
+			Map<String, Class<?>> parameterTypes, Map<String, Class<?>> contextTypes, int offset, Map<String, Template> macros, 
+			Engine engine, Interceptor interceptor, Switcher switcher, Filter filter, 
+			Formatter<?> formatter, Map<Class<?>, Object> functions,
+			Map<String, Template> importMacros) {
+		super(engine, interceptor, switcher, filter, formatter, functions, importMacros);
+		this.info = new MacroInfo(owner, index, name, source, code, parameterTypes, contextTypes, offset, macros);
+	}
+
+	@Override
+	protected void doRender(Context context, Writer writer) throws Exception {
+		((WriterTemplate) info.owner).doRenderMacro(info.index, this, context, writer);
+	}
+
+	public String getName() {
+		return info.name;
+	}
+
+	public String getEncoding() {
+		return info.owner.getEncoding();
+	}
+
+	public Locale getLocale() {
+		return info.owner.getLocale();
+	}
+
+	public long getLastModified() {
+		return info.owner.getLastModified();
+	}
+
+	public long getLength() {
+		return info.source.length();
+	}
+
+	public String getSource() {
+		return info.source;
+	}
+
+	public String getCode() {
+		return info.code;
+	}
+
+	public Map<String, Class<?>> getParameterTypes() {
+		return info.parameterTypes;
+	}
+
+	public Map<String, Class<?>> getContextTypes() {
+		return info.contextTypes;
+	}
+
+	@Override
+	public Map<String, Template> getMacros() {
+		return info.macros;
+	}
+
+	@Override
+	protected Map<String, Class<?>> getMacroTypes() {
+		return null;
+	}
+
+	public boolean isMacro() {
+		return true;
+	}
+
+	public int getOffset() {
+		return info.offset;
+	}
+
+}
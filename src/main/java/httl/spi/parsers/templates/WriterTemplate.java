@@ -23,6 +23,9 @@ import httl.spi.Formatter;
 import httl.spi.Interceptor;
 import httl.spi.Listener;
 import httl.spi.Switcher;
+import httl.util.BufferPool;
+import httl.util.FilteredWriter;
+import httl.util.UnsafeBufferedWriter;
 import httl.util.UnsafeStringWriter;
 
 import java.io.IOException;
@@ -43,6 +46,9 @@ public abstract class WriterTemplate extends AbstractTemplate {
 	
 	private static final long serialVersionUID = 7127901461769617745L;
 
+	// The last evaluated size, as the pooled buffer size hint.
+	private transient int evaluateSize;
+
 	public WriterTemplate(Engine engine, Interceptor interceptor, Switcher switcher, Filter filter, 
 			Formatter<?> formatter, Map<Class<?>, Object> functions,
 			Map<String, Template> importMacros){
@@ -54,13 +60,16 @@ public abstract class WriterTemplate extends AbstractTemplate {
 	}
 
 	public Object evaluate(Map<String, Object> parameters) throws ParseException {
-		UnsafeStringWriter writer = new UnsafeStringWriter();
+		UnsafeStringWriter writer = BufferPool.getWriter(evaluateSize);
 		try {
 			render(parameters, writer);
+			evaluateSize = writer.getBuffer().length();
+			return writer.toString();
 		} catch (IOException e) {
 			throw new RuntimeException(e.getMessage(), e);
+		} finally {
+			BufferPool.putWriter(writer);
 		}
-		return writer.toString();
 	}
 
 	public void render(Map<String, Object> parameters, OutputStream stream) throws IOException, ParseException {
@@ -72,8 +81,23 @@ public abstract class WriterTemplate extends AbstractTemplate {
 	public void render(Map<String, Object> parameters, Writer writer) throws IOException, ParseException {
 		if (writer == null) 
 		 	throw new IllegalArgumentException("writer == null");
-		if (Context.getContext().getTemplate() == this)
+		Context current = Context.peekContext();
+		if (current != null && current.getTemplate() == this)
 			throw new IllegalStateException("The template " + getName() + " can not be recursive rendering the self template.");
+		int bufferSize = getOutputBufferSize();
+		if (bufferSize > 0 && ! (writer instanceof UnsafeBufferedWriter) 
+				&& ! (writer instanceof UnsafeStringWriter)
+				&& ! (writer instanceof FilteredWriter)) {
+			// 外层渲染时，先无锁写入缓冲区，再大块写出，当渲染失败时，丢弃已缓冲的内容
+			UnsafeBufferedWriter buffer = new UnsafeBufferedWriter(writer, bufferSize, getOutputBufferWatermark());
+			try {
+				render(parameters, buffer);
+				buffer.flushBuffer();
+			} finally {
+				buffer.release();
+			}
+			return;
+		}
 		Context context = Context.pushContext(this, parameters, writer);
 		try {
 			Interceptor interceptor = getInterceptor();
@@ -107,4 +131,9 @@ public abstract class WriterTemplate extends AbstractTemplate {
 
 	protected abstract void doRender(Context context, Writer writer) throws Exception;
 
+	// 合并到模板类中的宏, 由模板类按序号分派到对应的宏方法, see WriterMacroTemplate
+	protected void doRenderMacro(int index, Template macro, Context context, Writer writer) throws Exception {
+		throw new IllegalStateException("No such merged macro " + index + " in template " + getName());
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.reporters;
+
+import httl.spi.Logger;
+import httl.spi.Reporter;
+import httl.util.TemplateMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * LoggerReporter. (SPI, Singleton, ThreadSafe)
+ * 
+ * Log the template metrics at info level, the most expensive templates first.
+ * 
+ * @see httl.spi.interceptors.MetricsInterceptor#setReporter(Reporter)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class LoggerReporter implements Reporter {
+
+	private static final Comparator<TemplateMetrics> TOTAL_TIME_COMPARATOR = new Comparator<TemplateMetrics>() {
+		public int compare(TemplateMetrics o1, TemplateMetrics o2) {
+			long t1 = o1.getTotalNanos();
+			long t2 = o2.getTotalNanos();
+			return t1 > t2 ? -1 : (t1 < t2 ? 1 : 0);
+		}
+	};
+
+	private Logger logger;
+
+	/**
+	 * httl.properties: loggers=httl.spi.loggers.Log4jLogger
+	 */
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	public void report(Collection<TemplateMetrics> metrics) {
+		if (logger == null || ! logger.isInfoEnabled() || metrics == null) {
+			return;
+		}
+		List<TemplateMetrics> list = new ArrayList<TemplateMetrics>();
+		for (TemplateMetrics m : metrics) {
+			if (m.getCount() > 0) {
+				list.add(m);
+			}
+		}
+		if (list.isEmpty()) {
+			return;
+		}
+		Collections.sort(list, TOTAL_TIME_COMPARATOR);
+		StringBuilder buf = new StringBuilder("Template metrics:");
+		for (TemplateMetrics m : list) {
+			buf.append("\n\t");
+			buf.append(m.toString());
+		}
+		logger.info(buf.toString());
+	}
+
+}
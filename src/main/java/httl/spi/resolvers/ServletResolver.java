@@ -15,6 +15,7 @@
  */
 package httl.spi.resolvers;
 
+import httl.Context;
 import httl.spi.Resolver;
 import httl.spi.loaders.ServletLoader;
 import httl.util.ClassUtils;
@@ -35,6 +36,13 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * ServletResolver. (SPI, Singleton, ThreadSafe)
  * 
+ * The request and response are taken from the thread binding of this filter, or of set(request, response),
+ * which must be removed by remove() in a finally block. Without the binding, they are taken from
+ * the "request" and "response" parameters of the render context, e.g. passed by WebEngine.render(),
+ * so no per-thread state is kept.
+ * 
+ * @see httl.web.WebEngine#render(HttpServletRequest, HttpServletResponse, String, java.util.Map, Object)
+ * 
  * @author Liang Fei (liangfei0201 AT gmail DOT com)
  */
 public class ServletResolver implements Resolver, Filter {
@@ -73,11 +81,29 @@ public class ServletResolver implements Resolver, Filter {
 	}
 
 	public static HttpServletRequest getRequest() {
-		return REQUEST_LOCAL.get();
+		HttpServletRequest request = REQUEST_LOCAL.get();
+		if (request == null) {
+			request = getContextValue(REQUEST_KEY, HttpServletRequest.class);
+		}
+		return request;
 	}
 	
 	public static HttpServletResponse getResponse() {
-		return RESPONSE_LOCAL.get();
+		HttpServletResponse response = RESPONSE_LOCAL.get();
+		if (response == null) {
+			response = getContextValue(RESPONSE_KEY, HttpServletResponse.class);
+		}
+		return response;
+	}
+
+	// 渲染上下文中显式传入的请求或响应
+	private static <T> T getContextValue(String key, Class<T> type) {
+		Context context = Context.peekContext();
+		if (context == null) {
+			return null;
+		}
+		Object value = context.get(key);
+		return type.isInstance(value) ? type.cast(value) : null;
 	}
 
 	public static HttpServletRequest getAndCheckRequest() {
@@ -122,7 +148,9 @@ public class ServletResolver implements Resolver, Filter {
 	}
 
 	public Object get(String key) {
-		HttpServletRequest request = getRequest();
+		// 上下文中有request或response时, 不会再找到这里, 只取线程绑定的, 以免递归
+		boolean servletKey = REQUEST_KEY.equals(key) || RESPONSE_KEY.equals(key);
+		HttpServletRequest request = servletKey ? REQUEST_LOCAL.get() : getRequest();
 		if (request == null) {
 			return null;
 		}
@@ -173,7 +201,7 @@ public class ServletResolver implements Resolver, Filter {
 			return request;
 		}
 		if (RESPONSE_KEY.equals(key)) {
-			return getResponse();
+			return RESPONSE_LOCAL.get();
 		}
 		if (SESSION_KEY.equals(key)) {
 			return request.getSession();
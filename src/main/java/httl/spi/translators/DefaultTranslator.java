@@ -22,16 +22,22 @@ import httl.spi.Translator;
 import httl.spi.sequences.StringSequence;
 import httl.spi.translators.expressions.ExpressionImpl;
 import httl.spi.translators.expressions.Node;
+import httl.util.CacheStatistics;
 import httl.util.ClassUtils;
+import httl.util.ConcurrentLinkedHashMap;
 import httl.util.StringUtils;
 
 import java.text.ParseException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -49,6 +55,8 @@ public class DefaultTranslator implements Translator {
 	private Compiler compiler;
 	
 	private Class<?> defaultParameterType;
+
+	private int expressionCompileThreshold;
 	
 	protected String[] importPackages;
 
@@ -56,6 +64,13 @@ public class DefaultTranslator implements Translator {
 
 	private final List<StringSequence> sequences = new CopyOnWriteArrayList<StringSequence>();
 
+	private final CacheStatistics translationCacheStatistics = new CacheStatistics("translation.cache");
+
+	private volatile ConcurrentMap<String, Translation> translationCache;
+
+	// 每个线程复用一个解析器, 避免每个表达式重新分配扫描缓存和操作符栈
+	private final ThreadLocal<DfaParser> parsers = new ThreadLocal<DfaParser>();
+
 	/**
 	 * httl.properties: engine=httl.spi.engines.DefaultEngine
 	 */
@@ -84,6 +99,44 @@ public class DefaultTranslator implements Translator {
 		this.defaultParameterType = ClassUtils.forName(defaultParameterType);
 	}
 
+	/**
+	 * httl.properties: translation.cache.capacity=10000
+	 */
+	public void setTranslationCacheCapacity(int capacity) {
+		if (capacity > 0) {
+			translationCache = new ConcurrentLinkedHashMap<String, Translation>(capacity);
+		} else {
+			translationCache = null;
+		}
+	}
+
+	/**
+	 * httl.properties: expression.compile.threshold=1000
+	 */
+	public void setExpressionCompileThreshold(int threshold) {
+		this.expressionCompileThreshold = threshold;
+	}
+
+	/**
+	 * httl.properties: evaluator.cache.capacity=10000
+	 * 
+	 * The evaluator cache is shared by all the engines, the capacity of the last initialized engine applies.
+	 * 
+	 * @see httl.spi.translators.expressions.ExpressionImpl#setEvaluatorCacheCapacity(long)
+	 */
+	public void setEvaluatorCacheCapacity(long capacity) {
+		ExpressionImpl.setEvaluatorCacheCapacity(capacity);
+	}
+
+	/**
+	 * Get the translation cache statistics.
+	 * 
+	 * @return translation cache statistics
+	 */
+	public CacheStatistics getTranslationCacheStatistics() {
+		return translationCacheStatistics;
+	}
+
 	public void setImportMethods(Object[] importMethods) {
 		for (Object function : importMethods) {
 			if (function instanceof Class) {
@@ -115,10 +168,133 @@ public class DefaultTranslator implements Translator {
 	}
 
 	public Expression translate(String source, Map<String, Class<?>> parameterTypes, int offset) throws ParseException {
-		source = StringUtils.unescapeHtml(source);
+		if (source.indexOf('&') >= 0) {
+			source = StringUtils.unescapeHtml(source);
+		}
+		ConcurrentMap<String, Translation> cache = translationCache;
+		if (cache == null) {
+			return doTranslate(source, parameterTypes, offset);
+		}
+		Translation translation = cache.get(source);
+		if (translation != null && translation.matches(parameterTypes)) {
+			translationCacheStatistics.hit();
+			return translation.getExpression(offset);
+		}
+		translationCacheStatistics.miss();
+		TypeRecorder recorder = new TypeRecorder(parameterTypes);
+		ExpressionImpl expression = doTranslate(source, recorder, offset);
+		cache.put(source, new Translation(recorder.stop(), expression));
+		return expression;
+	}
+
+	// 节点位置相对于表达式, 以便缓存的节点树在其它位置复用, 解析错误位置加上表达式位置
+	private ExpressionImpl doTranslate(String source, Map<String, Class<?>> parameterTypes, int offset) throws ParseException {
 		Set<String> variables = new HashSet<String>();
-		Node node = new DfaParser(this, parameterTypes, defaultParameterType, functions.keySet(), sequences, importPackages, offset).parse(source, variables);
-		return new ExpressionImpl(source, variables, parameterTypes, offset, node, node.getCode(), node.getReturnType(), engine, compiler, importPackages, functions);
+		DfaParser parser = parsers.get();
+		if (parser == null) {
+			parser = new DfaParser(this, parameterTypes, defaultParameterType, functions.keySet(), sequences, importPackages, 0);
+		} else {
+			parsers.set(null); // 解析期间占用, 重入时创建新的解析器
+			parser.reset(parameterTypes, 0);
+		}
+		try {
+			Node node;
+			try {
+				node = parser.parse(source, variables);
+			} finally {
+				parser.reset(null, 0);
+				parsers.set(parser);
+			}
+			return new ExpressionImpl(source, variables, parameterTypes, offset, node, node.getCode(), node.getReturnType(), engine, compiler, importPackages, functions, expressionCompileThreshold);
+		} catch (ParseException e) {
+			ParseException exception = new ParseException(e.getMessage(), e.getErrorOffset() + offset);
+			exception.setStackTrace(e.getStackTrace());
+			throw exception;
+		}
+	}
+
+	/**
+	 * Translated expression, valid while every parameter type looked up by the translation is unchanged.
+	 * The node tree only sees the recorded parameter types, and its offsets are relative to the expression.
+	 */
+	private final class Translation {
+
+		private final String[] keys;
+
+		private final Class<?>[] types;
+
+		private final ExpressionImpl expression;
+
+		Translation(Map<String, Class<?>> lookups, ExpressionImpl expression) {
+			this.keys = lookups.keySet().toArray(new String[lookups.size()]);
+			this.types = lookups.values().toArray(new Class<?>[lookups.size()]);
+			this.expression = expression;
+		}
+
+		boolean matches(Map<String, Class<?>> parameterTypes) {
+			for (int i = 0; i < keys.length; i ++) {
+				if (parameterTypes.get(keys[i]) != types[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		ExpressionImpl getExpression(int offset) {
+			if (expression.getOffset() == offset) {
+				return expression;
+			}
+			Node node = expression.getNode();
+			return new ExpressionImpl(expression.getSource(), expression.getParameterTypes().keySet(), expression.getParameterTypes(), offset, node, expression.getCode(), expression.getReturnType(), engine, compiler, importPackages, functions, expressionCompileThreshold);
+		}
+
+	}
+
+	/**
+	 * Parameter types view, records the type of every key looked up until stopped,
+	 * then only holds the recorded types, not the template parameter types.
+	 */
+	private static final class TypeRecorder extends AbstractMap<String, Class<?>> {
+
+		private volatile Map<String, Class<?>> parameterTypes;
+
+		private volatile Map<String, Class<?>> lookups = new LinkedHashMap<String, Class<?>>();
+
+		TypeRecorder(Map<String, Class<?>> parameterTypes) {
+			this.parameterTypes = parameterTypes;
+		}
+
+		Map<String, Class<?>> stop() {
+			Map<String, Class<?>> result = lookups;
+			lookups = null;
+			parameterTypes = Collections.unmodifiableMap(result);
+			return result;
+		}
+
+		private Class<?> record(Object key) {
+			Class<?> type = parameterTypes.get(key);
+			Map<String, Class<?>> map = lookups;
+			if (map != null && key instanceof String) {
+				map.put((String) key, type);
+			}
+			return type;
+		}
+
+		@Override
+		public Class<?> get(Object key) {
+			return record(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return record(key) != null || parameterTypes.containsKey(key);
+		}
+
+		@Override
+		public Set<Map.Entry<String, Class<?>>> entrySet() {
+			return parameterTypes.entrySet();
+		}
+
 	}
 
 }
\ No newline at end of file
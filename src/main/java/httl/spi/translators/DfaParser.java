@@ -37,11 +37,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * Deterministic Finite state Automata (DFA) Expression Parser (ThreadSafe)
+ * Deterministic Finite state Automata (DFA) Expression Parser (Prototype, ThreadConfined)
+ * 
+ * The parser keeps its scan buffers, token list and operator stacks between parse calls,
+ * so one instance can be reused by one thread for many expressions, see {@link #reset(Map, int)}.
  * 
  * @see httl.spi.translators.DefaultTranslator
  * 
@@ -89,11 +90,18 @@ public class DfaParser {
 	
 	private static final Set<String> UNARY_OPERATORS = new HashSet<String>(Arrays.asList(new String[]{"+", "-", "!", "~", "new", "["}));
 	
-	private static final Pattern BLANK_PATTERN = Pattern.compile("^(\\s+)");
-	
+	// 字符类型表, 预先由getCharType(char)计算, 扫描时直接查表
+	private static final int[] CHAR_TYPES = new int[128];
+
+	static {
+		for (char ch = 0; ch < CHAR_TYPES.length; ch ++) {
+			CHAR_TYPES[ch] = getCharType(ch);
+		}
+	}
+
 	private final Translator translator;
 
-	private final Map<String, Class<?>> parameterTypes;
+	private Map<String, Class<?>> parameterTypes;
 
 	private final Class<?> defaultType;
 
@@ -103,8 +111,14 @@ public class DfaParser {
 
 	private final String[] packages;
 
-	private final int offset;
+	private int offset;
 	
+	private final List<Token> tokens = new ArrayList<Token>();
+
+	private final StringBuilder buffer = new StringBuilder();
+
+	private final StringBuilder remain = new StringBuilder();
+
 	private final LinkedStack<Node> parameterStack = new LinkedStack<Node>();
 
 	private final LinkedStack<Operator> operatorStack = new LinkedStack<Operator>();
@@ -120,13 +134,37 @@ public class DfaParser {
 		this.packages = packages;
 		this.offset = offset;
 	}
+
+	/**
+	 * Reset the parser for the next expression.
+	 * 
+	 * @param parameterTypes - the parameter types of the next expression
+	 * @param offset - the offset of the next expression
+	 */
+	public void reset(Map<String, Class<?>> parameterTypes, int offset) {
+		this.parameterTypes = parameterTypes;
+		this.offset = offset;
+		clear();
+	}
+
+	private void clear() {
+		tokens.clear();
+		buffer.setLength(0);
+		remain.setLength(0);
+		parameterStack.clear();
+		operatorStack.clear();
+		operatorTokens.clear();
+	}
 	
 	private int getTokenOffset(Token token) {
 		int offset = token.getOffset();
 		String msg = token.getMessage();
-		Matcher matcher = BLANK_PATTERN.matcher(msg);
-		if (matcher.find()) {
-			return offset + matcher.group(1).length();
+		int blank = 0;
+		while (blank < msg.length() && isBlank(msg.charAt(blank))) {
+			blank ++;
+		}
+		if (blank > 0) {
+			return offset + blank;
 		}
 		if (offset < 0) {
 			offset = 0;
@@ -134,7 +172,11 @@ public class DfaParser {
 		return offset;
 	}
 	
-	private int getCharType(char ch) {
+	private static boolean isBlank(char ch) {
+		return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+	}
+	
+	private static int getCharType(char ch) {
 		switch (ch) {
 			case ' ': case '\t': case '\n': case '\r': case '\f': case '\b':
 				return 0;
@@ -249,9 +291,13 @@ public class DfaParser {
 	
 	public List<Token> scan(String charStream) throws ParseException {
 		List<Token> tokens = new ArrayList<Token>();
+		scan(charStream, tokens, new StringBuilder(), new StringBuilder());
+		return tokens;
+	}
+
+	private void scan(String charStream, List<Token> tokens, StringBuilder buffer, StringBuilder remain) throws ParseException {
 		// 解析时状态 ----
-		StringBuilder buffer = new StringBuilder(); // 缓存字符
-		StringBuilder remain = new StringBuilder(); // 残存字符
+		// buffer: 缓存字符, remain: 残存字符
 		int state = 0; // 当前状态
 		char ch; // 当前字符
 		int offset = -1;
@@ -271,7 +317,7 @@ public class DfaParser {
 			}
 
 			buffer.append(ch); // 将字符加入缓存
-			int type = getCharType(ch); // 获取字符类型
+			int type = ch < CHAR_TYPES.length ? CHAR_TYPES[ch] : 9; // 获取字符类型
 			state = states[state][type]; // 从状态机图中取下一状态
 			if (state < 0) { // 负数表示接收状态
 				if (state == E || state == B || state == T) {
@@ -297,11 +343,19 @@ public class DfaParser {
 			String message = buffer.toString();
 			tokens.add(new Token(message, offset - message.length(), 0));
 		}
-		return tokens;
 	}
 	
 	public Node parse(String source, Set<String> variables) throws ParseException {
-		List<Token> tokens = scan(source);
+		clear();
+		try {
+			return doParse(source, variables);
+		} finally {
+			clear();
+		}
+	}
+
+	private Node doParse(String source, Set<String> variables) throws ParseException {
+		scan(source, tokens, buffer, remain);
 		boolean beforeOperator = true;
 		for (int i = 0; i < tokens.size(); i ++) {
 			Token token = tokens.get(i);
@@ -19,8 +19,11 @@ import httl.Context;
 import httl.Engine;
 import httl.Expression;
 import httl.spi.Compiler;
+import httl.util.CacheStatistics;
 import httl.util.ClassUtils;
+import httl.util.ConcurrentLinkedHashMap;
 import httl.util.Digest;
+import httl.util.StringUtils;
 
 import java.io.Serializable;
 import java.text.ParseException;
@@ -29,8 +32,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * ExpressionImpl. (SPI, Prototype, ThreadSafe)
@@ -41,7 +42,36 @@ public class ExpressionImpl implements Expression, Serializable {
 
 	private static final long serialVersionUID = 1L;
 	
-	private static final ConcurrentMap<String, Evaluator> EVALUATOR_CACHE = new ConcurrentHashMap<String, Evaluator>();
+	private static final CacheStatistics EVALUATOR_CACHE_STATISTICS = new CacheStatistics("evaluator.cache");
+
+	private static final ConcurrentLinkedHashMap<String, CachedEvaluator> EVALUATOR_CACHE = new ConcurrentLinkedHashMap.Builder<String, CachedEvaluator>()
+			.maximumWeightedCapacity(10000)
+			.listener(new ConcurrentLinkedHashMap.EvictionListener<String, CachedEvaluator>() {
+				public void onEviction(String className, CachedEvaluator evaluator) {
+					EVALUATOR_CACHE_STATISTICS.evict();
+				}
+			}).build();
+
+	/**
+	 * Set the expression evaluator cache capacity, shared by all the expressions.
+	 * 
+	 * The cache is shared by all the engines in the class loader,
+	 * so the capacity set last applies to all of them.
+	 * 
+	 * @param capacity - max compiled evaluators, no limit if less than or equal to zero
+	 */
+	public static void setEvaluatorCacheCapacity(long capacity) {
+		EVALUATOR_CACHE.setCapacity(capacity > 0 ? capacity : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Get the expression evaluator cache statistics, shared by all the expressions.
+	 * 
+	 * @return evaluator cache statistics
+	 */
+	public static CacheStatistics getEvaluatorCacheStatistics() {
+		return EVALUATOR_CACHE_STATISTICS;
+	}
 
 	private final Engine engine;
 
@@ -65,11 +95,24 @@ public class ExpressionImpl implements Expression, Serializable {
 
 	private final Map<Class<?>, Object> functions;
 
-	private volatile String md5;
+	private final int compileThreshold;
+
+	private volatile String className;
 	
 	private volatile Evaluator evaluator;
-	
+
+	private volatile boolean compiled;
+
+	private transient int evaluations; // 非精确计数, 无需同步
+
 	public ExpressionImpl(String source, Set<String> variables, Map<String, Class<?>> parameterTypes, int offset, Node node, String code, Class<?> returnType, Engine engine, Compiler compiler, String[] importPackages, Map<Class<?>, Object> functions){
+		this(source, variables, parameterTypes, offset, node, code, returnType, engine, compiler, importPackages, functions, 0);
+	}
+
+	/**
+	 * @param compileThreshold - evaluate the node tree directly, until evaluated the threshold times, then compile it to an evaluator class. always compile if less than or equal to zero.
+	 */
+	public ExpressionImpl(String source, Set<String> variables, Map<String, Class<?>> parameterTypes, int offset, Node node, String code, Class<?> returnType, Engine engine, Compiler compiler, String[] importPackages, Map<Class<?>, Object> functions, int compileThreshold){
 		this.engine = engine;
 		this.compiler = compiler;
 		this.source = source;
@@ -81,6 +124,7 @@ public class ExpressionImpl implements Expression, Serializable {
 		this.importPackages = importPackages;
 		this.importPackageSet = new HashSet<String>(Arrays.asList(importPackages));
 		this.functions = functions;
+		this.compileThreshold = compileThreshold;
 	}
 	
 	private static Map<String, Class<?>> getUsedParameterTypes(Set<String> variables, Map<String, Class<?>> parameterTypes) {
@@ -104,12 +148,9 @@ public class ExpressionImpl implements Expression, Serializable {
 	}
 
 	public Object evaluate(Map<String, Object> parameters) throws ParseException {
-		if (evaluator == null) {
-			synchronized (this) {
-				if (evaluator == null) { // double check
-					evaluator = newEvaluator(); // lazy compile
-				}
-			}
+		Evaluator evaluator = this.evaluator;
+		if (evaluator == null || (! compiled && ++ evaluations >= compileThreshold)) {
+			evaluator = getEvaluator();
 		}
 		try {
 			return evaluator.evaluate(parameters);
@@ -185,6 +226,7 @@ public class ExpressionImpl implements Expression, Serializable {
 		String sourceCode = "package " + Evaluator.class.getPackage().getName() + ";\n" 
 				+ imports.toString()
 				+ "public class " + className + " implements " + Evaluator.class.getName() + " {\n" 
+				+ "public static final String $SRC = \"" + StringUtils.escapeString(source) + "\";\n"
 				+ funtionFileds
 				+ "public " + className + "(Map functions) {\n"
 				+ functionInits
@@ -201,22 +243,70 @@ public class ExpressionImpl implements Expression, Serializable {
 		}
 	}
 
-	private Evaluator newEvaluator() {
-		if (md5 == null) {
-			md5 = Digest.getMD5(source);
+	private synchronized Evaluator getEvaluator() throws ParseException {
+		if (compiled) { // double check
+			return evaluator;
 		}
-		String className = (Evaluator.class.getSimpleName() + "_" + md5);
-		Evaluator evaluator = EVALUATOR_CACHE.get(className);
+		if (evaluator == null && compileThreshold > 0) {
+			Evaluator cached = getCachedEvaluator(getEvaluatorClassName());
+			if (cached == null) {
+				evaluator = NodeEvaluator.create(node, parameterTypes); // 未编译前直接解释执行
+				if (evaluator != null) {
+					return evaluator;
+				}
+			} else {
+				EVALUATOR_CACHE_STATISTICS.hit();
+				evaluator = cached;
+				compiled = true;
+				return evaluator;
+			}
+		}
+		evaluator = newEvaluator(); // lazy compile
+		compiled = true;
+		return evaluator;
+	}
+
+	private String getEvaluatorClassName() {
+		if (className == null) {
+			String name = Evaluator.class.getSimpleName() + "_" + Digest.getHash(source);
+			CachedEvaluator cached = EVALUATOR_CACHE.get(name);
+			if (cached != null && ! source.equals(cached.source)) {
+				// 哈希冲突时, 改用MD5命名
+				name = Evaluator.class.getSimpleName() + "_" + Digest.getMD5(source);
+			}
+			className = name;
+		}
+		return className;
+	}
+
+	private Evaluator getCachedEvaluator(String className) {
+		CachedEvaluator cached = EVALUATOR_CACHE.get(className);
+		return cached == null || ! source.equals(cached.source) ? null : cached.evaluator;
+	}
+
+	private Evaluator newEvaluator() {
+		String className = getEvaluatorClassName();
+		Evaluator evaluator = getCachedEvaluator(className);
 		if (evaluator == null) {
+			EVALUATOR_CACHE_STATISTICS.miss();
 			try {
-				evaluator = (Evaluator) newEvaluatorClass(className).getConstructor(Map.class).newInstance(functions);
-				Evaluator old = EVALUATOR_CACHE.putIfAbsent(className, evaluator);
-				if (old != null) {
-					evaluator = old;
+				Class<?> cls = newEvaluatorClass(className);
+				if (! source.equals(cls.getField("$SRC").get(null))) {
+					// 类名哈希冲突, 已编译的同名类来自其它表达式, 改用MD5命名
+					className = Evaluator.class.getSimpleName() + "_" + Digest.getMD5(source);
+					this.className = className;
+					cls = newEvaluatorClass(className);
+				}
+				evaluator = (Evaluator) cls.getConstructor(Map.class).newInstance(functions);
+				CachedEvaluator old = EVALUATOR_CACHE.putIfAbsent(className, new CachedEvaluator(source, evaluator));
+				if (old != null && source.equals(old.source)) {
+					evaluator = old.evaluator;
 				}
 			} catch (Exception e) {
 				throw new IllegalStateException("Failed to create expression instance. class: " + className + ", offset: " + getOffset() + ", cause:" + ClassUtils.toString(e));
 			}
+		} else {
+			EVALUATOR_CACHE_STATISTICS.hit();
 		}
 		return evaluator;
 	}
@@ -244,5 +334,19 @@ public class ExpressionImpl implements Expression, Serializable {
 	public Engine getEngine() {
 		return engine;
 	}
+
+	private static class CachedEvaluator {
+
+		// 表达式源码, 命中时校验, 避免哈希冲突时返回其它表达式的求值器
+		private final String source;
+
+		private final Evaluator evaluator;
+
+		public CachedEvaluator(String source, Evaluator evaluator) {
+			this.source = source;
+			this.evaluator = evaluator;
+		}
+
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.expressions;
+
+import httl.util.ClassUtils;
+
+import java.text.ParseException;
+import java.util.Map;
+
+/**
+ * NodeEvaluator. (SPI, Prototype, ThreadSafe)
+ * 
+ * Evaluate the expression node tree directly, without generating a class.
+ * Only the primitive arithmetic, comparison, logic and string concatenation
+ * are supported, which have the same semantics as the generated java code.
+ * 
+ * @see httl.spi.translators.expressions.ExpressionImpl#evaluate(Map)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+abstract class NodeEvaluator implements Evaluator {
+
+	private final Class<?> type;
+
+	NodeEvaluator(Class<?> type) {
+		this.type = type;
+	}
+
+	/**
+	 * The java type of the result, null for the null constant.
+	 */
+	Class<?> getType() {
+		return type;
+	}
+
+	public abstract Object evaluate(Map<String, Object> parameters);
+
+	/**
+	 * Create the node evaluator.
+	 * 
+	 * @param node - expression node
+	 * @param parameterTypes - used parameter types
+	 * @return node evaluator, or null if the node is not supported.
+	 * @throws ParseException - If the node type is unknown
+	 */
+	static NodeEvaluator create(Node node, Map<String, Class<?>> parameterTypes) throws ParseException {
+		if (node instanceof Constant) {
+			return createConstant((Constant) node);
+		} else if (node instanceof Variable) {
+			String name = ((Variable) node).getName();
+			Class<?> type = parameterTypes.get(name);
+			if (type == null || type != node.getReturnType()) {
+				return null;
+			}
+			return new VariableEvaluator(name, type);
+		} else if (node instanceof UnaryOperator) {
+			UnaryOperator operator = (UnaryOperator) node;
+			NodeEvaluator parameter = create(operator.getParameter(), parameterTypes);
+			if (parameter == null) {
+				return null;
+			}
+			String name = operator.getName();
+			if ("!".equals(name) && parameter.getType() == boolean.class) {
+				return new NotEvaluator(parameter);
+			} else if ("-".equals(name) && isNumber(parameter.getType())) {
+				return new NegativeEvaluator(parameter);
+			}
+			return null;
+		} else if (node instanceof BinaryOperator) {
+			BinaryOperator operator = (BinaryOperator) node;
+			NodeEvaluator left = create(operator.getLeftParameter(), parameterTypes);
+			if (left == null) {
+				return null;
+			}
+			NodeEvaluator right = create(operator.getRightParameter(), parameterTypes);
+			if (right == null) {
+				return null;
+			}
+			return createBinary(operator.getName(), left, right);
+		}
+		return null;
+	}
+
+	private static NodeEvaluator createConstant(Constant constant) throws ParseException {
+		Object value = constant.getValue();
+		Class<?> type = constant.getReturnType();
+		if (value == null) {
+			return "null".equals(constant.getCode()) ? new ConstantEvaluator(null, null) : null;
+		}
+		// 字面量中的转义符由java编译器处理
+		if (value instanceof String && ((String) value).indexOf('\\') >= 0
+				|| value instanceof Character && ((Character) value == '\\' || (Character) value == '\'')) {
+			return null;
+		}
+		return new ConstantEvaluator(value, type);
+	}
+
+	private static NodeEvaluator createBinary(String name, NodeEvaluator left, NodeEvaluator right) {
+		Class<?> leftType = left.getType();
+		Class<?> rightType = right.getType();
+		if ("&&".equals(name) || "||".equals(name)) {
+			if (leftType == boolean.class && rightType == boolean.class) {
+				return new LogicEvaluator(name.charAt(0) == '&', left, right);
+			}
+		} else if ("==".equals(name) || "!=".equals(name)) {
+			boolean not = name.charAt(0) == '!';
+			if (leftType == null || rightType == null) {
+				if ((leftType == null || ! leftType.isPrimitive()) 
+						&& (rightType == null || ! rightType.isPrimitive())) {
+					return new SameEvaluator(not, left, right);
+				}
+			} else if (! leftType.isPrimitive() && ! rightType.isPrimitive()) {
+				return new EqualsEvaluator(not, left, right);
+			} else if (isNumber(leftType) && isNumber(rightType)) {
+				return new CompareEvaluator(name, left, right);
+			} else if (leftType == boolean.class && rightType == boolean.class) {
+				return new SameEvaluator(not, left, right);
+			}
+		} else if (">".equals(name) || ">=".equals(name) || "<".equals(name) || "<=".equals(name)
+				|| "gt".equals(name) || "ge".equals(name) || "lt".equals(name) || "le".equals(name)) {
+			if (isNumber(leftType) && isNumber(rightType)) {
+				return new CompareEvaluator(name, left, right);
+			}
+		} else if ("+".equals(name) || "-".equals(name) || "*".equals(name) || "/".equals(name) || "%".equals(name)) {
+			if (isNumber(leftType) && isNumber(rightType)) {
+				return new ArithmeticEvaluator(name.charAt(0), left, right);
+			}
+			if ("+".equals(name) && leftType != null && rightType != null
+					&& ! isNumber(leftType) && ! isNumber(rightType)
+					&& (leftType == String.class || rightType == String.class)) {
+				return new ConcatEvaluator(left, right);
+			}
+		}
+		return null;
+	}
+
+	private static boolean isNumber(Class<?> type) {
+		return type != null && type.isPrimitive() && type != boolean.class && type != void.class;
+	}
+
+	/**
+	 * Binary numeric promotion of the java language.
+	 */
+	private static Class<?> promote(Class<?> leftType, Class<?> rightType) {
+		if (leftType == double.class || rightType == double.class) {
+			return double.class;
+		} else if (leftType == float.class || rightType == float.class) {
+			return float.class;
+		} else if (leftType == long.class || rightType == long.class) {
+			return long.class;
+		}
+		return int.class;
+	}
+
+	private static int toInt(Object value) {
+		return value instanceof Character ? ((Character) value).charValue() : ((Number) value).intValue();
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Character ? ((Character) value).charValue() : ((Number) value).longValue();
+	}
+
+	private static float toFloat(Object value) {
+		return value instanceof Character ? ((Character) value).charValue() : ((Number) value).floatValue();
+	}
+
+	private static double toDouble(Object value) {
+		return value instanceof Character ? ((Character) value).charValue() : ((Number) value).doubleValue();
+	}
+
+	private static final class ConstantEvaluator extends NodeEvaluator {
+
+		private final Object value;
+
+		ConstantEvaluator(Object value, Class<?> type) {
+			super(type);
+			this.value = value;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			return value;
+		}
+
+	}
+
+	private static final class VariableEvaluator extends NodeEvaluator {
+
+		private final String name;
+
+		private final Class<?> castType;
+
+		private final Object defaultValue;
+
+		VariableEvaluator(String name, Class<?> type) {
+			super(type);
+			this.name = name;
+			if (type.isPrimitive()) {
+				this.castType = ClassUtils.getBoxedClass(type);
+				this.defaultValue = getDefaultValue(type);
+			} else {
+				this.castType = type;
+				this.defaultValue = null;
+			}
+		}
+
+		private static Object getDefaultValue(Class<?> type) {
+			if (type == boolean.class) {
+				return Boolean.FALSE;
+			} else if (type == char.class) {
+				return Character.valueOf('\0');
+			} else if (type == byte.class) {
+				return Byte.valueOf((byte) 0);
+			} else if (type == short.class) {
+				return Short.valueOf((short) 0);
+			} else if (type == long.class) {
+				return Long.valueOf(0);
+			} else if (type == float.class) {
+				return Float.valueOf(0);
+			} else if (type == double.class) {
+				return Double.valueOf(0);
+			}
+			return Integer.valueOf(0);
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			Object value = parameters.get(name);
+			if (value == null) {
+				return defaultValue;
+			}
+			return castType.cast(value);
+		}
+
+	}
+
+	private static final class NotEvaluator extends NodeEvaluator {
+
+		private final NodeEvaluator parameter;
+
+		NotEvaluator(NodeEvaluator parameter) {
+			super(boolean.class);
+			this.parameter = parameter;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			return ((Boolean) parameter.evaluate(parameters)).booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+		}
+
+	}
+
+	private static final class NegativeEvaluator extends NodeEvaluator {
+
+		private final NodeEvaluator parameter;
+
+		NegativeEvaluator(NodeEvaluator parameter) {
+			super(promote(parameter.getType(), int.class));
+			this.parameter = parameter;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			Object value = parameter.evaluate(parameters);
+			Class<?> type = getType();
+			if (type == double.class) {
+				return Double.valueOf(- toDouble(value));
+			} else if (type == float.class) {
+				return Float.valueOf(- toFloat(value));
+			} else if (type == long.class) {
+				return Long.valueOf(- toLong(value));
+			}
+			return Integer.valueOf(- toInt(value));
+		}
+
+	}
+
+	private static final class LogicEvaluator extends NodeEvaluator {
+
+		private final boolean and;
+
+		private final NodeEvaluator left;
+
+		private final NodeEvaluator right;
+
+		LogicEvaluator(boolean and, NodeEvaluator left, NodeEvaluator right) {
+			super(boolean.class);
+			this.and = and;
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			boolean value = ((Boolean) left.evaluate(parameters)).booleanValue();
+			if (value != and) { // 短路
+				return Boolean.valueOf(value);
+			}
+			return right.evaluate(parameters);
+		}
+
+	}
+
+	private static final class SameEvaluator extends NodeEvaluator {
+
+		private final boolean not;
+
+		private final NodeEvaluator left;
+
+		private final NodeEvaluator right;
+
+		SameEvaluator(boolean not, NodeEvaluator left, NodeEvaluator right) {
+			super(boolean.class);
+			this.not = not;
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			Object value = left.evaluate(parameters);
+			Object other = right.evaluate(parameters);
+			boolean same = value instanceof Boolean ? value.equals(other) : value == other;
+			return Boolean.valueOf(same != not);
+		}
+
+	}
+
+	private static final class EqualsEvaluator extends NodeEvaluator {
+
+		private final boolean not;
+
+		private final NodeEvaluator left;
+
+		private final NodeEvaluator right;
+
+		EqualsEvaluator(boolean not, NodeEvaluator left, NodeEvaluator right) {
+			super(boolean.class);
+			this.not = not;
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			Object value = left.evaluate(parameters);
+			if (value == null) {
+				return Boolean.FALSE; // 与生成代码一致: 左值为空时为false
+			}
+			return Boolean.valueOf(value.equals(right.evaluate(parameters)) != not);
+		}
+
+	}
+
+	private static final class CompareEvaluator extends NodeEvaluator {
+
+		private final String name;
+
+		private final Class<?> type;
+
+		private final NodeEvaluator left;
+
+		private final NodeEvaluator right;
+
+		CompareEvaluator(String name, NodeEvaluator left, NodeEvaluator right) {
+			super(boolean.class);
+			if ("gt".equals(name)) {
+				name = ">";
+			} else if ("ge".equals(name)) {
+				name = ">=";
+			} else if ("lt".equals(name)) {
+				name = "<";
+			} else if ("le".equals(name)) {
+				name = "<=";
+			}
+			this.name = name;
+			this.type = promote(left.getType(), right.getType());
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			Object leftValue = left.evaluate(parameters);
+			Object rightValue = right.evaluate(parameters);
+			int c;
+			// NaN与任何值比较均为false
+			if (type == double.class) {
+				double l = toDouble(leftValue);
+				double r = toDouble(rightValue);
+				c = l < r ? -1 : (l > r ? 1 : (l == r ? 0 : 2));
+			} else if (type == float.class) {
+				float l = toFloat(leftValue);
+				float r = toFloat(rightValue);
+				c = l < r ? -1 : (l > r ? 1 : (l == r ? 0 : 2));
+			} else {
+				long l = toLong(leftValue);
+				long r = toLong(rightValue);
+				c = l < r ? -1 : (l > r ? 1 : 0);
+			}
+			boolean result;
+			if ("==".equals(name)) {
+				result = c == 0;
+			} else if ("!=".equals(name)) {
+				result = c != 0;
+			} else if (">".equals(name)) {
+				result = c == 1;
+			} else if (">=".equals(name)) {
+				result = c == 1 || c == 0;
+			} else if ("<".equals(name)) {
+				result = c == -1;
+			} else {
+				result = c == -1 || c == 0;
+			}
+			return Boolean.valueOf(result);
+		}
+
+	}
+
+	private static final class ArithmeticEvaluator extends NodeEvaluator {
+
+		private final char operator;
+
+		private final NodeEvaluator left;
+
+		private final NodeEvaluator right;
+
+		ArithmeticEvaluator(char operator, NodeEvaluator left, NodeEvaluator right) {
+			super(promote(left.getType(), right.getType()));
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			Object leftValue = left.evaluate(parameters);
+			Object rightValue = right.evaluate(parameters);
+			Class<?> type = getType();
+			if (type == double.class) {
+				double l = toDouble(leftValue);
+				double r = toDouble(rightValue);
+				switch (operator) {
+					case '+': return Double.valueOf(l + r);
+					case '-': return Double.valueOf(l - r);
+					case '*': return Double.valueOf(l * r);
+					case '/': return Double.valueOf(l / r);
+					default: return Double.valueOf(l % r);
+				}
+			} else if (type == float.class) {
+				float l = toFloat(leftValue);
+				float r = toFloat(rightValue);
+				switch (operator) {
+					case '+': return Float.valueOf(l + r);
+					case '-': return Float.valueOf(l - r);
+					case '*': return Float.valueOf(l * r);
+					case '/': return Float.valueOf(l / r);
+					default: return Float.valueOf(l % r);
+				}
+			} else if (type == long.class) {
+				long l = toLong(leftValue);
+				long r = toLong(rightValue);
+				switch (operator) {
+					case '+': return Long.valueOf(l + r);
+					case '-': return Long.valueOf(l - r);
+					case '*': return Long.valueOf(l * r);
+					case '/': return Long.valueOf(l / r);
+					default: return Long.valueOf(l % r);
+				}
+			} else {
+				int l = toInt(leftValue);
+				int r = toInt(rightValue);
+				switch (operator) {
+					case '+': return Integer.valueOf(l + r);
+					case '-': return Integer.valueOf(l - r);
+					case '*': return Integer.valueOf(l * r);
+					case '/': return Integer.valueOf(l / r);
+					default: return Integer.valueOf(l % r);
+				}
+			}
+		}
+
+	}
+
+	private static final class ConcatEvaluator extends NodeEvaluator {
+
+		private final NodeEvaluator left;
+
+		private final NodeEvaluator right;
+
+		ConcatEvaluator(NodeEvaluator left, NodeEvaluator right) {
+			super(String.class);
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object evaluate(Map<String, Object> parameters) {
+			return String.valueOf(left.evaluate(parameters)) + String.valueOf(right.evaluate(parameters));
+		}
+
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import httl.Engine;
+import httl.Subscriber;
+import httl.Template;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * AsyncUtils. (Tool, Static, ThreadSafe)
+ * 
+ * Render any template asynchronously, on the executor of its engine,
+ * so the Template interface is unchanged for the other implementations.
+ * 
+ * @see httl.spi.engines.DefaultEngine#setExecutor(Executor)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class AsyncUtils {
+
+	private static final String EXECUTOR = "executor";
+
+	// subscriber.executor配置的实例, 以属性名注册
+	private static final String SUBSCRIBER_EXECUTOR = "subscriberExecutor";
+
+	private static final String OUTPUT_BUFFER_SIZE = "output.buffer.size";
+
+	private static final String SUBSCRIBER_TIMEOUT = "subscriber.timeout";
+
+	private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	// 当前线程正在执行异步渲染任务, 只在任务执行期间设置
+	private static final ThreadLocal<Boolean> RENDERING = new ThreadLocal<Boolean>();
+
+	/**
+	 * Render the template asynchronously, on the engine executor.
+	 * 
+	 * <pre>
+	 * Map&lt;String, Object&gt; parameters = new HashMap&lt;String, Object&gt;();
+	 * parameters.put("foo", foo);
+	 * Future&lt;Object&gt; future = AsyncUtils.renderAsync(template, parameters);
+	 * Object result = future.get();
+	 * </pre>
+	 * 
+	 * The caller context is not inherited, pass all the variables by the parameters.
+	 * 
+	 * @see httl.Template#evaluate(Map)
+	 * @param template - rendered template
+	 * @param parameters - render parameters
+	 * @return future of the render result, the same as evaluate(parameters)
+	 */
+	public static Future<Object> renderAsync(Template template, Map<String, Object> parameters) {
+		return renderAsync(template.getEngine().getProperty(EXECUTOR, Executor.class), template, parameters);
+	}
+
+	/**
+	 * Render the template asynchronously, on the engine executor, and publish the output in chunks.
+	 * 
+	 * <pre>
+	 * Map&lt;String, Object&gt; parameters = new HashMap&lt;String, Object&gt;();
+	 * parameters.put("foo", foo);
+	 * AsyncUtils.renderAsync(template, parameters, subscriber);
+	 * </pre>
+	 * 
+	 * The caller context is not inherited, pass all the variables by the parameters.
+	 * The render runs on the subscriber executor, or the engine executor if none,
+	 * and blocks its thread while the subscriber has not requested the next chunk,
+	 * until the subscriber.timeout.
+	 * 
+	 * @see httl.Subscriber
+	 * @see httl.spi.executors.SubscriberExecutor
+	 * @param template - rendered template
+	 * @param parameters - render parameters
+	 * @param subscriber - output chunks subscriber
+	 */
+	public static void renderAsync(Template template, Map<String, Object> parameters, Subscriber subscriber) {
+		Engine engine = template.getEngine();
+		Executor executor = engine.getProperty(SUBSCRIBER_EXECUTOR, Executor.class);
+		if (executor == null) {
+			executor = engine.getProperty(EXECUTOR, Executor.class);
+		}
+		int chunkSize = engine.getProperty(OUTPUT_BUFFER_SIZE, 0);
+		renderAsync(executor, template, parameters, subscriber, 
+				chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE, engine.getProperty(SUBSCRIBER_TIMEOUT, 0));
+	}
+
+	public static Future<Object> renderAsync(Executor executor, final Template template, final Map<String, Object> parameters) {
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				return template.evaluate(parameters);
+			}
+		});
+		execute(executor, task);
+		return task;
+	}
+
+	public static void renderAsync(Executor executor, final Template template, final Map<String, Object> parameters, 
+			final Subscriber subscriber, final int chunkSize, final long timeout) {
+		if (subscriber == null)
+			throw new IllegalArgumentException("subscriber == null");
+		execute(executor, new Runnable() {
+			public void run() {
+				SubscriberOutputStream stream = new SubscriberOutputStream(subscriber, chunkSize, timeout);
+				try {
+					subscriber.onSubscribe(stream);
+					template.render(parameters, stream);
+					stream.close();
+				} catch (Throwable e) {
+					// 订阅者取消时，不再通知
+					if (! stream.isCancelled()) {
+						subscriber.onError(e);
+					}
+					return;
+				}
+				if (! stream.isCancelled()) {
+					subscriber.onComplete();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Run the task on the executor, or on the current thread if no executor,
+	 * or if the current thread is already running an asynchronous render,
+	 * so the nested renders never wait for the tasks queued behind them, and never exhaust the executor.
+	 * 
+	 * @param executor - render executor
+	 * @param task - render task
+	 */
+	public static void execute(Executor executor, final Runnable task) {
+		if (executor == null || RENDERING.get() != null) {
+			task.run();
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				RENDERING.set(Boolean.TRUE);
+				try {
+					task.run();
+				} finally {
+					RENDERING.remove();
+				}
+			}
+		});
+	}
+
+	private AsyncUtils() {}
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * BufferPool. (Tool, Static, ThreadSafe)
+ * 
+ * Recycle the render buffer chunks and the evaluate buffers in lock-free slots shared by all threads,
+ * so the pooled buffers are not held per thread, and can be reused by short-lived (virtual) threads.
+ * Each thread starts probing from its own slot, to reduce the contention.
+ * 
+ * @see httl.util.UnsafeBufferedWriter
+ * @see httl.util.UnsafeBufferedOutputStream
+ * @see httl.spi.parsers.templates.WriterTemplate#evaluate(java.util.Map)
+ * @see httl.spi.parsers.templates.OutputStreamTemplate#evaluate(java.util.Map)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class BufferPool {
+
+	// The max pooled chunks, power of 2.
+	private static final int MAX_CHUNKS = 64;
+
+	// The evaluate buffer size classes: 256, 512, 1K, ... 64K, the larger buffers are not pooled.
+	private static final int MIN_SIZE_CLASS = 8;
+
+	private static final int MAX_SIZE_CLASS = 16;
+
+	private static final int SIZE_CLASSES = MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1;
+
+	// The max pooled evaluate buffers per size class, power of 2.
+	private static final int MAX_BUFFERS = 16;
+
+	// The max probed slots per get or put.
+	private static final int MAX_PROBES = 8;
+
+	private static final Slots<char[]> CHARS = new Slots<char[]>(MAX_CHUNKS);
+
+	private static final Slots<byte[]> BYTES = new Slots<byte[]>(MAX_CHUNKS);
+
+	private static final Slots<UnsafeStringWriter>[] WRITERS = newSlots(SIZE_CLASSES, MAX_BUFFERS);
+
+	private static final Slots<UnsafeByteArrayOutputStream>[] STREAMS = newSlots(SIZE_CLASSES, MAX_BUFFERS);
+
+	private BufferPool() {}
+
+	private static <T> Slots<T>[] newSlots(int count, int size) {
+		@SuppressWarnings("unchecked")
+		Slots<T>[] slots = (Slots<T>[]) new Slots<?>[count]; // 泛型数组不能直接创建
+		for (int i = 0; i < count; i ++) {
+			slots[i] = new Slots<T>(size);
+		}
+		return slots;
+	}
+
+	// The probe start of the current thread.
+	private static int getProbe() {
+		long id = Thread.currentThread().getId();
+		return (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+	}
+
+	// The size class of the capacity, round down, -1 if not pooled.
+	private static int getSizeClass(int capacity) {
+		int c = 31 - Integer.numberOfLeadingZeros(capacity);
+		if (c < MIN_SIZE_CLASS || c > MAX_SIZE_CLASS) {
+			return -1;
+		}
+		return c - MIN_SIZE_CLASS;
+	}
+
+	// The first size class which can hold the size without grow.
+	private static int getFitSizeClass(int size) {
+		if (size <= (1 << MIN_SIZE_CLASS)) {
+			return 0;
+		}
+		int c = 32 - Integer.numberOfLeadingZeros(size - 1);
+		return Math.min(c, MAX_SIZE_CLASS) - MIN_SIZE_CLASS;
+	}
+
+	/**
+	 * Get an empty string writer, which capacity is close to the expected size.
+	 * 
+	 * @param size - expected size
+	 * @return string writer
+	 */
+	public static UnsafeStringWriter getWriter(int size) {
+		int probe = getProbe();
+		int fit = getFitSizeClass(size);
+		for (int i = fit; i < SIZE_CLASSES; i ++) {
+			UnsafeStringWriter writer = WRITERS[i].poll(probe);
+			if (writer != null) {
+				return writer;
+			}
+		}
+		for (int i = fit - 1; i >= 0; i --) {
+			UnsafeStringWriter writer = WRITERS[i].poll(probe);
+			if (writer != null) {
+				return writer;
+			}
+		}
+		return new UnsafeStringWriter(Math.max(size, 1 << MIN_SIZE_CLASS));
+	}
+
+	public static void putWriter(UnsafeStringWriter writer) {
+		if (writer == null) {
+			return;
+		}
+		int sizeClass = getSizeClass(writer.getBuffer().capacity());
+		if (sizeClass < 0) {
+			return;
+		}
+		writer.getBuffer().setLength(0);
+		WRITERS[sizeClass].offer(getProbe(), writer);
+	}
+
+	/**
+	 * Get an empty byte array output stream, which capacity is close to the expected size.
+	 * 
+	 * @param size - expected size
+	 * @return byte array output stream
+	 */
+	public static UnsafeByteArrayOutputStream getOutputStream(int size) {
+		int probe = getProbe();
+		int fit = getFitSizeClass(size);
+		for (int i = fit; i < SIZE_CLASSES; i ++) {
+			UnsafeByteArrayOutputStream stream = STREAMS[i].poll(probe);
+			if (stream != null) {
+				return stream;
+			}
+		}
+		for (int i = fit - 1; i >= 0; i --) {
+			UnsafeByteArrayOutputStream stream = STREAMS[i].poll(probe);
+			if (stream != null) {
+				return stream;
+			}
+		}
+		return new UnsafeByteArrayOutputStream(Math.max(size, 1 << MIN_SIZE_CLASS));
+	}
+
+	public static void putOutputStream(UnsafeByteArrayOutputStream stream) {
+		if (stream == null) {
+			return;
+		}
+		int sizeClass = getSizeClass(stream.buffer.length);
+		if (sizeClass < 0) {
+			return;
+		}
+		stream.reset();
+		STREAMS[sizeClass].offer(getProbe(), stream);
+	}
+
+	public static char[] getChars(int size) {
+		char[] chunk = CHARS.poll(getProbe());
+		if (chunk != null && chunk.length == size) {
+			return chunk;
+		}
+		return new char[size];
+	}
+
+	public static void putChars(char[] chunk) {
+		if (chunk == null) {
+			return;
+		}
+		CHARS.offer(getProbe(), chunk);
+	}
+
+	public static byte[] getBytes(int size) {
+		byte[] chunk = BYTES.poll(getProbe());
+		if (chunk != null && chunk.length == size) {
+			return chunk;
+		}
+		return new byte[size];
+	}
+
+	public static void putBytes(byte[] chunk) {
+		if (chunk == null) {
+			return;
+		}
+		BYTES.offer(getProbe(), chunk);
+	}
+
+	private static final class Slots<T> {
+
+		private final AtomicReferenceArray<T> slots;
+
+		private final int mask;
+
+		public Slots(int size) {
+			this.slots = new AtomicReferenceArray<T>(size);
+			this.mask = size - 1;
+		}
+
+		public T poll(int probe) {
+			for (int i = 0; i < MAX_PROBES; i ++) {
+				int index = (probe + i) & mask;
+				T value = slots.get(index);
+				if (value != null && slots.compareAndSet(index, value, null)) {
+					return value;
+				}
+			}
+			return null;
+		}
+
+		public boolean offer(int probe, T value) {
+			for (int i = 0; i < MAX_PROBES; i ++) {
+				int index = (probe + i) & mask;
+				if (slots.get(index) == null && slots.compareAndSet(index, null, value)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+}
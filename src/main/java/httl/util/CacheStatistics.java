@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CacheStatistics. (Tool, Prototype, ThreadSafe)
+ * 
+ * @see httl.spi.engines.DefaultEngine#getTemplateCacheStatistics()
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class CacheStatistics {
+
+	private final String name;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	public CacheStatistics(String name) {
+		this.name = name;
+	}
+
+	public void hit() {
+		hitCount.incrementAndGet();
+	}
+
+	public void miss() {
+		missCount.incrementAndGet();
+	}
+
+	public void evict() {
+		evictionCount.incrementAndGet();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getRequestCount() {
+		return hitCount.get() + missCount.get();
+	}
+
+	public double getHitRatio() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total == 0 ? 1.0d : (double) hits / total;
+	}
+
+	public void reset() {
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return name + ": hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", ratio=" + Math.round(getHitRatio() * 10000) / 100d + "%"
+				+ (getEvictionCount() > 0 ? ", evictions=" + getEvictionCount() : "");
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CompileStatistics. (Tool, Static, ThreadSafe)
+ * 
+ * The time histograms of the template compile stages, shared by all the engines in the class loader,
+ * as the compiled classes are. The stage times of a template include its nested macros.
+ * 
+ * @see httl.spi.engines.DefaultEngine#getCompileStatistics()
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class CompileStatistics {
+
+	/**
+	 * Read the template source from the resource.
+	 */
+	public static final String READ = "read";
+
+	/**
+	 * Parse the directives and translate the expressions to java code.
+	 */
+	public static final String PARSE = "parse";
+
+	/**
+	 * Generate the template class source.
+	 */
+	public static final String GENERATE = "generate";
+
+	/**
+	 * Compile the class source to bytecode, by javac or javassist.
+	 */
+	public static final String COMPILE = "compile";
+
+	/**
+	 * Define and load the compiled class.
+	 */
+	public static final String LOAD = "load";
+
+	/**
+	 * Construct the template instance, including the class initialization.
+	 */
+	public static final String INSTANTIATE = "instantiate";
+
+	private static final Map<String, Histogram> STAGES;
+
+	static {
+		Map<String, Histogram> stages = new LinkedHashMap<String, Histogram>();
+		for (String stage : new String[] { READ, PARSE, GENERATE, COMPILE, LOAD, INSTANTIATE }) {
+			stages.put(stage, new Histogram());
+		}
+		STAGES = Collections.unmodifiableMap(stages);
+	}
+
+	private CompileStatistics() {}
+
+	/**
+	 * Record the stage time.
+	 * 
+	 * @param stage - stage name, e.g. CompileStatistics.PARSE
+	 * @param nanos - elapsed nanoseconds
+	 */
+	public static void record(String stage, long nanos) {
+		Histogram histogram = STAGES.get(stage);
+		if (histogram == null) {
+			throw new IllegalArgumentException("Unknown compile stage " + stage);
+		}
+		histogram.record(nanos);
+	}
+
+	/**
+	 * Get the stage histograms, in the stage order.
+	 * 
+	 * @return stage name to nanoseconds histogram
+	 */
+	public static Map<String, Histogram> getStages() {
+		return STAGES;
+	}
+
+	public static void reset() {
+		for (Histogram histogram : STAGES.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Format the stage times as "stage=millis" pairs for the log events.
+	 * 
+	 * @param stages - stage names
+	 * @param nanos - elapsed nanoseconds of each stage
+	 * @return formatted event
+	 */
+	public static String toEvent(String[] stages, long[] nanos) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < stages.length; i ++) {
+			if (i > 0) {
+				buf.append(", ");
+			}
+			buf.append(stages[i]);
+			buf.append("=");
+			buf.append(Math.round(nanos[i] / 1000d) / 1000d);
+			buf.append("ms");
+		}
+		return buf.toString();
+	}
+
+}
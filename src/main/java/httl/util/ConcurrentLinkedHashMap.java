@@ -1674,7 +1674,7 @@ public class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
 	 * }
 	 * </pre>
 	 */
-	static final class Builder<K, V> {
+	public static final class Builder<K, V> {
 		static final int DEFAULT_CONCURRENCY_LEVEL = 16;
 		static final int DEFAULT_INITIAL_CAPACITY = 16;
 
@@ -2211,7 +2211,7 @@ public class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
 		int weightOf(K key, V value);
 	}
 
-	static interface EvictionListener<K, V> {
+	public static interface EvictionListener<K, V> {
 
 		/**
 		 * A call-back notification that the entry was evicted.
@@ -2224,7 +2224,7 @@ public class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
 		void onEviction(K key, V value);
 	}
 
-	static interface Weigher<V> {
+	public static interface Weigher<V> {
 
 		/**
 		 * Measures an object's weight to determine how many units of capacity
@@ -19,9 +19,11 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * DateUtils. (Tool, Static, ThreadSafe)
@@ -32,43 +34,74 @@ public class DateUtils {
 
 	private static final String DEFAULT_FORMAT = "yyyy-MM-dd HH:mm:ss";
 
-	private static final ThreadLocal<SimpleDateFormat> DEFAULT_LOCAL = new ThreadLocal<SimpleDateFormat>() {
+	// 格式可能来自模板中的变量, 限制缓存大小
+	private static final ConcurrentMap<String, FastDateFormat> FORMATS = new ConcurrentLinkedHashMap<String, FastDateFormat>(1000);
+
+	private static final FastDateFormat DEFAULT = new FastDateFormat(DEFAULT_FORMAT, null);
+
+	private static final int PARSER_CACHE_SIZE = 100;
+
+	// SimpleDateFormat不是线程安全的, 解析器按线程缓存, 同样限制每个线程的缓存大小
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> PARSERS = new ThreadLocal<Map<String, SimpleDateFormat>>() {
 		@Override
-		protected SimpleDateFormat initialValue() {
-			return new SimpleDateFormat(DEFAULT_FORMAT);
+		protected Map<String, SimpleDateFormat> initialValue() {
+			return new LinkedHashMap<String, SimpleDateFormat>(16, 0.75f, true) {
+				private static final long serialVersionUID = 2893140593781624382L;
+				@Override
+				protected boolean removeEldestEntry(Entry<String, SimpleDateFormat> eldest) {
+					return size() > PARSER_CACHE_SIZE;
+				}
+			};
 		}
 	};
 
-	private static final ThreadLocal<Map<String, SimpleDateFormat>> LOCAL = new ThreadLocal<Map<String, SimpleDateFormat>>();
-
-	public static DateFormat getDateFormat(String format, TimeZone timeZone) {
-		if (format == null || format.length() == 0 || DEFAULT_FORMAT.equals(format)) {
-			if (timeZone == null) {
-				return DEFAULT_LOCAL.get();
-			} else {
-				format = DEFAULT_FORMAT;
-			}
-		}
-		Map<String, SimpleDateFormat> formatters = LOCAL.get();
-		if (formatters == null) {
-			formatters= new HashMap<String, SimpleDateFormat>();
-			LOCAL.set(formatters);
+	public static FastDateFormat getFastDateFormat(String format, TimeZone timeZone) {
+		if (format == null || format.length() == 0) {
+			format = DEFAULT_FORMAT;
 		}
-		String key = format;
-		if (timeZone != null) {
-			key += timeZone.getID();
+		if (timeZone == null && DEFAULT_FORMAT.equals(format)) {
+			return DEFAULT;
 		}
-		SimpleDateFormat formatter = formatters.get(key);
+		String key = timeZone == null ? format : format + "\n" + timeZone.getID();
+		FastDateFormat formatter = FORMATS.get(key);
 		if (formatter == null) {
-			formatter = new SimpleDateFormat(format);
-			if (timeZone != null) {
-				formatter.setTimeZone(timeZone);
+			formatter = new FastDateFormat(format, timeZone);
+			FastDateFormat old = FORMATS.putIfAbsent(key, formatter);
+			if (old != null) {
+				formatter = old;
 			}
-			formatters.put(key, formatter);
 		}
 		return formatter;
 	}
 
+	/**
+	 * Create a new date format, SimpleDateFormat is not thread safe, so it is never shared.
+	 */
+	public static DateFormat getDateFormat(String format, TimeZone timeZone) {
+		if (format == null || format.length() == 0) {
+			format = DEFAULT_FORMAT;
+		}
+		SimpleDateFormat formatter = new SimpleDateFormat(format);
+		if (timeZone != null) {
+			formatter.setTimeZone(timeZone);
+		}
+		return formatter;
+	}
+
+	private static SimpleDateFormat getParser(String format, TimeZone timeZone) {
+		if (format == null || format.length() == 0) {
+			format = DEFAULT_FORMAT;
+		}
+		Map<String, SimpleDateFormat> parsers = PARSERS.get();
+		String key = timeZone == null ? format : format + "\n" + timeZone.getID();
+		SimpleDateFormat parser = parsers.get(key);
+		if (parser == null) {
+			parser = (SimpleDateFormat) getDateFormat(format, timeZone);
+			parsers.put(key, parser);
+		}
+		return parser;
+	}
+
 	public static String format(Date value) {
 		return format(value, DEFAULT_FORMAT, null);
 	}
@@ -85,12 +118,12 @@ public class DateUtils {
 		if (value == null) {
 			return null;
 		}
-		return getDateFormat(format, timeZone).format(value);
+		return getFastDateFormat(format, timeZone).format(value);
 	}
 
 	public static Date parse(String value, String format, TimeZone timeZone) {
 		try {
-			return getDateFormat(format, timeZone).parse(value);
+			return getParser(format, timeZone).parse(value);
 		} catch (ParseException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
@@ -187,7 +187,8 @@ public class DelegateMap<K, V> implements Map<K, V>, Serializable {
 			private Iterator<T> iterator;
 			
 			private Iterator<T> getIterator() {
-				if (iterator == null || ! iterator.hasNext()) {
+				// 跳过空的map，直到找到有元素的下一级
+				while ((iterator == null || ! iterator.hasNext()) && level < 3) {
 					if (level < 1 && parent != null) {
 						level = 1;
 						iterator = DelegateSet.this.getCollection(parent).iterator();
@@ -197,6 +198,8 @@ public class DelegateMap<K, V> implements Map<K, V>, Serializable {
 					} else if (level < 3 && writable != null) {
 						level = 3;
 						iterator = DelegateSet.this.getCollection(writable).iterator();
+					} else {
+						level ++;
 					}
 				}
 				return iterator;
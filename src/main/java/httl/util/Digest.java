@@ -21,6 +21,12 @@ import java.security.NoSuchAlgorithmException;
 
 public class Digest {
 
+	private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+	private static final long C1 = 0x87c37b91114253d5L;
+
+	private static final long C2 = 0x4cf5ad432745937fL;
+
 	public static String getMD5(String value) {
 		return getDigest("MD5", value);
 	}
@@ -29,6 +35,90 @@ public class Digest {
 		return getDigest("SHA", value);
 	}
 	
+	/**
+	 * Get the 128-bit MurmurHash3 (x64) of the string chars, in UTF-16LE order, as 32 hex chars.
+	 * 
+	 * It is not a cryptographic hash, but much cheaper than MD5, so it is used for cache keys.
+	 * 
+	 * @param value - string value
+	 * @return hex hash
+	 */
+	public static String getHash(String value) {
+		int length = value.length();
+		long h1 = 0;
+		long h2 = 0;
+		int blocks = length >>> 3; // 8 chars, 16 bytes per block
+		int i = 0;
+		for (int b = 0; b < blocks; b ++) {
+			long k1 = value.charAt(i) | ((long) value.charAt(i + 1) << 16) 
+					| ((long) value.charAt(i + 2) << 32) | ((long) value.charAt(i + 3) << 48);
+			long k2 = value.charAt(i + 4) | ((long) value.charAt(i + 5) << 16) 
+					| ((long) value.charAt(i + 6) << 32) | ((long) value.charAt(i + 7) << 48);
+			i += 8;
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+		if (i < length) {
+			long k1 = 0;
+			long k2 = 0;
+			for (int shift = 0; i < length; i ++, shift += 16) {
+				if (shift < 64) {
+					k1 |= (long) value.charAt(i) << shift;
+				} else {
+					k2 |= (long) value.charAt(i) << (shift - 64);
+				}
+			}
+			if (k2 != 0) {
+				k2 *= C2;
+				k2 = Long.rotateLeft(k2, 33);
+				k2 *= C1;
+				h2 ^= k2;
+			}
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+		}
+		long bytes = length * 2L;
+		h1 ^= bytes;
+		h2 ^= bytes;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		char[] buf = new char[32];
+		for (int j = 15; j >= 0; j --) {
+			buf[j] = HEX_CHARS[(int) (h1 & 0xF)];
+			buf[j + 16] = HEX_CHARS[(int) (h2 & 0xF)];
+			h1 >>>= 4;
+			h2 >>>= 4;
+		}
+		return new String(buf);
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
 	public static String getDigest(String digest, String value) {
 		MessageDigest messageDigest = null;
 		try {
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * FastDateFormat. (Tool, Prototype, Immutable, ThreadSafe)
+ * 
+ * The pattern is compiled once into a list of fields, and each format computes the
+ * calendar fields arithmetically, so one instance can be shared by all threads
+ * without ThreadLocal or locking. Patterns, locales or dates that cannot be handled
+ * this way (e.g. era, week fields, non-gregorian calendars, dates before the gregorian cutover,
+ * standalone month names) fall back to a synchronized SimpleDateFormat, with the same output.
+ * 
+ * @see httl.util.DateUtils#format(Date, String, TimeZone)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public final class FastDateFormat {
+
+	// 1582-10-15 00:00:00 UTC, SimpleDateFormat使用儒略历处理此前的日期
+	private static final long GREGORIAN_CUTOVER = -12219292800000L;
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	private static final int[] DAYS_BEFORE_MONTH = { 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334 };
+
+	private static final char LITERAL = '\'';
+
+	private final String pattern;
+
+	private final TimeZone timeZone;
+
+	private final Locale locale;
+
+	private final char[] fields;
+
+	private final int[] counts;
+
+	private final String[] literals;
+
+	private final String[] months;
+
+	private final String[] shortMonths;
+
+	private final String[] weekdays;
+
+	private final String[] shortWeekdays;
+
+	private final String[] amPms;
+
+	private final SimpleDateFormat fallback;
+
+	private final boolean fallbackOnly;
+
+	private final int estimateLength;
+
+	public FastDateFormat(String pattern, TimeZone timeZone) {
+		this(pattern, timeZone, null);
+	}
+
+	public FastDateFormat(String pattern, TimeZone timeZone, Locale locale) {
+		if (pattern == null) {
+			throw new IllegalArgumentException("date format pattern == null");
+		}
+		if (timeZone == null) {
+			timeZone = TimeZone.getDefault();
+		}
+		if (locale == null) {
+			locale = Locale.getDefault();
+		}
+		this.pattern = pattern;
+		this.timeZone = (TimeZone) timeZone.clone();
+		this.locale = locale;
+		this.fallback = new SimpleDateFormat(pattern, locale); // 同时校验格式
+		this.fallback.setTimeZone(this.timeZone);
+		DateFormatSymbols symbols = new DateFormatSymbols(locale);
+		this.months = symbols.getMonths();
+		this.shortMonths = symbols.getShortMonths();
+		this.weekdays = symbols.getWeekdays();
+		this.shortWeekdays = symbols.getShortWeekdays();
+		this.amPms = symbols.getAmPmStrings();
+		char[] fields = new char[pattern.length()];
+		int[] counts = new int[pattern.length()];
+		String[] literals = new String[pattern.length()];
+		int size = 0;
+		int length = 0;
+		// 泰国佛历等GregorianCalendar子类的年份不同
+		boolean supported = Calendar.getInstance(this.timeZone, locale).getClass() == GregorianCalendar.class
+				&& new DecimalFormatSymbols(locale).getZeroDigit() == '0';
+		int len = pattern.length();
+		for (int i = 0; i < len && supported; ) {
+			char ch = pattern.charAt(i);
+			if (ch == '\'') {
+				StringBuilder buf = new StringBuilder();
+				if (i + 1 < len && pattern.charAt(i + 1) == '\'') {
+					buf.append('\'');
+					i += 2;
+				} else {
+					i ++;
+					while (i < len) {
+						char c = pattern.charAt(i);
+						if (c == '\'') {
+							if (i + 1 < len && pattern.charAt(i + 1) == '\'') {
+								buf.append('\'');
+								i += 2;
+							} else {
+								i ++;
+								break;
+							}
+						} else {
+							buf.append(c);
+							i ++;
+						}
+					}
+				}
+				fields[size] = LITERAL;
+				literals[size ++] = buf.toString();
+				length += buf.length();
+			} else if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')) {
+				int count = 1;
+				while (i + count < len && pattern.charAt(i + count) == ch) {
+					count ++;
+				}
+				i += count;
+				switch (ch) {
+					case 'y': case 'M': case 'd': case 'H': case 'h': case 'k': case 'K':
+					case 'm': case 's': case 'S': case 'E': case 'D': case 'a': case 'Z':
+						fields[size] = ch;
+						counts[size ++] = count;
+						length += Math.max(count, 4);
+						break;
+					default:
+						supported = false;
+				}
+			} else {
+				int start = i;
+				while (i < len) {
+					char c = pattern.charAt(i);
+					if (c == '\'' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+						break;
+					}
+					i ++;
+				}
+				fields[size] = LITERAL;
+				literals[size ++] = pattern.substring(start, i);
+				length += i - start;
+			}
+		}
+		if (supported) {
+			supported = isFormatMonths(fields, counts, size);
+		}
+		this.fallbackOnly = ! supported;
+		this.fields = new char[size];
+		this.counts = new int[size];
+		this.literals = new String[size];
+		System.arraycopy(fields, 0, this.fields, 0, size);
+		System.arraycopy(counts, 0, this.counts, 0, size);
+		System.arraycopy(literals, 0, this.literals, 0, size);
+		this.estimateLength = length;
+	}
+
+	// 不含日期的格式中, SimpleDateFormat使用独立形式的月份名称 (如ru_RU: "май"而非"мая")
+	private boolean isFormatMonths(char[] fields, int[] counts, int size) {
+		int monthCount = 0;
+		for (int i = 0; i < size; i ++) {
+			if (fields[i] == 'd') {
+				return true;
+			} else if (fields[i] == 'M' && counts[i] >= 3) {
+				monthCount = Math.max(monthCount, counts[i]);
+			}
+		}
+		if (monthCount == 0) {
+			return true;
+		}
+		String[] names = monthCount >= 4 ? months : shortMonths;
+		SimpleDateFormat format = new SimpleDateFormat(monthCount >= 4 ? "MMMM" : "MMM", locale);
+		format.setTimeZone(timeZone);
+		Calendar calendar = Calendar.getInstance(timeZone, locale);
+		calendar.clear();
+		for (int month = Calendar.JANUARY; month <= Calendar.DECEMBER; month ++) {
+			calendar.set(2000, month, 15);
+			if (! format.format(calendar.getTime()).equals(names[month])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public TimeZone getTimeZone() {
+		return (TimeZone) timeZone.clone();
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	public String format(Date date) {
+		if (date == null) {
+			return null;
+		}
+		return format(date.getTime(), new StringBuilder(estimateLength)).toString();
+	}
+
+	public StringBuilder format(Date date, StringBuilder buf) {
+		return format(date.getTime(), buf);
+	}
+
+	public StringBuilder format(long time, StringBuilder buf) {
+		if (fallbackOnly || time < GREGORIAN_CUTOVER + MILLIS_PER_DAY) { // 留出时区偏移的余量
+			return fallback(time, buf);
+		}
+		long local = time + timeZone.getOffset(time);
+		long days = floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int) (local - days * MILLIS_PER_DAY);
+		// days -> year/month/day, 以0000-03-01为纪元, 每400年为一个周期
+		long z = days + 719468;
+		long era = floorDiv(z, 146097);
+		int doe = (int) (z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long y = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		if (y <= 0 || y > 99999999) {
+			return fallback(time, buf);
+		}
+		int year = (int) y;
+		int hour = millisOfDay / 3600000;
+		int minute = millisOfDay / 60000 % 60;
+		int second = millisOfDay / 1000 % 60;
+		int milli = millisOfDay % 1000;
+		for (int i = 0; i < fields.length; i ++) {
+			int count = counts[i];
+			switch (fields[i]) {
+				case LITERAL:
+					buf.append(literals[i]);
+					break;
+				case 'y':
+					if (count == 2) {
+						appendNumber(buf, year % 100, 2);
+					} else {
+						appendNumber(buf, year, count);
+					}
+					break;
+				case 'M':
+					if (count >= 4) {
+						buf.append(months[month - 1]);
+					} else if (count == 3) {
+						buf.append(shortMonths[month - 1]);
+					} else {
+						appendNumber(buf, month, count);
+					}
+					break;
+				case 'd':
+					appendNumber(buf, day, count);
+					break;
+				case 'H':
+					appendNumber(buf, hour, count);
+					break;
+				case 'k':
+					appendNumber(buf, hour == 0 ? 24 : hour, count);
+					break;
+				case 'K':
+					appendNumber(buf, hour % 12, count);
+					break;
+				case 'h':
+					appendNumber(buf, hour % 12 == 0 ? 12 : hour % 12, count);
+					break;
+				case 'm':
+					appendNumber(buf, minute, count);
+					break;
+				case 's':
+					appendNumber(buf, second, count);
+					break;
+				case 'S':
+					appendNumber(buf, milli, count);
+					break;
+				case 'a':
+					buf.append(amPms[hour < 12 ? 0 : 1]);
+					break;
+				case 'E':
+					int week = (int) floorMod(days + 4, 7) + 1; // 1970-01-01为星期四
+					buf.append(count >= 4 ? weekdays[week] : shortWeekdays[week]);
+					break;
+				case 'D':
+					boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+					appendNumber(buf, DAYS_BEFORE_MONTH[month - 1] + (leap && month > 2 ? 1 : 0) + day, count);
+					break;
+				case 'Z':
+					int offset = (int) ((local - time) / 60000);
+					if (offset < 0) {
+						buf.append('-');
+						offset = - offset;
+					} else {
+						buf.append('+');
+					}
+					appendNumber(buf, offset / 60, 2);
+					appendNumber(buf, offset % 60, 2);
+					break;
+			}
+		}
+		return buf;
+	}
+
+	private StringBuilder fallback(long time, StringBuilder buf) {
+		String value;
+		synchronized (fallback) {
+			value = fallback.format(new Date(time));
+		}
+		return buf.append(value);
+	}
+
+	private static void appendNumber(StringBuilder buf, int value, int width) {
+		if (value < 10) {
+			for (int i = 1; i < width; i ++) {
+				buf.append('0');
+			}
+			buf.append((char) ('0' + value));
+		} else if (value < 100) {
+			for (int i = 2; i < width; i ++) {
+				buf.append('0');
+			}
+			buf.append((char) ('0' + value / 10));
+			buf.append((char) ('0' + value % 10));
+		} else {
+			int digits = 3;
+			for (int v = value / 1000; v > 0; v /= 10) {
+				digits ++;
+			}
+			for (int i = digits; i < width; i ++) {
+				buf.append('0');
+			}
+			buf.append(value);
+		}
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+	}
+
+	private static long floorMod(long x, long y) {
+		return x - floorDiv(x, y) * y;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (! (obj instanceof FastDateFormat)) {
+			return false;
+		}
+		FastDateFormat other = (FastDateFormat) obj;
+		return pattern.equals(other.pattern) && timeZone.equals(other.timeZone) && locale.equals(other.locale);
+	}
+
+	@Override
+	public int hashCode() {
+		return (pattern.hashCode() * 31 + timeZone.hashCode()) * 31 + locale.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "FastDateFormat[" + pattern + "," + timeZone.getID() + "]";
+	}
+
+}
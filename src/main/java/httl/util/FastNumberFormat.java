@@ -0,0 +1,364 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * FastNumberFormat. (Tool, Prototype, Immutable, ThreadSafe)
+ * 
+ * Formats numbers for a DecimalFormat pattern, such as "###,##0.###", by writing the
+ * digits directly, without DecimalFormat and its digit list. The settings are taken from
+ * a DecimalFormat compiled once, so the output is the same as DecimalFormat (HALF_EVEN).
+ * Patterns with exponent, percent, currency or a special negative subpattern, and values
+ * out of the long range, fall back to a synchronized DecimalFormat.
+ * 
+ * The static toChars methods write the same characters as String.valueOf.
+ * 
+ * @see httl.util.NumberUtils#format(Number, String)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public final class FastNumberFormat {
+
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 
+		1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L };
+
+	// 2^53, double可以精确表示的最大整数范围
+	private static final double MAX_EXACT = 9007199254740992.0;
+
+	private static final char[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).toCharArray();
+
+	private final String pattern;
+
+	private final DecimalFormat fallback;
+
+	private final boolean fallbackOnly;
+
+	private final char[] positivePrefix;
+
+	private final char[] positiveSuffix;
+
+	private final char[] negativePrefix;
+
+	private final char[] negativeSuffix;
+
+	private final int minIntegerDigits;
+
+	private final int minFractionDigits;
+
+	private final int maxFractionDigits;
+
+	private final int groupingSize;
+
+	private final boolean decimalSeparatorAlwaysShown;
+
+	private final char groupingSeparator;
+
+	private final char decimalSeparator;
+
+	public FastNumberFormat(String pattern) {
+		this(pattern, null);
+	}
+
+	public FastNumberFormat(String pattern, Locale locale) {
+		if (pattern == null) {
+			throw new IllegalArgumentException("number format pattern == null");
+		}
+		this.pattern = pattern;
+		this.fallback = locale == null ? new DecimalFormat(pattern) : new DecimalFormat(pattern, new DecimalFormatSymbols(locale)); // 同时校验格式
+		DecimalFormatSymbols symbols = fallback.getDecimalFormatSymbols();
+		String positivePrefix = fallback.getPositivePrefix();
+		String positiveSuffix = fallback.getPositiveSuffix();
+		String negativePrefix = fallback.getNegativePrefix();
+		String negativeSuffix = fallback.getNegativeSuffix();
+		String compiled = fallback.toPattern();
+		this.positivePrefix = positivePrefix.toCharArray();
+		this.positiveSuffix = positiveSuffix.toCharArray();
+		this.negativePrefix = negativePrefix.toCharArray();
+		this.negativeSuffix = negativeSuffix.toCharArray();
+		this.minIntegerDigits = fallback.getMinimumIntegerDigits();
+		this.minFractionDigits = fallback.getMinimumFractionDigits();
+		this.maxFractionDigits = fallback.getMaximumFractionDigits();
+		this.groupingSize = fallback.isGroupingUsed() ? fallback.getGroupingSize() : 0;
+		this.decimalSeparatorAlwaysShown = fallback.isDecimalSeparatorAlwaysShown();
+		this.groupingSeparator = symbols.getGroupingSeparator();
+		this.decimalSeparator = symbols.getDecimalSeparator();
+		this.fallbackOnly = symbols.getZeroDigit() != '0'
+				|| fallback.getMultiplier() != 1
+				|| fallback.getMaximumIntegerDigits() < 20
+				|| minIntegerDigits > 20
+				|| maxFractionDigits >= POWERS_OF_TEN.length
+				|| compiled.indexOf('E') >= 0
+				|| compiled.indexOf('\u00A4') >= 0
+				|| ! negativePrefix.equals(symbols.getMinusSign() + positivePrefix)
+				|| ! negativeSuffix.equals(positiveSuffix);
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public String format(Number value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Integer || value instanceof Long 
+				|| value instanceof Short || value instanceof Byte) {
+			return format(value.longValue());
+		}
+		if (value instanceof Double || value instanceof Float) {
+			return format(value.doubleValue());
+		}
+		return fallback(value);
+	}
+
+	public String format(long value) {
+		if (fallbackOnly || value == Long.MIN_VALUE) {
+			return fallback(Long.valueOf(value));
+		}
+		char[] buf = new char[getCapacity()];
+		return new String(buf, 0, toChars(value < 0, value < 0 ? - value : value, 0, buf));
+	}
+
+	public String format(double value) {
+		if (fallbackOnly || Double.isNaN(value) || Double.isInfinite(value)) {
+			return fallback(Double.valueOf(value));
+		}
+		boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+		double abs = Math.abs(value);
+		long power = POWERS_OF_TEN[maxFractionDigits];
+		double scaled = abs * power;
+		if (scaled >= MAX_EXACT / 2) {
+			return fallback(Double.valueOf(value));
+		}
+		long digits = (long) scaled;
+		double diff = scaled - digits;
+		if (Math.abs(diff - 0.5) <= Math.ulp(scaled) * 4) {
+			// 乘法有舍入误差，离中点太近时，交给DecimalFormat按其规则舍入
+			return fallback(Double.valueOf(value));
+		}
+		if (diff > 0.5) {
+			digits ++;
+		}
+		char[] buf = new char[getCapacity()];
+		return new String(buf, 0, toChars(negative, digits / power, digits % power, buf));
+	}
+
+	public StringBuilder format(long value, StringBuilder buf) {
+		return buf.append(format(value));
+	}
+
+	public StringBuilder format(double value, StringBuilder buf) {
+		return buf.append(format(value));
+	}
+
+	private String fallback(Number value) {
+		synchronized (fallback) {
+			return fallback.format(value);
+		}
+	}
+
+	private int getCapacity() {
+		int integerDigits = Math.max(minIntegerDigits, 20);
+		return negativePrefix.length + negativeSuffix.length + integerDigits 
+				+ (groupingSize > 0 ? integerDigits / groupingSize + 1 : 0) + maxFractionDigits + 1;
+	}
+
+	private int toChars(boolean negative, long integer, long fraction, char[] buf) {
+		int pos = 0;
+		char[] prefix = negative ? negativePrefix : positivePrefix;
+		System.arraycopy(prefix, 0, buf, pos, prefix.length);
+		pos += prefix.length;
+		// 去掉小数末尾的0，但保留最少位数
+		int fractionDigits = maxFractionDigits;
+		while (fractionDigits > minFractionDigits && fraction % 10 == 0) {
+			fraction /= 10;
+			fractionDigits --;
+		}
+		int integerDigits = integer == 0 ? 0 : stringSize(integer);
+		int count = Math.max(integerDigits, minIntegerDigits);
+		if (count == 0 && fractionDigits == 0) {
+			count = 1; // 没有小数时，至少输出一个0
+		}
+		if (count > 0) {
+			int length = count + (groupingSize > 0 ? (count - 1) / groupingSize : 0);
+			int end = pos + length;
+			for (int i = 0, p = end; i < count; i ++) {
+				if (groupingSize > 0 && i > 0 && i % groupingSize == 0) {
+					buf[-- p] = groupingSeparator;
+				}
+				buf[-- p] = (char) ('0' + (int) (integer % 10));
+				integer /= 10;
+			}
+			pos = end;
+		}
+		if (fractionDigits > 0 || decimalSeparatorAlwaysShown) {
+			buf[pos ++] = decimalSeparator;
+			for (int i = fractionDigits - 1; i >= 0; i --) {
+				buf[pos + i] = (char) ('0' + (int) (fraction % 10));
+				fraction /= 10;
+			}
+			pos += fractionDigits;
+		}
+		char[] suffix = negative ? negativeSuffix : positiveSuffix;
+		System.arraycopy(suffix, 0, buf, pos, suffix.length);
+		return pos + suffix.length;
+	}
+
+	private static int stringSize(long value) {
+		long p = 10;
+		for (int i = 1; i < 19; i ++) {
+			if (value < p) {
+				return i;
+			}
+			p *= 10;
+		}
+		return 19;
+	}
+
+	/**
+	 * Write the same characters as String.valueOf(long).
+	 * 
+	 * @param buf - at least 20 chars from off
+	 * @return end offset
+	 */
+	public static int toChars(long value, char[] buf, int off) {
+		if (value == Long.MIN_VALUE) {
+			System.arraycopy(LONG_MIN_VALUE, 0, buf, off, LONG_MIN_VALUE.length);
+			return off + LONG_MIN_VALUE.length;
+		}
+		if (value < 0) {
+			buf[off ++] = '-';
+			value = - value;
+		}
+		int end = off + stringSize(value);
+		int pos = end;
+		while (value >= Integer.MAX_VALUE) {
+			buf[-- pos] = (char) ('0' + (int) (value % 10));
+			value /= 10;
+		}
+		int v = (int) value;
+		while (v >= 10) { // 转为int运算
+			buf[-- pos] = (char) ('0' + v % 10);
+			v /= 10;
+		}
+		buf[-- pos] = (char) ('0' + v);
+		return end;
+	}
+
+	/**
+	 * Write the same characters as String.valueOf(double), using the shortest decimal that
+	 * reads back as the same double. Only plain notation values (0.001 to 10^7) are written here.
+	 * 
+	 * @param buf - at least 26 chars from off
+	 * @return end offset, or -1 if the value should be formatted by String.valueOf
+	 */
+	public static int toChars(double value, char[] buf, int off) {
+		double abs = Math.abs(value);
+		if (! (abs >= 1e-3 && abs < 1e7)) { // 包括NaN
+			return -1;
+		}
+		for (int k = 1; k < POWERS_OF_TEN.length; k ++) {
+			double power = POWERS_OF_TEN[k];
+			double scaled = abs * power;
+			if (scaled >= MAX_EXACT) {
+				return -1;
+			}
+			long digits = roundHalfEven(scaled);
+			// 两个操作数都精确时，除法结果正确舍入，相等即说明该十进制数可以还原为原值
+			if (digits / power == abs) {
+				return toChars(value < 0, digits, k, buf, off);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Write the same characters as String.valueOf(float).
+	 * 
+	 * @see #toChars(double, char[], int)
+	 */
+	public static int toChars(float value, char[] buf, int off) {
+		float abs = Math.abs(value);
+		if (! (abs >= 1e-3f && abs < 1e7f)) {
+			return -1;
+		}
+		for (int k = 1; k <= 10; k ++) { // 10^10以内float可精确表示
+			double scaled = (double) abs * POWERS_OF_TEN[k];
+			if (scaled >= 16777216) { // 2^24
+				return -1;
+			}
+			long digits = roundHalfEven(scaled);
+			if ((float) digits / (float) POWERS_OF_TEN[k] == abs) {
+				return toChars(value < 0, digits, k, buf, off);
+			}
+		}
+		return -1;
+	}
+
+	private static long roundHalfEven(double value) {
+		long digits = (long) value;
+		double diff = value - digits;
+		if (diff > 0.5 || (diff == 0.5 && (digits & 1) != 0)) {
+			digits ++;
+		}
+		return digits;
+	}
+
+	private static int toChars(boolean negative, long digits, int scale, char[] buf, int off) {
+		if (negative) {
+			buf[off ++] = '-';
+		}
+		long power = POWERS_OF_TEN[scale];
+		long fraction = digits % power;
+		while (scale > 1 && fraction % 10 == 0) {
+			fraction /= 10;
+			scale --;
+		}
+		off = toChars(digits / power, buf, off);
+		buf[off ++] = '.';
+		for (int i = scale - 1; i >= 0; i --) {
+			buf[off + i] = (char) ('0' + (int) (fraction % 10));
+			fraction /= 10;
+		}
+		return off + scale;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (! (obj instanceof FastNumberFormat)) {
+			return false;
+		}
+		return fallback.equals(((FastNumberFormat) obj).fallback);
+	}
+
+	@Override
+	public int hashCode() {
+		return fallback.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "FastNumberFormat[" + pattern + "]";
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import httl.spi.Filter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * FilteredOutputStream. (Tool, Prototype, NonThreadSafe)
+ * 
+ * Decode each write, filter it, and encode the result to the target stream, without buffering.
+ * The bytes of a character split across writes are held until the next write.
+ * The target stream will not be closed.
+ * 
+ * @see httl.spi.parsers.templates.AbstractTemplate#doFilterRender(Filter, httl.Template, OutputStream)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class FilteredOutputStream extends OutputStream {
+
+	private final OutputStream out;
+
+	private final Filter filter;
+
+	private final Charset charset;
+
+	private final CharsetDecoder decoder;
+
+	// The remaining bytes of an incomplete character.
+	private byte[] remaining;
+
+	public FilteredOutputStream(OutputStream out, Filter filter, String encoding) {
+		if (out == null) {
+			throw new IllegalArgumentException("out == null");
+		}
+		if (filter == null) {
+			throw new IllegalArgumentException("filter == null");
+		}
+		this.out = out;
+		this.filter = filter;
+		this.charset = StringUtils.isEmpty(encoding) ? Charset.defaultCharset() : Charset.forName(encoding);
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	public OutputStream getOut() {
+		return out;
+	}
+
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len <= 0) {
+			return;
+		}
+		ByteBuffer in;
+		if (remaining == null) {
+			in = ByteBuffer.wrap(b, off, len);
+		} else {
+			in = ByteBuffer.allocate(remaining.length + len);
+			in.put(remaining).put(b, off, len).flip();
+			remaining = null;
+		}
+		decode(in, false);
+		if (in.hasRemaining()) {
+			remaining = new byte[in.remaining()];
+			in.get(remaining);
+		}
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		ByteBuffer in = remaining == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(remaining);
+		remaining = null;
+		decode(in, true);
+		decoder.reset();
+	}
+
+	private void decode(ByteBuffer in, boolean endOfInput) throws IOException {
+		CharBuffer chars = CharBuffer.allocate((int) (in.remaining() * decoder.maxCharsPerByte()) + 1);
+		decoder.decode(in, chars, endOfInput);
+		if (endOfInput) {
+			decoder.flush(chars);
+		}
+		chars.flip();
+		if (chars.hasRemaining()) {
+			String value = filter.filter(chars.toString());
+			if (value != null && value.length() > 0) {
+				out.write(value.getBytes(charset.name()));
+			}
+		}
+	}
+
+}
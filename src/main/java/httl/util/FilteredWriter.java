@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import httl.spi.Filter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * FilteredWriter. (Tool, Prototype, NonThreadSafe)
+ * 
+ * Filter each write and pass the result through to the target writer, without buffering.
+ * The target writer will not be closed.
+ * 
+ * @see httl.spi.parsers.templates.AbstractTemplate#doFilterRender(Filter, httl.Template, Writer)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class FilteredWriter extends Writer {
+
+	private final Writer out;
+
+	private final Filter filter;
+
+	public FilteredWriter(Writer out, Filter filter) {
+		if (out == null) {
+			throw new IllegalArgumentException("out == null");
+		}
+		if (filter == null) {
+			throw new IllegalArgumentException("filter == null");
+		}
+		this.out = out;
+		this.filter = filter;
+	}
+
+	public Writer getOut() {
+		return out;
+	}
+
+	public void write(int c) throws IOException {
+		write(String.valueOf((char) c));
+	}
+
+	public void write(char[] cs, int off, int len) throws IOException {
+		if (len > 0) {
+			write(new String(cs, off, len));
+		}
+	}
+
+	public void write(String str) throws IOException {
+		String value = filter.filter(str);
+		if (value != null && value.length() > 0) {
+			out.write(value);
+		}
+	}
+
+	public void write(String str, int off, int len) throws IOException {
+		if (len > 0) {
+			write(str.substring(off, off + len));
+		}
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public void close() throws IOException {
+	}
+
+}
@@ -36,11 +36,21 @@ public class ForeachStatus implements Serializable {
 	
 	private int index = 0;
 
+	private final transient ProfilePoint point;
+
+	private final transient long start;
+
 	public ForeachStatus(ForeachStatus parent, Object data) {
+		this(parent, data, null);
+	}
+
+	public ForeachStatus(ForeachStatus parent, Object data, ProfilePoint point) {
 		this.parent = parent;
 		this.data = data;
 		this.size = ClassUtils.getSize(data);
 		this.level = parent == null ? 0 : parent.getLevel() + 1;
+		this.point = point;
+		this.start = point == null ? 0 : System.nanoTime();
 	}
 
 	public void increment() {
@@ -51,6 +61,18 @@ public class ForeachStatus implements Serializable {
 		return parent;
 	}
 
+	/**
+	 * End the loop, and record the time and iterations to the profile point.
+	 * 
+	 * @return parent status
+	 */
+	public ForeachStatus end() {
+		if (point != null) {
+			point.record(System.nanoTime() - start, index);
+		}
+		return parent;
+	}
+
 	public Object getData() {
 		return data;
 	}
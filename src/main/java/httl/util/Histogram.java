@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram. (Tool, Prototype, ThreadSafe)
+ * 
+ * A lock free log-linear histogram of positive long values, such as nanoseconds, like HdrHistogram
+ * with one significant digit: each power of two is split into 16 buckets, so a percentile is
+ * within 6.25% of the recorded value. Recording is a few atomic increments, without allocation.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	// 最大记录2^48，超过的计入最后一个桶
+	private static final int MAX_EXPONENT = 48;
+
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(getIndex(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long m = max.get();
+		while (value > m && ! max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	private static int getIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+	}
+
+	// 桶内的最大值
+	private static long getUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		int sub = index % SUB_BUCKET_COUNT;
+		long low = (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+		return low + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotal() {
+		return total.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long c = count.get();
+		return c == 0 ? 0 : total.get() / c;
+	}
+
+	/**
+	 * Get the value at the percentile.
+	 * 
+	 * @param percentile - 0 to 100, e.g. 99.9
+	 * @return the upper bound of the bucket, never greater than the max value
+	 */
+	public long getPercentile(double percentile) {
+		long c = 0;
+		for (int i = 0; i < BUCKET_COUNT; i ++) {
+			c += buckets.get(i);
+		}
+		if (c == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(c * Math.min(100, Math.max(0, percentile)) / 100));
+		long sum = 0;
+		for (int i = 0; i < BUCKET_COUNT; i ++) {
+			sum += buckets.get(i);
+			if (sum >= rank) {
+				if (i == BUCKET_COUNT - 1) {
+					return max.get();
+				}
+				return Math.min(getUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i ++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+}
@@ -16,8 +16,7 @@
 package httl.util;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * NumberUtils. (Tool, Static, ThreadSafe)
@@ -28,34 +27,38 @@ public class NumberUtils {
 
 	private static final String DEFAULT_FORMAT = "###,##0.###";
 
-	private static final ThreadLocal<DecimalFormat> DEFAULT_LOCAL = new ThreadLocal<DecimalFormat>() {
-		@Override
-		protected DecimalFormat initialValue() {
-			return new DecimalFormat(DEFAULT_FORMAT);
-		}
-	};
+	private static final FastNumberFormat DEFAULT = new FastNumberFormat(DEFAULT_FORMAT);
 
-	private static final ThreadLocal<Map<String, DecimalFormat>> LOCAL = new ThreadLocal<Map<String, DecimalFormat>>();
+	// 格式可能来自模板中的变量, 限制缓存大小
+	private static final ConcurrentMap<String, FastNumberFormat> FORMATS = new ConcurrentLinkedHashMap<String, FastNumberFormat>(1000);
 
-	public static DecimalFormat getDecimalFormat(String format) {
+	public static FastNumberFormat getFastNumberFormat(String format) {
 		if (format == null || format.length() == 0 || DEFAULT_FORMAT.equals(format)) {
-			return DEFAULT_LOCAL.get();
-		}
-		Map<String, DecimalFormat> formatters = LOCAL.get();
-		if (formatters == null) {
-			formatters= new HashMap<String, DecimalFormat>();
-			LOCAL.set(formatters);
+			return DEFAULT;
 		}
-		DecimalFormat formatter = formatters.get(format);
+		FastNumberFormat formatter = FORMATS.get(format);
 		if (formatter == null) {
-			formatter = new DecimalFormat(format);
-			formatters.put(format, formatter);
+			formatter = new FastNumberFormat(format);
+			FastNumberFormat old = FORMATS.putIfAbsent(format, formatter);
+			if (old != null) {
+				formatter = old;
+			}
 		}
 		return formatter;
 	}
-	
+
+	/**
+	 * Create a new decimal format, DecimalFormat is not thread safe, so it is never shared.
+	 */
+	public static DecimalFormat getDecimalFormat(String format) {
+		if (format == null || format.length() == 0) {
+			format = DEFAULT_FORMAT;
+		}
+		return new DecimalFormat(format);
+	}
+
 	public static String format(Number value, String format) {
-		return getDecimalFormat(format).format(value);
+		return getFastNumberFormat(format).format(value);
 	}
-	
+
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ProfilePoint. (Tool, Prototype, ThreadSafe)
+ * 
+ * The counters of a profiled directive in the template, held by a static field of the compiled template class.
+ * 
+ * @see httl.util.Profiler
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class ProfilePoint {
+
+	private final ProfilePoint parent;
+
+	private final String template;
+
+	private final String kind;
+
+	private final int line;
+
+	private final int offset;
+
+	private final String label;
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong nanos = new AtomicLong();
+
+	private final AtomicLong iterations = new AtomicLong();
+
+	public ProfilePoint(ProfilePoint parent, String template, String kind, int line, int offset, String label) {
+		this.parent = parent;
+		this.template = template;
+		this.kind = kind;
+		this.line = line;
+		this.offset = offset;
+		this.label = label;
+	}
+
+	public void record(long elapsed) {
+		count.incrementAndGet();
+		nanos.addAndGet(elapsed);
+	}
+
+	public void record(long elapsed, long iteration) {
+		count.incrementAndGet();
+		nanos.addAndGet(elapsed);
+		iterations.addAndGet(iteration);
+	}
+
+	/**
+	 * Get the enclosing point in the same template.
+	 * 
+	 * @return parent point, null if it is the template root
+	 */
+	public ProfilePoint getParent() {
+		return parent;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Get the point kind.
+	 * 
+	 * @return Profiler.TEMPLATE, Profiler.FOREACH or Profiler.EXPRESSION
+	 */
+	public String getKind() {
+		return kind;
+	}
+
+	/**
+	 * Get the line in the template source, starting from 1.
+	 * 
+	 * @return line
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * Get the offset in the template source.
+	 * 
+	 * @return offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Get the execution count, e.g. the renders of a template, the entries of a foreach, the evaluations of an expression.
+	 * 
+	 * @return count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Get the total inclusive time.
+	 * 
+	 * @return nanoseconds
+	 */
+	public long getNanos() {
+		return nanos.get();
+	}
+
+	/**
+	 * Get the total loop iterations of a foreach.
+	 * 
+	 * @return iterations
+	 */
+	public long getIterations() {
+		return iterations.get();
+	}
+
+	public void reset() {
+		count.set(0);
+		nanos.set(0);
+		iterations.set(0);
+	}
+
+	@Override
+	public String toString() {
+		if (parent == null) {
+			return template;
+		}
+		return label + " (" + template + ":" + line + ")";
+	}
+
+}
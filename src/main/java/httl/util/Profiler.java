@@ -0,0 +1,207 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Profiler. (Tool, Static, ThreadSafe)
+ * 
+ * The registry of the profile points, which are compiled into the templates when profile=true,
+ * and exported as the collapsed stacks of FlameGraph: "frame;frame;frame value".
+ * 
+ * The frames of a template are its enclosing foreach blocks by the source, and the value is the self time in microseconds.
+ * A template rendered by another template, such as a macro, is reported as a separate root,
+ * so its time is also included in the calling expression.
+ * 
+ * The points are registered by the template name and its source version, a modified template replaces
+ * all the points of its previous version, and only the recently registered templates are kept.
+ * 
+ * @see httl.spi.parsers.AbstractParser#setProfile(boolean)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class Profiler {
+
+	public static final String TEMPLATE = "template";
+
+	public static final String FOREACH = "foreach";
+
+	public static final String EXPRESSION = "expression";
+
+	private static final int TEMPLATE_CAPACITY = 10000;
+
+	// 模板名到其当前版本的剖析点, 模板修改重新编译时整体替换, 模板名可能来自字符串模板, 限制缓存大小
+	private static final ConcurrentMap<String, TemplatePoints> TEMPLATES = new ConcurrentLinkedHashMap<String, TemplatePoints>(TEMPLATE_CAPACITY);
+
+	private Profiler() {}
+
+	/**
+	 * Get or create the profile point, the writer and the stream classes of a template share the same points.
+	 * 
+	 * @param parent - enclosing point
+	 * @param template - template name
+	 * @param version - template source version
+	 * @param kind - point kind
+	 * @param line - source line
+	 * @param offset - source offset
+	 * @param label - directive source
+	 * @return profile point
+	 */
+	public static ProfilePoint getPoint(ProfilePoint parent, String template, String version, String kind, int line, int offset, String label) {
+		for (;;) {
+			TemplatePoints points = TEMPLATES.get(template);
+			if (points != null && points.version.equals(version)) {
+				return points.getPoint(parent, template, kind, line, offset, label);
+			}
+			// 写出器和输出流两个模板类共享同一版本的剖析点, 只有一个能替换成功
+			TemplatePoints created = new TemplatePoints(version);
+			if (points == null ? TEMPLATES.putIfAbsent(template, created) == null 
+					: TEMPLATES.replace(template, points, created)) {
+				return created.getPoint(parent, template, kind, line, offset, label);
+			}
+		}
+	}
+
+	public static Collection<ProfilePoint> getPoints() {
+		List<ProfilePoint> points = new ArrayList<ProfilePoint>();
+		for (TemplatePoints template : TEMPLATES.values()) {
+			points.addAll(template.points.values());
+		}
+		return Collections.unmodifiableCollection(points);
+	}
+
+	public static void reset() {
+		for (ProfilePoint point : getPoints()) {
+			point.reset();
+		}
+	}
+
+	/**
+	 * Write the collapsed stacks, for flamegraph.pl or speedscope.
+	 * 
+	 * @param writer - output writer
+	 * @throws IOException - If an I/O error occurs
+	 */
+	public static void writeFlameGraph(Writer writer) throws IOException {
+		Collection<ProfilePoint> points = getPoints();
+		Map<ProfilePoint, Long> children = new HashMap<ProfilePoint, Long>();
+		for (ProfilePoint point : points) {
+			ProfilePoint parent = point.getParent();
+			if (parent != null) {
+				Long nanos = children.get(parent);
+				children.put(parent, (nanos == null ? 0 : nanos) + point.getNanos());
+			}
+		}
+		List<String> stacks = new ArrayList<String>();
+		for (ProfilePoint point : points) {
+			Long nanos = children.get(point);
+			long self = (point.getNanos() - (nanos == null ? 0 : nanos)) / 1000;
+			if (self <= 0) {
+				continue;
+			}
+			LinkedList<String> frames = new LinkedList<String>();
+			for (ProfilePoint p = point; p != null; p = p.getParent()) {
+				frames.addFirst(toFrame(p));
+			}
+			StringBuilder buf = new StringBuilder();
+			for (String frame : frames) {
+				if (buf.length() > 0) {
+					buf.append(';');
+				}
+				buf.append(frame);
+			}
+			buf.append(' ');
+			buf.append(self);
+			stacks.add(buf.toString());
+		}
+		Collections.sort(stacks);
+		for (String stack : stacks) {
+			writer.write(stack);
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Get the collapsed stacks.
+	 * 
+	 * @see #writeFlameGraph(Writer)
+	 * @return collapsed stacks
+	 */
+	public static String getFlameGraph() {
+		UnsafeStringWriter writer = new UnsafeStringWriter();
+		try {
+			writeFlameGraph(writer);
+		} catch (IOException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		return writer.toString();
+	}
+
+	// 帧名不能包含分号和换行，末尾的空格后是数值
+	private static String toFrame(ProfilePoint point) {
+		String frame = point.toString();
+		StringBuilder buf = new StringBuilder(frame.length());
+		for (int i = 0; i < frame.length(); i ++) {
+			char ch = frame.charAt(i);
+			if (ch == ';') {
+				buf.append(',');
+			} else if (ch == '\r' || ch == '\n' || ch == '\t') {
+				buf.append(' ');
+			} else {
+				buf.append(ch);
+			}
+		}
+		return buf.toString();
+	}
+
+	private static final class TemplatePoints {
+
+		private final String version;
+
+		private final ConcurrentMap<String, ProfilePoint> points = new ConcurrentHashMap<String, ProfilePoint>();
+
+		TemplatePoints(String version) {
+			this.version = version;
+		}
+
+		ProfilePoint getPoint(ProfilePoint parent, String template, String kind, int line, int offset, String label) {
+			String key = kind + "\n" + offset;
+			ProfilePoint point = points.get(key);
+			if (point == null) {
+				point = new ProfilePoint(parent, template, kind, line, offset, label);
+				ProfilePoint old = points.putIfAbsent(key, point);
+				if (old != null) {
+					point = old;
+				}
+			}
+			return point;
+		}
+
+	}
+
+}
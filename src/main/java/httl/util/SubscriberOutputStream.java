@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import httl.Subscriber;
+import httl.Subscriber.Subscription;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * SubscriberOutputStream. (Tool, Prototype, ThreadSafe)
+ * 
+ * Publish the output to the subscriber in chunks, the writer waits while no chunk is requested,
+ * and fails with an IOException if the subscriber has not requested within the timeout.
+ * Each published chunk is a new array, owned by the subscriber.
+ * 
+ * @see httl.util.AsyncUtils#renderAsync(httl.Template, java.util.Map, Subscriber)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class SubscriberOutputStream extends OutputStream implements Subscription {
+
+	private final Subscriber subscriber;
+
+	private final int chunkSize;
+
+	private final long timeout;
+
+	private byte[] chunk;
+
+	private int count;
+
+	// The requested but not published chunks, guarded by this.
+	private long demand;
+
+	private volatile boolean cancelled;
+
+	public SubscriberOutputStream(Subscriber subscriber, int chunkSize) {
+		this(subscriber, chunkSize, 0);
+	}
+
+	/**
+	 * @param timeout - max milliseconds to wait the subscriber request for each chunk, no limit if less than or equal to zero
+	 */
+	public SubscriberOutputStream(Subscriber subscriber, int chunkSize, long timeout) {
+		if (subscriber == null) {
+			throw new IllegalArgumentException("subscriber == null");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+		}
+		this.subscriber = subscriber;
+		this.chunkSize = chunkSize;
+		this.timeout = timeout;
+		this.chunk = new byte[chunkSize];
+	}
+
+	public synchronized void request(long n) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Illegal request chunks: " + n);
+		}
+		demand += n;
+		if (demand < 0) { // overflow
+			demand = Long.MAX_VALUE;
+		}
+		notifyAll();
+	}
+
+	public synchronized void cancel() {
+		cancelled = true;
+		notifyAll();
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public void write(int b) throws IOException {
+		if (count == chunkSize) {
+			publish();
+		}
+		chunk[count ++] = (byte) b;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (count == chunkSize) {
+				publish();
+			}
+			int n = Math.min(len, chunkSize - count);
+			System.arraycopy(b, off, chunk, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Publish the remaining output, but not complete the subscriber.
+	 */
+	public void close() throws IOException {
+		if (count > 0) {
+			publish();
+		}
+	}
+
+	private void publish() throws IOException {
+		synchronized (this) {
+			long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+			while (demand == 0 && ! cancelled) {
+				long remaining = 0;
+				if (deadline > 0) {
+					remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new IOException("Timeout " + timeout + "ms while waiting the subscriber request.");
+					}
+				}
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting the subscriber request.");
+				}
+			}
+			if (cancelled) {
+				throw new IOException("The render is cancelled by the subscriber.");
+			}
+			demand --;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, count);
+		chunk = new byte[chunkSize];
+		count = 0;
+		subscriber.onNext(buffer);
+	}
+
+}
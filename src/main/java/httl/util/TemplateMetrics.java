@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TemplateMetrics. (API, Prototype, ThreadSafe)
+ * 
+ * The render metrics of one template, exported as a standard MBean.
+ * 
+ * @see httl.spi.interceptors.MetricsInterceptor
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class TemplateMetrics implements TemplateMetricsMBean {
+
+	private static final double NANOS_PER_MILLI = 1000000d;
+
+	private final String name;
+
+	private final Histogram times = new Histogram();
+
+	private final AtomicLong errorCount = new AtomicLong();
+
+	private final AtomicLong outputSize = new AtomicLong();
+
+	private final AtomicInteger maxDepth = new AtomicInteger();
+
+	public TemplateMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Record a rendition.
+	 * 
+	 * @param nanos - render time in nanoseconds
+	 * @param size - output chars or bytes, -1 if unknown
+	 * @param depth - nested render depth
+	 * @param error - render failed
+	 */
+	public void record(long nanos, long size, int depth, boolean error) {
+		times.record(nanos);
+		if (size > 0) {
+			outputSize.addAndGet(size);
+		}
+		if (error) {
+			errorCount.incrementAndGet();
+		}
+		int d = maxDepth.get();
+		while (depth > d && ! maxDepth.compareAndSet(d, depth)) {
+			d = maxDepth.get();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return times.getCount();
+	}
+
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	public long getOutputSize() {
+		return outputSize.get();
+	}
+
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	public long getTotalNanos() {
+		return times.getTotal();
+	}
+
+	public double getTotalMillis() {
+		return times.getTotal() / NANOS_PER_MILLI;
+	}
+
+	public double getMeanMillis() {
+		return times.getMean() / NANOS_PER_MILLI;
+	}
+
+	public double getP50Millis() {
+		return times.getPercentile(50) / NANOS_PER_MILLI;
+	}
+
+	public double getP99Millis() {
+		return times.getPercentile(99) / NANOS_PER_MILLI;
+	}
+
+	public double getMaxMillis() {
+		return times.getMax() / NANOS_PER_MILLI;
+	}
+
+	public void reset() {
+		times.reset();
+		errorCount.set(0);
+		outputSize.set(0);
+		maxDepth.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return name + ": count=" + getCount() + ", errors=" + getErrorCount()
+				+ ", total=" + format(getTotalMillis()) + "ms, mean=" + format(getMeanMillis())
+				+ "ms, p50=" + format(getP50Millis()) + "ms, p99=" + format(getP99Millis())
+				+ "ms, max=" + format(getMaxMillis()) + "ms, output=" + getOutputSize()
+				+ ", depth=" + getMaxDepth();
+	}
+
+	private static String format(double millis) {
+		return String.valueOf(Math.round(millis * 1000) / 1000d);
+	}
+
+}
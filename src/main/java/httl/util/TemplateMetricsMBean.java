@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+/**
+ * TemplateMetricsMBean. (API, Singleton, ThreadSafe)
+ * 
+ * @see httl.util.TemplateMetrics
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public interface TemplateMetricsMBean {
+
+	/**
+	 * Get the template name.
+	 * 
+	 * @return template name
+	 */
+	String getName();
+
+	/**
+	 * Get the render count.
+	 * 
+	 * @return render count
+	 */
+	long getCount();
+
+	/**
+	 * Get the failed render count.
+	 * 
+	 * @return error count
+	 */
+	long getErrorCount();
+
+	/**
+	 * Get the total output size, chars for writer or bytes for stream.
+	 * 
+	 * @return output size
+	 */
+	long getOutputSize();
+
+	/**
+	 * Get the max nested render depth.
+	 * 
+	 * @return max depth
+	 */
+	int getMaxDepth();
+
+	double getTotalMillis();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	/**
+	 * Clear all the counters.
+	 */
+	void reset();
+
+}
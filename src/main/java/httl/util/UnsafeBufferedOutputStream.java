@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * UnsafeBufferedOutputStream. (Tool, Prototype, NonThreadSafe)
+ * 
+ * Buffer the output in pooled byte chunks without lock, and write to the target stream in large writes.
+ * The whole output is buffered until the watermark is reached, then it is streamed chunk by chunk.
+ * 
+ * @see httl.util.BufferPool
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class UnsafeBufferedOutputStream extends OutputStream {
+
+	private final OutputStream out;
+
+	private final int chunkSize;
+
+	private final int watermark;
+
+	private byte[][] chunks = new byte[4][];
+
+	// The current chunk index.
+	private int index;
+
+	// The position in the current chunk.
+	private int position;
+
+	// 已经写出到目标的数量
+	private long flushed;
+
+	public UnsafeBufferedOutputStream(OutputStream out, int chunkSize, int watermark) {
+		if (out == null) {
+			throw new IllegalArgumentException("out == null");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+		}
+		this.out = out;
+		this.chunkSize = chunkSize;
+		this.watermark = Math.max(chunkSize, watermark);
+	}
+
+	public OutputStream getOut() {
+		return out;
+	}
+
+	public int size() {
+		return index * chunkSize + position;
+	}
+
+	/**
+	 * The total count of the bytes written to this buffer, including the flushed bytes.
+	 */
+	public long getCount() {
+		return flushed + size();
+	}
+
+	private byte[] chunk() {
+		byte[] chunk = chunks[index];
+		if (chunk == null) {
+			chunk = BufferPool.getBytes(chunkSize);
+			chunks[index] = chunk;
+		}
+		return chunk;
+	}
+
+	private void nextChunk() throws IOException {
+		if ((index + 1) * chunkSize >= watermark) {
+			flushBuffer();
+		} else {
+			index ++;
+			position = 0;
+			if (index >= chunks.length) {
+				byte[][] newChunks = new byte[chunks.length << 1][];
+				System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+				chunks = newChunks;
+			}
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		chunk()[position ++] = (byte) b;
+		if (position == chunkSize) {
+			nextChunk();
+		}
+	}
+
+	@Override
+	public void write(byte[] bs) throws IOException {
+		write(bs, 0, bs.length);
+	}
+
+	@Override
+	public void write(byte[] bs, int off, int len) throws IOException {
+		if ((off < 0) || (off > bs.length) || (len < 0) || ((off + len) > bs.length) || ((off + len) < 0)) throw new IndexOutOfBoundsException();
+		if (len >= watermark) {
+			flushBuffer();
+			out.write(bs, off, len);
+			return;
+		}
+		while (len > 0) {
+			int n = Math.min(len, chunkSize - position);
+			System.arraycopy(bs, off, chunk(), position, n);
+			position += n;
+			off += n;
+			len -= n;
+			if (position == chunkSize) {
+				nextChunk();
+			}
+		}
+	}
+
+	/**
+	 * Write the buffered bytes to the target stream, without flush the target stream.
+	 */
+	public void flushBuffer() throws IOException {
+		flushed += size();
+		for (int i = 0; i < index; i ++) {
+			out.write(chunks[i], 0, chunkSize);
+		}
+		if (position > 0) {
+			out.write(chunks[index], 0, position);
+		}
+		index = 0;
+		position = 0;
+	}
+
+	/**
+	 * Discard the buffered bytes, and recycle the chunks to the pool.
+	 */
+	public void release() {
+		for (int i = chunks.length - 1; i >= 0; i --) {
+			if (chunks[i] != null) {
+				BufferPool.putBytes(chunks[i]);
+				chunks[i] = null;
+			}
+		}
+		index = 0;
+		position = 0;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			release();
+		}
+		out.close();
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * UnsafeBufferedWriter. (Tool, Prototype, NonThreadSafe)
+ * 
+ * Buffer the output in pooled chunks without lock, and write to the target writer in large writes.
+ * The whole output is buffered until the watermark is reached, then it is streamed chunk by chunk.
+ * 
+ * @see httl.util.BufferPool
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class UnsafeBufferedWriter extends Writer {
+
+	private final Writer out;
+
+	private final int chunkSize;
+
+	private final int watermark;
+
+	private char[][] chunks = new char[4][];
+
+	// The current chunk index.
+	private int index;
+
+	// The position in the current chunk.
+	private int position;
+
+	// 已经写出到目标的数量
+	private long flushed;
+
+	public UnsafeBufferedWriter(Writer out, int chunkSize, int watermark) {
+		if (out == null) {
+			throw new IllegalArgumentException("out == null");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+		}
+		this.out = out;
+		this.chunkSize = chunkSize;
+		this.watermark = Math.max(chunkSize, watermark);
+	}
+
+	public Writer getOut() {
+		return out;
+	}
+
+	public int size() {
+		return index * chunkSize + position;
+	}
+
+	/**
+	 * The total count of the chars written to this buffer, including the flushed chars.
+	 */
+	public long getCount() {
+		return flushed + size();
+	}
+
+	private char[] chunk() {
+		char[] chunk = chunks[index];
+		if (chunk == null) {
+			chunk = BufferPool.getChars(chunkSize);
+			chunks[index] = chunk;
+		}
+		return chunk;
+	}
+
+	private void nextChunk() throws IOException {
+		if ((index + 1) * chunkSize >= watermark) {
+			flushBuffer();
+		} else {
+			index ++;
+			position = 0;
+			if (index >= chunks.length) {
+				char[][] newChunks = new char[chunks.length << 1][];
+				System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+				chunks = newChunks;
+			}
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		chunk()[position ++] = (char) c;
+		if (position == chunkSize) {
+			nextChunk();
+		}
+	}
+
+	@Override
+	public void write(char[] cs) throws IOException {
+		write(cs, 0, cs.length);
+	}
+
+	@Override
+	public void write(char[] cs, int off, int len) throws IOException {
+		if ((off < 0) || (off > cs.length) || (len < 0) || ((off + len) > cs.length) || ((off + len) < 0)) throw new IndexOutOfBoundsException();
+		if (len >= watermark) {
+			flushBuffer();
+			out.write(cs, off, len);
+			return;
+		}
+		while (len > 0) {
+			int n = Math.min(len, chunkSize - position);
+			System.arraycopy(cs, off, chunk(), position, n);
+			position += n;
+			off += n;
+			len -= n;
+			if (position == chunkSize) {
+				nextChunk();
+			}
+		}
+	}
+
+	@Override
+	public void write(String str) throws IOException {
+		write(str, 0, str.length());
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if (len >= watermark) {
+			flushBuffer();
+			out.write(str, off, len);
+			return;
+		}
+		while (len > 0) {
+			int n = Math.min(len, chunkSize - position);
+			str.getChars(off, off + n, chunk(), position);
+			position += n;
+			off += n;
+			len -= n;
+			if (position == chunkSize) {
+				nextChunk();
+			}
+		}
+	}
+
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		String str = String.valueOf(csq);
+		write(str, 0, str.length());
+		return this;
+	}
+
+	@Override
+	public Writer append(CharSequence csq, int start, int end) throws IOException {
+		CharSequence cs = (csq == null ? "null" : csq);
+		String str = cs.subSequence(start, end).toString();
+		write(str, 0, str.length());
+		return this;
+	}
+
+	@Override
+	public Writer append(char c) throws IOException {
+		write(c);
+		return this;
+	}
+
+	/**
+	 * Write the buffered chars to the target writer, without flush the target writer.
+	 */
+	public void flushBuffer() throws IOException {
+		flushed += size();
+		for (int i = 0; i < index; i ++) {
+			out.write(chunks[i], 0, chunkSize);
+		}
+		if (position > 0) {
+			out.write(chunks[index], 0, position);
+		}
+		index = 0;
+		position = 0;
+	}
+
+	/**
+	 * Discard the buffered chars, and recycle the chunks to the pool.
+	 */
+	public void release() {
+		for (int i = chunks.length - 1; i >= 0; i --) {
+			if (chunks[i] != null) {
+				BufferPool.putChars(chunks[i]);
+				chunks[i] = null;
+			}
+		}
+		index = 0;
+		position = 0;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			release();
+		}
+		out.close();
+	}
+
+}
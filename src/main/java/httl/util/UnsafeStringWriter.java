@@ -62,20 +62,18 @@ public class UnsafeStringWriter extends Writer {
 
 	@Override
 	public void write(String str, int off, int len) {
-		buffer.append(str.substring(off, off + len));
+		buffer.append(str, off, off + len);
 	}
 
 	@Override
 	public Writer append(CharSequence csq) {
-		if (csq == null) write("null");
-		else write(csq.toString());
+		buffer.append(csq);
 		return this;
 	}
 
 	@Override
 	public Writer append(CharSequence csq, int start, int end) {
-		CharSequence cs = (csq == null ? "null" : csq);
-		write(cs.subSequence(start, end).toString());
+		buffer.append(csq, start, end);
 		return this;
 	}
 
@@ -20,6 +20,7 @@ import httl.Template;
 import httl.spi.Logger;
 import httl.spi.loaders.ServletLoader;
 import httl.spi.resolvers.ServletResolver;
+import httl.util.DelegateMap;
 import httl.util.StringUtils;
 
 import java.io.IOException;
@@ -27,6 +28,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
 import java.text.ParseException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -58,6 +60,10 @@ public class WebEngine {
 	
 	private static final String LOCALIZED_KEY = "localized";
 
+	private static final String REQUEST_KEY = "request";
+
+	private static final String RESPONSE_KEY = "response";
+
 	private static volatile Engine ENGINE;
 
 	private static String OUTPUT_ENCODING;
@@ -201,17 +207,17 @@ public class WebEngine {
 	}
 
 	public static void render(HttpServletRequest request, HttpServletResponse response, String path, Map<String, Object> parameters, Object out) throws IOException, ParseException {
-		ServletResolver.set(request, response);
-		try {
-			setResponseEncoding(response);
-			Template template = LOCALIZED ? getEngine().getTemplate(path, request.getLocale()) : getEngine().getTemplate(path);
-			if (out instanceof OutputStream) {
-				template.render(parameters, (OutputStream) out);
-			} else {
-				template.render(parameters, (Writer) out);
-			}
-		} finally {
-			ServletResolver.remove();
+		setResponseEncoding(response);
+		Template template = LOCALIZED ? getEngine().getTemplate(path, request.getLocale()) : getEngine().getTemplate(path);
+		// 请求和响应随渲染上下文传入ServletResolver, 不绑定到线程
+		Map<String, Object> servlet = new HashMap<String, Object>(4);
+		servlet.put(REQUEST_KEY, request);
+		servlet.put(RESPONSE_KEY, response);
+		parameters = new DelegateMap<String, Object>(servlet, parameters);
+		if (out instanceof OutputStream) {
+			template.render(parameters, (OutputStream) out);
+		} else {
+			template.render(parameters, (Writer) out);
 		}
 	}
 	
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Subscriber;
+import httl.Template;
+import httl.spi.parsers.templates.AsyncTemplate;
+import httl.spi.parsers.templates.TemplateWrapper;
+import httl.util.AsyncUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * AsyncTemplateTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class AsyncTemplateTest {
+
+	@Test
+	public void testNestedAsync() throws Exception {
+		Engine engine = Engine.getEngine("httl-async.properties", new Properties());
+		final Template inner = engine.parseTemplate("inner");
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// 单线程执行器上, 外层片段等待排在其后的内层片段时会死锁
+			Template outer = new TemplateWrapper(engine.parseTemplate("outer")) {
+				@Override
+				public void render(Map<String, Object> parameters, Writer writer) throws IOException, ParseException {
+					Template async = new AsyncTemplate(inner, parameters, false, executor, 0, null);
+					super.render(parameters, writer);
+					async.render(parameters, writer);
+				}
+			};
+			Template async = new AsyncTemplate(outer, new HashMap<String, Object>(), false, executor, 5000, null);
+			Assert.assertEquals("outerinner", async.evaluate());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSubscriberExecutor() throws Exception {
+		Engine engine = Engine.getEngine("httl-async-subscriber.properties", new Properties());
+		Template template = engine.parseTemplate("hello");
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final String[] thread = new String[1];
+		final CountDownLatch latch = new CountDownLatch(1);
+		AsyncUtils.renderAsync(template, new HashMap<String, Object>(), new Subscriber() {
+			public void onSubscribe(Subscription subscription) {
+				thread[0] = Thread.currentThread().getName();
+				subscription.request(Long.MAX_VALUE);
+			}
+			public void onNext(ByteBuffer chunk) {
+				output.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+			}
+			public void onError(Throwable e) {
+				latch.countDown();
+			}
+			public void onComplete() {
+				latch.countDown();
+			}
+		});
+		Assert.assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+		// 订阅渲染在独立的线程池上等待请求, 不占用渲染线程
+		Assert.assertTrue(thread[0], thread[0].startsWith("httl-subscriber-"));
+		Assert.assertEquals("hello", new String(output.toByteArray(), "UTF-8"));
+	}
+
+}
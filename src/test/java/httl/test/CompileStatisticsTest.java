@@ -0,0 +1,109 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Expression;
+import httl.spi.engines.DefaultEngine;
+import httl.util.CacheStatistics;
+import httl.util.CompileStatistics;
+import httl.util.Histogram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * CompileStatisticsTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class CompileStatisticsTest {
+
+	private static Map<String, Long> getStageCounts() {
+		Map<String, Long> counts = new HashMap<String, Long>();
+		for (Map.Entry<String, Histogram> entry : CompileStatistics.getStages().entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().getCount());
+		}
+		return counts;
+	}
+
+	@Test
+	public void testUnknownStage() {
+		try {
+			CompileStatistics.record("unknown", 1);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testToEvent() {
+		Assert.assertEquals("read=0.001ms, compile+load=2.5ms", CompileStatistics.toEvent(
+				new String[] { CompileStatistics.READ, CompileStatistics.COMPILE + "+" + CompileStatistics.LOAD }, new long[] { 1000, 2500000 }));
+	}
+
+	@Test
+	public void testStages() throws Exception {
+		DefaultEngine engine = (DefaultEngine) Engine.getEngine("httl-compile-statistics.properties", new Properties());
+		Map<String, Long> before = getStageCounts();
+		long classRequests = engine.getClassCacheStatistics().getRequestCount();
+		Assert.assertEquals("stages 3", engine.parseTemplate("stages ${1 + 2}").evaluate());
+		Map<String, Long> after = getStageCounts();
+		for (String stage : new String[] { CompileStatistics.READ, CompileStatistics.PARSE, CompileStatistics.GENERATE, 
+				CompileStatistics.COMPILE, CompileStatistics.LOAD, CompileStatistics.INSTANTIATE }) {
+			Assert.assertTrue(stage, after.get(stage) > before.get(stage));
+		}
+		Assert.assertTrue(engine.getClassCacheStatistics().getRequestCount() > classRequests);
+	}
+
+	@Test
+	public void testCacheCounters() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("expression.compile.threshold", "0");
+		DefaultEngine engine = (DefaultEngine) Engine.getEngine("httl-cache-statistics.properties", properties);
+		CacheStatistics strings = engine.getStringTemplateCacheStatistics();
+		String source = "cache counters <!--#var(String s)-->${s}";
+		engine.parseTemplate(source);
+		Assert.assertEquals(1, strings.getMissCount());
+		Assert.assertEquals(0, strings.getHitCount());
+		engine.parseTemplate(source);
+		Assert.assertEquals(1, strings.getHitCount());
+
+		CacheStatistics expressions = engine.getExpressionCacheStatistics();
+		long misses = expressions.getMissCount();
+		long hits = expressions.getHitCount();
+		Expression expression = engine.getExpression("1 + 2 + 39");
+		Assert.assertSame(expression, engine.getExpression("1 + 2 + 39"));
+		Assert.assertEquals(misses + 1, expressions.getMissCount());
+		Assert.assertEquals(hits + 1, expressions.getHitCount());
+
+		CacheStatistics evaluators = engine.getEvaluatorCacheStatistics();
+		long requests = evaluators.getRequestCount();
+		Assert.assertEquals(42, expression.evaluate());
+		Assert.assertEquals(requests + 1, evaluators.getRequestCount());
+		// 其它引擎的同源表达式, 共享已编译的求值器
+		DefaultEngine other = (DefaultEngine) Engine.getEngine("httl-cache-statistics-other.properties", properties);
+		hits = evaluators.getHitCount();
+		Assert.assertEquals(42, other.getExpression("1 + 2 + 39").evaluate());
+		Assert.assertEquals(hits + 1, evaluators.getHitCount());
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.spi.Compiler;
+import httl.util.Digest;
+
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * EvaluatorCollisionTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class EvaluatorCollisionTest {
+
+	@Test
+	public void testHashCollision() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("expression.compile.threshold", "0");
+		Engine engine = Engine.getEngine("httl-evaluator-collision.properties", properties);
+		String source = "40 + 2 + 0";
+		// 预先编译同名但来自其它表达式的求值器类, 模拟类名哈希冲突
+		String className = "Evaluator_" + Digest.getHash(source);
+		Class<?> other = engine.getProperty("compiler", Compiler.class).compile("package httl.spi.translators.expressions;\n"
+				+ "public class " + className + " implements httl.spi.translators.expressions.Evaluator {\n"
+				+ "public static final String $SRC = \"other\";\n"
+				+ "public " + className + "(java.util.Map functions) {}\n"
+				+ "public Object evaluate(java.util.Map parameters) { return \"other\"; }\n"
+				+ "}\n");
+		Assert.assertEquals(42, engine.getExpression(source).evaluate());
+		Assert.assertEquals(className, other.getSimpleName());
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.spi.translators.expressions.ExpressionImpl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * ExpressionInterpreterTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class ExpressionInterpreterTest {
+
+	private static final String[] NUMBER_VARIABLES = { "b", "s", "c", "i", "l", "f", "d" };
+
+	private static final String[] NUMBER_OPERATORS = { "+", "-", "*", "/", "%", "==", "!=", ">", ">=", "<", "<=", "gt", "le" };
+
+	private static Map<String, Class<?>> getParameterTypes() {
+		Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+		types.put("b", byte.class);
+		types.put("s", short.class);
+		types.put("c", char.class);
+		types.put("i", int.class);
+		types.put("l", long.class);
+		types.put("f", float.class);
+		types.put("d", double.class);
+		types.put("z", boolean.class);
+		types.put("y", boolean.class);
+		types.put("str", String.class);
+		types.put("obj", Object.class);
+		return types;
+	}
+
+	private static List<Map<String, Object>> getParameters() {
+		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+		list.add(new HashMap<String, Object>()); // 基本类型的空值
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("b", (byte) 100);
+		parameters.put("s", (short) -3);
+		parameters.put("c", 'a');
+		parameters.put("i", 16777217);
+		parameters.put("l", 3L);
+		parameters.put("f", 16777216f);
+		parameters.put("d", 2.5d);
+		parameters.put("z", true);
+		parameters.put("y", false);
+		parameters.put("str", "a");
+		parameters.put("obj", "a");
+		list.add(parameters);
+		parameters = new HashMap<String, Object>();
+		parameters.put("b", (byte) 0);
+		parameters.put("s", (short) 0);
+		parameters.put("c", '\0');
+		parameters.put("i", Integer.MAX_VALUE);
+		parameters.put("l", Long.MIN_VALUE);
+		parameters.put("f", Float.NaN);
+		parameters.put("d", Double.NaN);
+		parameters.put("z", false);
+		parameters.put("y", true);
+		parameters.put("str", "b");
+		parameters.put("obj", new StringBuilder("b"));
+		list.add(parameters);
+		return list;
+	}
+
+	private static List<String> getExpressions() {
+		List<String> expressions = new ArrayList<String>();
+		for (String left : NUMBER_VARIABLES) {
+			for (String operator : NUMBER_OPERATORS) {
+				for (String right : NUMBER_VARIABLES) {
+					expressions.add(left + " " + operator + " " + right);
+				}
+			}
+			expressions.add("-" + left);
+			expressions.add(left + " / 0");
+			expressions.add(left + " % 0");
+			expressions.add(left + " + 1.5");
+			expressions.add(left + " * 2l");
+			expressions.add(left + " > 1.5f");
+		}
+		String[] others = { "1 + 2 * 3", "7 / 2", "7 % -3", "`x` + 1", "!z", "!(i < 2)", "z && y", "z || y", "z && i > 1",
+				"z == y", "z != true", "str + z", "str + obj", "\"s\" + str", "obj + str",
+				"str == \"a\"", "\"a\" == str", "str != \"a\"", "str == obj", "obj != str", "obj == null", "null == obj", "obj != null" };
+		for (String other : others) {
+			expressions.add(other);
+		}
+		return expressions;
+	}
+
+	private static String evaluate(Engine engine, String source, Map<String, Object> parameters) {
+		try {
+			Object result = engine.getExpression(source, getParameterTypes()).evaluate(parameters);
+			return result == null ? "null" : result.getClass().getName() + ":" + result;
+		} catch (Exception e) {
+			return e.getClass().getName();
+		}
+	}
+
+	@Test
+	public void testInterpreterParity() throws Exception {
+		Properties interpretProperties = new Properties();
+		interpretProperties.setProperty("expression.compile.threshold", "1000000");
+		Engine interpretEngine = Engine.getEngine("httl-interpret.properties", interpretProperties);
+		Properties compileProperties = new Properties();
+		compileProperties.setProperty("expression.compile.threshold", "0");
+		Engine compileEngine = Engine.getEngine("httl-compile.properties", compileProperties);
+		List<String> expressions = getExpressions();
+		List<Map<String, Object>> parametersList = getParameters();
+		List<String> interpreted = new ArrayList<String>();
+		long misses = ExpressionImpl.getEvaluatorCacheStatistics().getMissCount();
+		for (String expression : expressions) {
+			for (Map<String, Object> parameters : parametersList) {
+				interpreted.add(evaluate(interpretEngine, expression, parameters));
+			}
+		}
+		// 支持的表达式均未生成类
+		Assert.assertEquals(misses, ExpressionImpl.getEvaluatorCacheStatistics().getMissCount());
+		int index = 0;
+		for (String expression : expressions) {
+			for (Map<String, Object> parameters : parametersList) {
+				Assert.assertEquals(expression + " " + parameters, evaluate(compileEngine, expression, parameters), interpreted.get(index ++));
+			}
+		}
+	}
+
+	@Test
+	public void testPromote() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("expression.compile.threshold", "10");
+		Engine engine = Engine.getEngine("httl-promote.properties", properties);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("i", 3);
+		String source = "i * 1234567 + 7654321";
+		long misses = ExpressionImpl.getEvaluatorCacheStatistics().getMissCount();
+		for (int n = 0; n < 10; n ++) {
+			Assert.assertEquals(3 * 1234567 + 7654321, engine.getExpression(source, getParameterTypes()).evaluate(parameters));
+		}
+		Assert.assertEquals(misses, ExpressionImpl.getEvaluatorCacheStatistics().getMissCount());
+		Assert.assertEquals(3 * 1234567 + 7654321, engine.getExpression(source, getParameterTypes()).evaluate(parameters));
+		Assert.assertEquals(misses + 1, ExpressionImpl.getEvaluatorCacheStatistics().getMissCount());
+	}
+
+}
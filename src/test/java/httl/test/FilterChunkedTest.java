@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.Filter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * FilterChunkedTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class FilterChunkedTest {
+
+	/**
+	 * 非逐字符过滤器, 整段和分段过滤结果不同
+	 */
+	public static class BracketFilter implements Filter {
+
+		public String filter(String value) {
+			return "[" + value + "]";
+		}
+
+	}
+
+	private static String render(String name, boolean chunked) throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("value.filters", BracketFilter.class.getName());
+		properties.setProperty("filter.chunked", String.valueOf(chunked));
+		Engine engine = Engine.getEngine(name, properties);
+		Template template = engine.parseTemplate("<!--#macro(m)--><!--#var(String x)-->a${x}b<!--#end-->${m}");
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("x", "-");
+		return (String) template.evaluate(parameters);
+	}
+
+	@Test
+	public void testWholeText() throws Exception {
+		Assert.assertEquals("[a[-]b]", render("httl-filter-whole.properties", false));
+	}
+
+	@Test
+	public void testChunked() throws Exception {
+		Assert.assertEquals("[a][[-]][b]", render("httl-filter-chunked.properties", true));
+	}
+
+}
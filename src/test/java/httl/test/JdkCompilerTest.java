@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.compilers.JdkCompiler;
+import httl.util.ClassCache;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * JdkCompilerTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class JdkCompilerTest {
+
+	private static boolean isUnloaded(WeakReference<?> reference) {
+		List<byte[]> garbage = new ArrayList<byte[]>();
+		for (int i = 0; i < 50 && reference.get() != null; i ++) {
+			garbage.add(new byte[1024 * 1024]);
+			if (garbage.size() > 8) {
+				garbage.clear();
+			}
+			System.gc();
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+			}
+		}
+		return reference.get() == null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, ?> getByteCodes(Class<?> cls) throws Exception {
+		Field field = cls.getClassLoader().getClass().getDeclaredField("classes");
+		field.setAccessible(true);
+		return (Map<String, ?>) field.get(cls.getClassLoader());
+	}
+
+	@Test
+	public void testReleaseByteCode() throws Exception {
+		JdkCompiler compiler = new JdkCompiler();
+		Class<?> cls = compiler.compile("package httl.test.compiled; public class Released { public static class Inner { } }");
+		Map<String, ?> byteCodes = getByteCodes(cls);
+		Assert.assertFalse(byteCodes.containsKey("httl.test.compiled.Released"));
+		Assert.assertTrue(byteCodes.containsKey("httl.test.compiled.Released$Inner"));
+		Class.forName("httl.test.compiled.Released$Inner", false, cls.getClassLoader());
+		Assert.assertTrue(byteCodes.isEmpty());
+	}
+
+	@Test
+	public void testUnloadClass() throws Exception {
+		JdkCompiler compiler = new JdkCompiler();
+		Class<?> cls = compiler.compile("package httl.test.compiled; public class Unloaded { }");
+		Assert.assertEquals("httl.test.compiled.Unloaded", cls.getName());
+		WeakReference<Class<?>> reference = new WeakReference<Class<?>>(cls);
+		cls = null;
+		Assert.assertTrue(isUnloaded(reference));
+		// 卸载后可重新编译同名类
+		Assert.assertNotNull(compiler.compile("package httl.test.compiled; public class Unloaded { }"));
+	}
+
+	@Test
+	public void testUnloadEvictedMacro() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("compiler", JdkCompiler.class.getName());
+		properties.setProperty("string.template.cache.capacity", "10000");
+		Engine engine = Engine.getEngine("httl-compiler-unload.properties", properties);
+		Template template = engine.parseTemplate("<!--#macro(m)-->unload macro<!--#end-->${m}");
+		Assert.assertEquals("unload macro", template.evaluate());
+		Template macro = template.getMacros().get("m");
+		Field field = macro.getClass().getDeclaredField("writerTemplate");
+		field.setAccessible(true);
+		WeakReference<Class<?>> reference = new WeakReference<Class<?>>(field.get(macro).getClass());
+		template = null;
+		macro = null;
+		for (int i = 0; i < 10; i ++) {
+			// 挤出缓存
+			Assert.assertEquals("text " + i, engine.parseTemplate("text " + i).evaluate());
+		}
+		for (int i = 0; i < 10; i ++) {
+			engine.parseTemplate("<!--#macro(m)-->evict " + i + "<!--#end-->${m}").evaluate();
+		}
+		Assert.assertTrue(isUnloaded(reference));
+	}
+
+	public static class FailingCompiler extends JdkCompiler {
+
+		private static volatile boolean failing;
+
+		@Override
+		public Class<?> compile(String code) throws ParseException {
+			if (failing && code.indexOf(ClassCache.class.getName()) >= 0) {
+				throw new ParseException("Failed to compile by test.", 0);
+			}
+			return super.compile(code);
+		}
+
+	}
+
+	@Test
+	public void testRemoveClassCacheOnFailure() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("compiler", FailingCompiler.class.getName());
+		Engine engine = Engine.getEngine("httl-compiler-class-cache.properties", properties);
+		Assert.assertEquals("cached macro", engine.parseTemplate("<!--#macro(m)-->cached macro<!--#end-->${m}").evaluate());
+		int size = ClassCache.size();
+		FailingCompiler.failing = true;
+		try {
+			engine.parseTemplate("<!--#macro(m)-->failed macro<!--#end-->${m}");
+			Assert.fail("Expected ParseException");
+		} catch (ParseException e) {
+		} finally {
+			FailingCompiler.failing = false;
+		}
+		// 编译失败时, 放入ClassCache的宏类随之清除
+		Assert.assertEquals(size, ClassCache.size());
+	}
+
+}
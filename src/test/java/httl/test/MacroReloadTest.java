@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.Field;
+import java.util.Locale;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * MacroReloadTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class MacroReloadTest {
+
+	private static void write(File file, String source, long lastModified) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(source.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		file.setLastModified(lastModified);
+	}
+
+	// 宏模板外层为AdaptiveTemplate, 取其包装的编译类
+	private static Class<?> getMacroClass(Template template, String name) throws Exception {
+		Template macro = template.getMacros().get(name);
+		Field field = macro.getClass().getDeclaredField("writerTemplate");
+		field.setAccessible(true);
+		return field.get(macro).getClass();
+	}
+
+	@Test
+	public void testReuseUnchangedMacro() throws Exception {
+		File directory = new File(System.getProperty("java.io.tmpdir"), "httl-macro-reload-" + System.nanoTime());
+		directory.mkdirs();
+		File file = new File(directory, "reload.httl");
+		try {
+			Properties properties = new Properties();
+			properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+			properties.setProperty("template.directory", directory.getAbsolutePath());
+			properties.setProperty("reloadable", "true");
+			Engine engine = Engine.getEngine("httl-macro-reload.properties", properties);
+			long lastModified = System.currentTimeMillis() / 1000 * 1000 - 10000;
+			write(file, "<!--#macro(m)-->macro<!--#end-->${m}:1", lastModified);
+			Template template = engine.getTemplate("/reload.httl");
+			Assert.assertEquals("macro:1", template.evaluate());
+			Class<?> macroClass = getMacroClass(template, "m");
+
+			write(file, "<!--#macro(m)-->macro<!--#end-->${m}:2", lastModified + 2000);
+			Template reloaded = engine.getTemplate("/reload.httl");
+			Assert.assertNotSame(template, reloaded);
+			Assert.assertEquals("macro:2", reloaded.evaluate());
+			Assert.assertSame(macroClass, getMacroClass(reloaded, "m"));
+
+			write(file, "<!--#macro(m)-->changed<!--#end-->${m}:3", lastModified + 4000);
+			Template changed = engine.getTemplate("/reload.httl");
+			Assert.assertEquals("changed:3", changed.evaluate());
+			Assert.assertNotSame(macroClass, getMacroClass(changed, "m"));
+		} finally {
+			file.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testMacroLocale() throws Exception {
+		File directory = new File(System.getProperty("java.io.tmpdir"), "httl-macro-locale-" + System.nanoTime());
+		directory.mkdirs();
+		File file = new File(directory, "locale.httl");
+		try {
+			Properties properties = new Properties();
+			properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+			properties.setProperty("template.directory", directory.getAbsolutePath());
+			properties.setProperty("reloadable", "true");
+			Engine engine = Engine.getEngine("httl-macro-locale.properties", properties);
+			write(file, "<!--#macro(m)-->${this.locale}<!--#end-->[${this.locale}|${m}]", System.currentTimeMillis() / 1000 * 1000 - 10000);
+			Template chinese = engine.getTemplate("/locale.httl", Locale.SIMPLIFIED_CHINESE);
+			Assert.assertEquals("[zh_CN|zh_CN]", chinese.evaluate());
+			Template english = engine.getTemplate("/locale.httl", Locale.US);
+			Assert.assertEquals("[en_US|en_US]", english.evaluate());
+			Assert.assertNotSame(getMacroClass(chinese, "m"), getMacroClass(english, "m"));
+		} finally {
+			file.delete();
+			directory.delete();
+		}
+	}
+
+}
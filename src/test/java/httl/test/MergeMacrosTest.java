@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.parsers.templates.OutputStreamMacroTemplate;
+import httl.spi.parsers.templates.WriterMacroTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * MergeMacrosTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class MergeMacrosTest {
+
+	private static final String SOURCE = "<!--#var(String name)-->"
+			+ "<!--#macro(outer(String a))-->"
+			+ "<!--#macro(inner(String b))-->{${b}}<!--#end-->"
+			+ "[${a}${inner(a + \"!\")}]"
+			+ "<!--#end-->"
+			+ "<!--#macro(plain)-->plain<!--#end-->"
+			+ "${outer(name)}${outer(\"y\")}${plain}";
+
+	private static Engine getEngine(String name, boolean mergeMacros) {
+		Properties properties = new Properties();
+		properties.setProperty("merge.macros", String.valueOf(mergeMacros));
+		return Engine.getEngine(name, properties);
+	}
+
+	private static Map<String, Object> getParameters() {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "x");
+		return parameters;
+	}
+
+	// 宏模板外层为AdaptiveTemplate, 取其包装的编译模板
+	private static Object getWrapped(Template macro, String field) throws Exception {
+		Field f = macro.getClass().getDeclaredField(field);
+		f.setAccessible(true);
+		return f.get(macro);
+	}
+
+	@Test
+	public void testMergedMacros() throws Exception {
+		Template template = getEngine("httl-merge-macros.properties", true).parseTemplate(SOURCE);
+		Template outer = template.getMacros().get("outer");
+		Assert.assertTrue(getWrapped(outer, "writerTemplate") instanceof WriterMacroTemplate);
+		Assert.assertTrue(getWrapped(outer, "streamTemplate") instanceof OutputStreamMacroTemplate);
+		Assert.assertTrue(outer.isMacro());
+		Assert.assertTrue(outer.getName().endsWith("#outer"));
+		Assert.assertTrue(template.getMacros().get("plain").isMacro());
+		Assert.assertNotNull(outer.getMacros().get("inner"));
+		Assert.assertEquals("[x{x!}][y{y!}]plain", template.evaluate(getParameters()));
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		template.render(getParameters(), stream);
+		Assert.assertEquals("[x{x!}][y{y!}]plain", new String(stream.toByteArray()));
+	}
+
+	@Test
+	public void testSameAsSeparateMacros() throws Exception {
+		Template merged = getEngine("httl-merge-macros-on.properties", true).parseTemplate(SOURCE);
+		Template separate = getEngine("httl-merge-macros-off.properties", false).parseTemplate(SOURCE);
+		Assert.assertFalse(getWrapped(separate.getMacros().get("outer"), "writerTemplate") instanceof WriterMacroTemplate);
+		Assert.assertEquals(separate.evaluate(getParameters()), merged.evaluate(getParameters()));
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("a", "z");
+		Assert.assertEquals("[z{z!}]", merged.getMacros().get("outer").evaluate(parameters));
+		Assert.assertEquals(separate.getMacros().get("outer").evaluate(parameters), merged.getMacros().get("outer").evaluate(parameters));
+		Assert.assertEquals(separate.getMacros().get("outer").getSource(), merged.getMacros().get("outer").getSource());
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * MergeTextTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class MergeTextTest {
+
+	@Test
+	public void testMergeAcrossLiteralSet() throws Exception {
+		Engine engine = Engine.getEngine("httl-merge-text.properties", new Properties());
+		Template template = engine.parseTemplate("a<!--#set(String x = \"b\")-->c<!--#set(int n = 3)-->d${x}${n}");
+		Assert.assertEquals("acdb3", template.evaluate());
+		Assert.assertEquals(1, count(template.getCode(), "$output.write($TXT"));
+	}
+
+	@Test
+	public void testTextBeforeFailedSet() throws Exception {
+		Engine engine = Engine.getEngine("httl-merge-text.properties", new Properties());
+		Template template = engine.parseTemplate("<!--#var(java.util.List list)-->before<!--#set(Object x = list.get(5))-->after");
+		Assert.assertTrue(count(template.getCode(), "$output.write($TXT") > 1);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("list", Arrays.asList("a"));
+		StringWriter writer = new StringWriter();
+		try {
+			template.render(parameters, writer);
+			Assert.fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+		}
+		Assert.assertEquals("before", writer.toString());
+	}
+
+	private static int count(String code, String word) {
+		int count = 0;
+		for (int i = code.indexOf(word); i >= 0; i = code.indexOf(word, i + 1)) {
+			count ++;
+		}
+		return count;
+	}
+
+}
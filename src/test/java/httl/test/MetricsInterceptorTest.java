@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Context;
+import httl.Engine;
+import httl.Template;
+import httl.spi.Listener;
+import httl.spi.interceptors.MetricsInterceptor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * MetricsInterceptorTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class MetricsInterceptorTest {
+
+	private static final Listener NOOP = new Listener() {
+		public void render(Context context) throws IOException, ParseException {
+		}
+	};
+
+	private static MetricsInterceptor newInterceptor(Engine engine) {
+		MetricsInterceptor interceptor = new MetricsInterceptor();
+		interceptor.setEngine(engine);
+		interceptor.setMetricsJmx(true);
+		interceptor.init();
+		return interceptor;
+	}
+
+	private static void render(MetricsInterceptor interceptor, Template template) throws Exception {
+		Context context = Context.pushContext(template, new HashMap<String, Object>(), new StringWriter());
+		try {
+			interceptor.render(context, NOOP);
+		} finally {
+			Context.popContext();
+		}
+	}
+
+	@Test
+	public void testRegisterAndDestroy() throws Exception {
+		Engine engine = Engine.getEngine("httl-metrics.properties", new Properties());
+		Template template = engine.parseTemplate("metrics");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName query = new ObjectName("httl:type=TemplateMetrics,name=" + ObjectName.quote(template.getName()) + ",*");
+		MetricsInterceptor first = newInterceptor(engine);
+		MetricsInterceptor second = newInterceptor(engine);
+		render(first, template);
+		render(second, template);
+		Assert.assertEquals(2, server.queryNames(query, null).size());
+		first.destroy();
+		Assert.assertEquals(1, server.queryNames(query, null).size());
+		second.destroy();
+		Assert.assertEquals(0, server.queryNames(query, null).size());
+		Assert.assertNotNull(second.getMetrics(template.getName()));
+	}
+
+}
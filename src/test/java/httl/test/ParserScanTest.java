@@ -0,0 +1,151 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.parsers.CommentParser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * ParserScanTest, check the hand-written scanners against the regex filters.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class ParserScanTest {
+
+	/**
+	 * 以正则匹配指令, 并逐个调用正则过滤方法, 作为手写扫描的对照
+	 */
+	public static class RegexParser extends CommentParser {
+
+		private static final Pattern PATTERN = Pattern.compile(STATEMENT_PATTERN.pattern(), STATEMENT_PATTERN.flags());
+
+		@Override
+		protected Pattern getPattern() {
+			return PATTERN;
+		}
+
+		@Override
+		protected String filterCData(String source) {
+			return super.filterCData(source);
+		}
+
+	}
+
+	private static class ScanParser extends CommentParser {
+
+		String scan(String source) {
+			return filterSource(source);
+		}
+
+		String regex(String source) {
+			return filterEscape(filterComment(filterCData(source)));
+		}
+
+	}
+
+	private static class CountParser extends CommentParser {
+
+		int escapes;
+
+		@Override
+		protected String filterEscape(String source) {
+			escapes ++;
+			return super.filterEscape(source);
+		}
+
+		String scan(String source) {
+			return filterSource(source);
+		}
+
+	}
+
+	private static final String[] SOURCES = {
+		"plain text",
+		"a \\${x} b",
+		"a \\\\${x} b",
+		"a \\\\\\${x} b",
+		"a \\#if b \\\\#x",
+		"\\a \\\\ b \\",
+		"<![CDATA[## ${x} #if ]]>after",
+		"<![CDATA[##]]><![CDATA[## $ ]]>",
+		"<![CDATA[ ${x} ]]>",
+		"<!--## comment ${x} -->after",
+		"<!--##-->",
+		"<!--## outer <!--## inner --> tail -->",
+		"<!-- ${x} -->",
+		"<!--#if(x)-->yes<!--#end-->",
+		"<!-- # if ( x ) -->yes<!-- #end -->",
+		"<!--#if((x))-->nested<!--#end-->",
+		"<!--#if(x)-->unterminated <!--#end",
+		"unterminated <!--#if(x)",
+		"unterminated comment <!--## abc ${x}",
+		"unterminated cdata <![CDATA[## abc ${x}",
+		"<!--#set(String y = \"-->\")-->${y}",
+		"<!--#set(String y = \"a\")-->${y}\\${y}<!--## ${y} -->",
+		"<!--#macro(m(String a))-->[${a}]<!--#end-->${m(x)}",
+		"<!--#foreach(String c in [\"a\", \"b\"])-->${c}<!--#end-->",
+		"<!--#if(x == \"v\")-->v<!--#else-->w<!--#end-->#{x}",
+	};
+
+	private static String render(Engine engine, String source) {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("x", "v");
+		try {
+			Template template = engine.parseTemplate("<!--#var(String x)-->" + source);
+			return String.valueOf(template.evaluate(parameters));
+		} catch (Exception e) {
+			return e.getClass().getName();
+		}
+	}
+
+	@Test
+	public void testFilterSource() {
+		ScanParser parser = new ScanParser();
+		for (String source : SOURCES) {
+			Assert.assertEquals(source, parser.regex(source), parser.scan(source));
+		}
+	}
+
+	@Test
+	public void testOverriddenFilter() {
+		CountParser parser = new CountParser();
+		String source = "a \\${x} <!--## b -->";
+		Assert.assertEquals(new ScanParser().regex(source), parser.scan(source));
+		Assert.assertEquals(1, parser.escapes);
+	}
+
+	@Test
+	public void testRender() {
+		Engine scan = Engine.getEngine("httl-parser-scan.properties", new Properties());
+		Properties properties = new Properties();
+		properties.setProperty("parser", RegexParser.class.getName());
+		Engine regex = Engine.getEngine("httl-parser-regex.properties", properties);
+		for (String source : SOURCES) {
+			Assert.assertEquals(source, render(regex, source), render(scan, source));
+		}
+	}
+
+}
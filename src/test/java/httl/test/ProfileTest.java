@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+import httl.util.ProfilePoint;
+import httl.util.Profiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * ProfileTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class ProfileTest {
+
+	private static Engine getEngine() {
+		Properties properties = new Properties();
+		properties.setProperty("profile", "true");
+		return Engine.getEngine("httl-profile.properties", properties);
+	}
+
+	private static ProfilePoint getPoint(String template, String label) {
+		for (ProfilePoint point : Profiler.getPoints()) {
+			if (point.getTemplate().equals(template) && point.getLabel().equals(label)) {
+				return point;
+			}
+		}
+		return null;
+	}
+
+	private static Map<String, Object> getParameters(String x) {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("x", x);
+		return parameters;
+	}
+
+	private static void write(File file, String source, long lastModified) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(source.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		file.setLastModified(lastModified);
+	}
+
+	@Test
+	public void testMacroLine() throws Exception {
+		Template template = getEngine().parseTemplate("line 1\n"
+				+ "<!--#macro(m)--><!--#var(String x)-->\n"
+				+ "${x}\n"
+				+ "<!--#end-->\n"
+				+ "<!--#var(String x)-->${m}\n"
+				+ "${x}\n");
+		template.evaluate(getParameters("a"));
+		ProfilePoint macro = getPoint(template.getName() + "#m", "${x}");
+		Assert.assertNotNull(macro);
+		Assert.assertEquals(3, macro.getLine());
+		ProfilePoint point = getPoint(template.getName(), "${x}");
+		Assert.assertNotNull(point);
+		Assert.assertEquals(6, point.getLine());
+	}
+
+	@Test
+	public void testRecordFailure() throws Exception {
+		Template template = getEngine().parseTemplate("<!--#var(String x)-->failure ${x.substring(5)}");
+		try {
+			template.evaluate(getParameters("ab"));
+			Assert.fail();
+		} catch (RuntimeException e) {
+		}
+		ProfilePoint point = getPoint(template.getName(), "${x.substring(5)}");
+		Assert.assertNotNull(point);
+		Assert.assertEquals(1, point.getCount());
+		Assert.assertEquals(1, getPoint(template.getName(), template.getName()).getCount());
+	}
+
+	@Test
+	public void testMarkInString() throws Exception {
+		Template template = getEngine().parseTemplate("<!--#var(String x)-->${\"$profile$()\"}${x}");
+		Assert.assertEquals("$profile$()a", template.evaluate(getParameters("a")));
+	}
+
+	@Test
+	public void testReplaceReloaded() throws Exception {
+		File directory = new File(System.getProperty("java.io.tmpdir"), "httl-profile-reload-" + System.nanoTime());
+		directory.mkdirs();
+		File file = new File(directory, "profile.httl");
+		try {
+			Properties properties = new Properties();
+			properties.setProperty("profile", "true");
+			properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+			properties.setProperty("template.directory", directory.getAbsolutePath());
+			properties.setProperty("reloadable", "true");
+			Engine engine = Engine.getEngine("httl-profile-reload.properties", properties);
+			long lastModified = System.currentTimeMillis() / 1000 * 1000 - 10000;
+			write(file, "<!--#var(String x)-->${x}", lastModified);
+			Assert.assertEquals("ab", engine.getTemplate("/profile.httl").evaluate(getParameters("ab")));
+			Assert.assertNotNull(getPoint("/profile.httl", "${x}"));
+
+			// 同一位置换成另一个表达式, 旧版本的剖析点随之替换
+			write(file, "<!--#var(String x)-->${x.length()}", lastModified + 2000);
+			Assert.assertEquals("2", engine.getTemplate("/profile.httl").evaluate(getParameters("ab")));
+			Assert.assertNull(getPoint("/profile.httl", "${x}"));
+			Assert.assertEquals(1, getPoint("/profile.httl", "${x.length()}").getCount());
+		} finally {
+			file.delete();
+			directory.delete();
+		}
+	}
+
+}
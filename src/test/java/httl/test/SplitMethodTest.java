@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * SplitMethodTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class SplitMethodTest {
+
+	private static final int REPEAT = 3000;
+
+	// 循环体中大量#set, 不拆分时渲染方法超过64K字节码限制
+	private static String getSource() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("<!--#var(java.util.List<String> list)--><!--#set(int n = 0)--><!--#foreach(String s in list)-->");
+		for (int i = 0; i < REPEAT; i ++) {
+			buf.append("${s}<!--#set(n = n + 1)-->,");
+		}
+		buf.append("<!--#end-->${n}");
+		return buf.toString();
+	}
+
+	private static Template parse(String name, int maxMethodLength) throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max.method.length", String.valueOf(maxMethodLength));
+		return Engine.getEngine(name, properties).parseTemplate(getSource());
+	}
+
+	@Test
+	public void testSplitLoopBody() throws Exception {
+		Template template = parse("httl-split-method.properties", 10000);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("list", Arrays.asList(new String[] { "a", "b" }));
+		StringBuilder expected = new StringBuilder();
+		for (String s : new String[] { "a", "b" }) {
+			for (int i = 0; i < REPEAT; i ++) {
+				expected.append(s).append(',');
+			}
+		}
+		expected.append(2 * REPEAT);
+		Assert.assertEquals(expected.toString(), template.evaluate(parameters));
+	}
+
+	@Test
+	public void testTooLargeWithoutSplit() throws Exception {
+		try {
+			parse("httl-split-method-none.properties", 0);
+			Assert.fail();
+		} catch (ParseException e) {
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.caches.TemplateAdaptiveCache;
+import httl.spi.engines.DefaultEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * StringTemplateCacheTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class StringTemplateCacheTest {
+
+	private static String getSource(int i, int length) {
+		StringBuilder buf = new StringBuilder();
+		buf.append("<!--#var(String n)-->${n} template ").append(i).append(':');
+		while (buf.length() < length) {
+			buf.append(' ').append(i);
+		}
+		return buf.toString();
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("string.template.cache.capacity", "17000");
+		DefaultEngine engine = (DefaultEngine) Engine.getEngine("httl-string-cache.properties", properties);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("n", "x");
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < 30; i ++) {
+			String source = getSource(i, 120);
+			Template template = engine.parseTemplate(source);
+			Assert.assertEquals("x" + source.substring(25), template.evaluate(parameters));
+			names.add(template.getName());
+		}
+		Assert.assertTrue(engine.getStringTemplateCacheWeight() <= 17000);
+		Assert.assertTrue(engine.getStringTemplateCacheStatistics().getEvictionCount() >= 26);
+		Map<?, ?> cache = engine.getProperty("templateCache", TemplateAdaptiveCache.class);
+		int loaded = 0;
+		for (String name : names) {
+			if (engine.hasResource(name)) {
+				loaded ++;
+			}
+		}
+		Assert.assertTrue("loaded: " + loaded, loaded <= 4);
+		Assert.assertTrue("cached: " + cache.size(), cache.size() <= 4);
+		Assert.assertEquals(loaded, cache.size());
+		Assert.assertTrue(engine.hasResource(names.get(names.size() - 1)));
+	}
+
+	@Test
+	public void testHeavierThanCapacity() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("string.template.cache.capacity", "50");
+		DefaultEngine engine = (DefaultEngine) Engine.getEngine("httl-string-cache-small.properties", properties);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("n", "x");
+		for (int i = 0; i < 30; i ++) {
+			String source = getSource(i, 120);
+			Template template = engine.parseTemplate(source);
+			Assert.assertEquals("x" + source.substring(25), template.evaluate(parameters));
+			Assert.assertFalse(engine.hasResource(template.getName()));
+		}
+		Assert.assertEquals(0, engine.getStringTemplateCacheWeight());
+		Assert.assertEquals(0, engine.getProperty("templateCache", TemplateAdaptiveCache.class).size());
+	}
+
+	@Test
+	public void testTinyTemplatesBounded() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("string.template.cache.capacity", "41000");
+		DefaultEngine engine = (DefaultEngine) Engine.getEngine("httl-string-cache-tiny.properties", properties);
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < 100; i ++) {
+			Template template = engine.parseTemplate("t" + i);
+			Assert.assertEquals("t" + i, template.evaluate());
+			names.add(template.getName());
+		}
+		// 每项的固定权重限制了短模板的条数
+		int loaded = 0;
+		for (String name : names) {
+			if (engine.hasResource(name)) {
+				loaded ++;
+			}
+		}
+		Assert.assertTrue("loaded: " + loaded, loaded > 0 && loaded <= 10);
+		Assert.assertTrue(engine.getStringTemplateCacheWeight() <= 41000);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test;
+
+import httl.Engine;
+import httl.Expression;
+import httl.spi.Translator;
+import httl.spi.translators.DefaultTranslator;
+import httl.spi.translators.expressions.ExpressionImpl;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * TranslationCacheTest
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class TranslationCacheTest {
+
+	private static DefaultTranslator getTranslator(String name) throws Exception {
+		Engine engine = Engine.getEngine(name, new Properties());
+		return (DefaultTranslator) engine.getProperty("translator", Translator.class);
+	}
+
+	@Test
+	public void testParameterTypes() throws Exception {
+		DefaultTranslator translator = getTranslator("httl-translation-types.properties");
+		Map<String, Class<?>> intTypes = new HashMap<String, Class<?>>();
+		intTypes.put("x", int.class);
+		Map<String, Class<?>> stringTypes = new HashMap<String, Class<?>>();
+		stringTypes.put("x", String.class);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+
+		Expression first = translator.translate("x", intTypes, 0);
+		Assert.assertEquals(int.class, first.getReturnType());
+		parameters.put("x", 1);
+		Assert.assertEquals(1, first.evaluate(parameters));
+
+		long hits = translator.getTranslationCacheStatistics().getHitCount();
+		Expression other = translator.translate("x", stringTypes, 0);
+		Assert.assertEquals(hits, translator.getTranslationCacheStatistics().getHitCount());
+		Assert.assertEquals(String.class, other.getReturnType());
+		parameters.put("x", "a");
+		Assert.assertEquals("a", other.evaluate(parameters));
+
+		Expression hit = translator.translate("x", new HashMap<String, Class<?>>(stringTypes), 0);
+		Assert.assertEquals(hits + 1, translator.getTranslationCacheStatistics().getHitCount());
+		Assert.assertEquals(String.class, hit.getReturnType());
+		Assert.assertEquals("a", hit.evaluate(parameters));
+	}
+
+	@Test
+	public void testTypesNotShared() throws Exception {
+		DefaultTranslator translator = getTranslator("httl-translation-shared.properties");
+		Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+		types.put("y", int.class);
+		ExpressionImpl expression = (ExpressionImpl) translator.translate("y", types, 0);
+		// 模板后续修改类型, 不影响已缓存的节点树
+		types.put("y", String.class);
+		Assert.assertEquals(int.class, expression.getNode().getReturnType());
+		Map<String, Class<?>> other = new HashMap<String, Class<?>>();
+		other.put("y", int.class);
+		ExpressionImpl hit = (ExpressionImpl) translator.translate("y", other, 0);
+		Assert.assertSame(expression.getNode(), hit.getNode());
+		Assert.assertEquals(int.class, hit.getNode().getReturnType());
+	}
+
+	@Test
+	public void testOffset() throws Exception {
+		DefaultTranslator translator = getTranslator("httl-translation-offset.properties");
+		Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+		types.put("a", int.class);
+		types.put("b", int.class);
+		ExpressionImpl first = (ExpressionImpl) translator.translate("a + b", types, 10);
+		ExpressionImpl hit = (ExpressionImpl) translator.translate("a + b", types, 50);
+		Assert.assertSame(first.getNode(), hit.getNode());
+		Assert.assertEquals(10, first.getOffset());
+		Assert.assertEquals(50, hit.getOffset());
+		int offset = first.getNode().getOffset();
+		Assert.assertTrue(offset < 10);
+		Assert.assertEquals(offset, hit.getNode().getOffset());
+		Assert.assertEquals(getErrorOffset(translator, 0) + 30, getErrorOffset(translator, 30));
+	}
+
+	private static int getErrorOffset(Translator translator, int offset) {
+		Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+		types.put("a", int.class);
+		try {
+			translator.translate("a + c", types, offset);
+			Assert.fail();
+			return -1;
+		} catch (ParseException e) {
+			return e.getErrorOffset();
+		}
+	}
+
+}
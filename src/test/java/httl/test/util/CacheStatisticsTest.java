@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.util.CacheStatistics;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class CacheStatisticsTest {
+
+	@Test
+	public void testCounters() {
+		CacheStatistics statistics = new CacheStatistics("test.cache");
+		Assert.assertEquals(0, statistics.getRequestCount());
+		Assert.assertEquals(1.0d, statistics.getHitRatio());
+		statistics.hit();
+		statistics.hit();
+		statistics.hit();
+		statistics.miss();
+		statistics.evict();
+		Assert.assertEquals(3, statistics.getHitCount());
+		Assert.assertEquals(1, statistics.getMissCount());
+		Assert.assertEquals(1, statistics.getEvictionCount());
+		Assert.assertEquals(4, statistics.getRequestCount());
+		Assert.assertEquals(0.75d, statistics.getHitRatio());
+		Assert.assertEquals("test.cache: hits=3, misses=1, ratio=75.0%, evictions=1", statistics.toString());
+		statistics.reset();
+		Assert.assertEquals(0, statistics.getRequestCount());
+		Assert.assertEquals(0, statistics.getEvictionCount());
+		Assert.assertEquals("test.cache: hits=0, misses=0, ratio=100.0%", statistics.toString());
+	}
+
+}
@@ -75,4 +75,14 @@ public class DelegateMapTest {
 		Assert.assertTrue(values.contains("z"));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testIteratorWithEmptyParent() {
+		Map<String, String> current = new HashMap<String, String>();
+		current.put("a", "x");
+		Map<String, String> delegate = new DelegateMap<String, String>(new HashMap<String, String>(), current);
+		Map<String, String> copy = new HashMap<String, String>(delegate);
+		Assert.assertEquals(1, copy.size());
+		Assert.assertEquals("x", copy.get("a"));
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.util.Digest;
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class DigestTest {
+
+	@Test
+	public void testGetHash() {
+		Assert.assertEquals("00000000000000000000000000000000", Digest.getHash(""));
+		Assert.assertEquals("96a698500b4e98bdb278c9bfc754677d", Digest.getHash("a"));
+		Assert.assertEquals("49a0a5379806e088187356ead0331c5a", Digest.getHash("hello ${name}"));
+		Assert.assertEquals("407e326dad7960faa2075d5b76f17479", Digest.getHash("0123456789abcdefXYZ"));
+		Assert.assertEquals("0e4ddccf9d9054290df8b914e8d02c40", Digest.getHash("中文模板"));
+	}
+
+	@Test
+	public void testGetHashDistinct() {
+		Assert.assertFalse(Digest.getHash("${a}").equals(Digest.getHash("${b}")));
+		Assert.assertFalse(Digest.getHash("abc").equals(Digest.getHash("abc\u0000")));
+	}
+
+}
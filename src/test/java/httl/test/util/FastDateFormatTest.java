@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.util.DateUtils;
+import httl.util.FastDateFormat;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FastDateFormatTest {
+
+	private static final String[] PATTERNS = { "yyyy-MM-dd HH:mm:ss", "yy/M/d h:m:s a", "yyyy'年'MM'月'dd'日' k:K:SSS",
+		"EEE, dd MMM yyyy HH:mm:ss Z", "EEEE MMMM D yyyyy", "''HH'':'mm'''", "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "GGG yyyy ww" };
+
+	private static final String[] TIME_ZONES = { "GMT", "GMT+8", "America/New_York", "Asia/Shanghai", "Asia/Kolkata", "Europe/London" };
+
+	@Test
+	public void testFormat() {
+		Random random = new Random(20121010);
+		for (String pattern : PATTERNS) {
+			for (String id : TIME_ZONES) {
+				TimeZone timeZone = TimeZone.getTimeZone(id);
+				FastDateFormat fast = new FastDateFormat(pattern, timeZone, Locale.US);
+				SimpleDateFormat simple = new SimpleDateFormat(pattern, Locale.US);
+				simple.setTimeZone(timeZone);
+				long[] times = new long[200];
+				times[0] = 0;
+				times[1] = -1;
+				times[2] = -12219292800001L;
+				times[3] = -12219292800000L;
+				times[4] = 951782400000L; // 2000-02-29
+				for (int i = 5; i < times.length; i ++) {
+					times[i] = (random.nextLong() % 8000000000000L) - 2000000000000L;
+				}
+				for (long time : times) {
+					Date date = new Date(time);
+					Assert.assertEquals(pattern + " " + id + " " + time, simple.format(date), fast.format(date));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFormatLocales() {
+		String[] patterns = { "yyyy-MM-dd HH:mm:ss", "EEE, dd MMM yyyy h:mm a", "EEEE d MMMM yyyy", "MMM", "MMMM yyyy", "MMM yy HH:mm", "yyyy" };
+		Random random = new Random(20121010);
+		long[] times = new long[24];
+		for (int i = 0; i < 12; i ++) {
+			times[i] = 946684800000L + i * 31L * 86400000L; // 2000年每月
+		}
+		for (int i = 12; i < times.length; i ++) {
+			times[i] = (random.nextLong() % 4000000000000L);
+		}
+		TimeZone timeZone = TimeZone.getTimeZone("GMT+8");
+		for (Locale locale : Locale.getAvailableLocales()) {
+			for (String pattern : patterns) {
+				FastDateFormat fast = new FastDateFormat(pattern, timeZone, locale);
+				SimpleDateFormat simple = new SimpleDateFormat(pattern, locale);
+				simple.setTimeZone(timeZone);
+				for (long time : times) {
+					Date date = new Date(time);
+					Assert.assertEquals(pattern + " " + locale + " " + time, simple.format(date), fast.format(date));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAppend() {
+		FastDateFormat fast = new FastDateFormat("yyyy-MM-dd", TimeZone.getTimeZone("GMT"));
+		StringBuilder buf = new StringBuilder("date: ");
+		Assert.assertEquals("date: 1970-01-02", fast.format(86400000L, buf).toString());
+	}
+
+	@Test
+	public void testParseConcurrently() throws Exception {
+		final AtomicReference<String> error = new AtomicReference<String>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t ++) {
+			final TimeZone timeZone = TimeZone.getTimeZone(TIME_ZONES[t]);
+			threads[t] = new Thread() {
+				public void run() {
+					SimpleDateFormat simple = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+					simple.setTimeZone(timeZone);
+					for (int i = 0; i < 2000; i ++) {
+						String value = "20" + (10 + i % 20) + "-0" + (1 + i % 9) + "-1" + (i % 10) + " 12:" + (10 + i % 50) + ":00";
+						try {
+							if (! simple.parse(value).equals(DateUtils.parse(value, "yyyy-MM-dd HH:mm:ss", timeZone))) {
+								error.set(value);
+							}
+						} catch (Exception e) {
+							error.set(value + ": " + e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertNull(error.get());
+	}
+
+}
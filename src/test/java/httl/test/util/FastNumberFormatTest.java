@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.util.FastNumberFormat;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FastNumberFormatTest {
+
+	private static final String[] PATTERNS = { "###,##0.###", "#,##0.00", "0.###", "#.##", "000000", "#,###", "$#,##0.00 USD", "#.", ".###", "0.0#", "0.00%", "0.###E0" };
+
+	@Test
+	public void testFormat() {
+		Random random = new Random(20121010);
+		for (String pattern : PATTERNS) {
+			FastNumberFormat fast = new FastNumberFormat(pattern, Locale.US);
+			DecimalFormat decimal = new DecimalFormat(pattern, new DecimalFormatSymbols(Locale.US));
+			Assert.assertEquals(pattern, decimal.format((Object) Double.valueOf(-0.0)), fast.format(-0.0));
+			Assert.assertEquals(pattern, decimal.format((Object) Double.valueOf(0.125)), fast.format(0.125));
+			Assert.assertEquals(pattern, decimal.format(Long.MIN_VALUE), fast.format(Long.MIN_VALUE));
+			for (int i = 0; i < 10000; i ++) {
+				double d = i % 2 == 0 ? (random.nextInt(2000000) - 1000000) / 1000.0 : random.nextDouble() * 1000000;
+				Assert.assertEquals(pattern + " " + d, decimal.format((Object) Double.valueOf(d)), fast.format(Double.valueOf(d)));
+				long l = random.nextLong() >> random.nextInt(64);
+				Assert.assertEquals(pattern + " " + l, decimal.format(l), fast.format(Long.valueOf(l)));
+			}
+		}
+	}
+
+	@Test
+	public void testToChars() {
+		Random random = new Random(20121010);
+		char[] chars = new char[32];
+		for (int i = 0; i < 100000; i ++) {
+			long l = random.nextLong() >> random.nextInt(64);
+			Assert.assertEquals(String.valueOf(l), new String(chars, 0, FastNumberFormat.toChars(l, chars, 0)));
+			double d = i % 2 == 0 ? (random.nextInt(2000000) - 1000000) / 100.0 : random.nextDouble() * 10000;
+			int length = FastNumberFormat.toChars(d, chars, 0);
+			if (length >= 0) {
+				Assert.assertEquals(String.valueOf(d), new String(chars, 0, length));
+			}
+			float f = (float) d;
+			length = FastNumberFormat.toChars(f, chars, 0);
+			if (length >= 0) {
+				Assert.assertEquals(String.valueOf(f), new String(chars, 0, length));
+			}
+		}
+		Assert.assertEquals(String.valueOf(Long.MIN_VALUE), new String(chars, 0, FastNumberFormat.toChars(Long.MIN_VALUE, chars, 0)));
+		Assert.assertEquals("-1.5", new String(chars, 0, FastNumberFormat.toChars(-1.5, chars, 0)));
+		Assert.assertEquals(-1, FastNumberFormat.toChars(Double.NaN, chars, 0));
+	}
+
+}
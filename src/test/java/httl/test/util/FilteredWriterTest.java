@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.spi.filters.EscapeXmlFilter;
+import httl.util.FilteredOutputStream;
+import httl.util.FilteredWriter;
+import httl.util.UnsafeByteArrayOutputStream;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FilteredWriterTest {
+
+	@Test
+	public void testWriter() throws IOException {
+		StringWriter target = new StringWriter();
+		FilteredWriter writer = new FilteredWriter(target, new EscapeXmlFilter());
+		writer.write("<b>");
+		writer.write('&');
+		writer.write("x<y".toCharArray(), 1, 2);
+		writer.close();
+		Assert.assertEquals("&lt;b&gt;&amp;&lt;y", target.toString());
+	}
+
+	@Test
+	public void testOutputStreamSplitChar() throws IOException {
+		UnsafeByteArrayOutputStream target = new UnsafeByteArrayOutputStream();
+		FilteredOutputStream stream = new FilteredOutputStream(target, new EscapeXmlFilter(), "UTF-8");
+		byte[] bytes = "<中文>".getBytes("UTF-8");
+		stream.write(bytes, 0, 2);
+		stream.write(bytes, 2, 3);
+		stream.write(bytes, 5, bytes.length - 5);
+		stream.close();
+		Assert.assertEquals("&lt;中文&gt;", new String(target.toByteArray(), "UTF-8"));
+	}
+
+}
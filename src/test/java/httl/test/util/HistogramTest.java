@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.util.Histogram;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void testPercentile() {
+		Histogram histogram = new Histogram();
+		for (long i = 1; i <= 1000; i ++) {
+			histogram.record(i * 1000);
+		}
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(1000000, histogram.getMax());
+		Assert.assertEquals(500500, histogram.getMean());
+		assertNear(500000, histogram.getPercentile(50));
+		assertNear(990000, histogram.getPercentile(99));
+		Assert.assertEquals(1000000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testSmallAndHuge() {
+		Histogram histogram = new Histogram();
+		histogram.record(-1);
+		histogram.record(3);
+		histogram.record(Long.MAX_VALUE / 2);
+		Assert.assertEquals(0, histogram.getPercentile(1));
+		Assert.assertEquals(3, histogram.getPercentile(50));
+		Assert.assertEquals(Long.MAX_VALUE / 2, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testReset() {
+		Histogram histogram = new Histogram();
+		histogram.record(100);
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getMax());
+		Assert.assertEquals(0, histogram.getPercentile(99));
+	}
+
+	private static void assertNear(long expected, long actual) {
+		Assert.assertTrue("expected " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 16);
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.spi.Formatter;
+import httl.spi.formatters.MultiFormatter;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class MultiFormatterTest {
+
+	public static class DateFormatter implements Formatter<Date> {
+		public String format(Date value) {
+			return "date";
+		}
+	}
+
+	public static class NumberFormatter implements Formatter<Number> {
+		public String format(Number value) {
+			return "number";
+		}
+	}
+
+	public static class SerializableFormatter implements Formatter<Serializable> {
+		public String format(Serializable value) {
+			return "serializable";
+		}
+	}
+
+	public static class ObjectFormatter implements Formatter<Object> {
+		public String format(Object value) {
+			return "object";
+		}
+	}
+
+	public static class Item implements Serializable {
+		private static final long serialVersionUID = 1L;
+	}
+
+	@Test
+	public void testResolve() {
+		MultiFormatter formatter = new MultiFormatter();
+		formatter.setFormatters(new Formatter<?>[] { new DateFormatter(), new NumberFormatter(), new SerializableFormatter() });
+		Assert.assertEquals("date", formatter.format(new Date()));
+		Assert.assertEquals("date", formatter.format(new Timestamp(0)));
+		Assert.assertEquals("number", formatter.format(new BigDecimal("1.5")));
+		Assert.assertEquals("number", formatter.format(Integer.valueOf(1)));
+		Assert.assertEquals("abc", formatter.format("abc"));
+		Assert.assertEquals("true", formatter.format(Boolean.TRUE));
+		Assert.assertEquals("serializable", formatter.format(new Item()));
+		Assert.assertEquals("x", formatter.format(new Object() { public String toString() { return "x"; } }));
+		Assert.assertNull(formatter.resolve(Object.class));
+		Assert.assertSame(formatter.resolve(Timestamp.class), formatter.get(Date.class));
+	}
+
+	@Test
+	public void testSuperClassBeforeInterface() {
+		MultiFormatter formatter = new MultiFormatter();
+		formatter.setFormatters(new Formatter<?>[] { new SerializableFormatter(), new ObjectFormatter() });
+		Assert.assertEquals("object", formatter.format("abc"));
+		Assert.assertEquals("object", formatter.format(new Item()));
+		formatter = new MultiFormatter();
+		formatter.setFormatters(new Formatter<?>[] { new SerializableFormatter() });
+		Assert.assertNull(formatter.resolve(String.class));
+		Assert.assertNull(formatter.resolve(Integer.class));
+		Assert.assertNotNull(formatter.resolve(Item.class));
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.util.ProfilePoint;
+import httl.util.Profiler;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ProfilerTest {
+
+	@Test
+	public void testFlameGraph() {
+		ProfilePoint root = Profiler.getPoint(null, "/profiler_test.httl", "v1", Profiler.TEMPLATE, 1, 0, "/profiler_test.httl");
+		ProfilePoint loop = Profiler.getPoint(root, "/profiler_test.httl", "v1", Profiler.FOREACH, 2, 10, "#foreach(a;b in list)");
+		ProfilePoint expr = Profiler.getPoint(loop, "/profiler_test.httl", "v1", Profiler.EXPRESSION, 3, 30, "${a}");
+		Assert.assertSame(loop, Profiler.getPoint(root, "/profiler_test.httl", "v1", Profiler.FOREACH, 2, 10, "#foreach(a;b in list)"));
+		root.record(10000000);
+		loop.record(6000000, 3);
+		expr.record(1000000);
+		expr.record(1000000);
+		String graph = Profiler.getFlameGraph();
+		Assert.assertTrue(graph, graph.contains("/profiler_test.httl 4000\n"));
+		Assert.assertTrue(graph, graph.contains("/profiler_test.httl;#foreach(a,b in list) (/profiler_test.httl:2) 4000\n"));
+		Assert.assertTrue(graph, graph.contains("/profiler_test.httl;#foreach(a,b in list) (/profiler_test.httl:2);${a} (/profiler_test.httl:3) 2000\n"));
+		Assert.assertEquals(3, loop.getIterations());
+		Assert.assertEquals(2, expr.getCount());
+		Profiler.reset();
+		Assert.assertEquals(0, expr.getCount());
+	}
+
+	@Test
+	public void testReplaceVersion() {
+		ProfilePoint old = Profiler.getPoint(null, "/profiler_version.httl", "v1", Profiler.EXPRESSION, 1, 10, "${a}");
+		Assert.assertTrue(Profiler.getPoints().contains(old));
+		// 模板修改后, 同一位置是另一个表达式
+		ProfilePoint point = Profiler.getPoint(null, "/profiler_version.httl", "v2", Profiler.EXPRESSION, 1, 10, "${b}");
+		Assert.assertNotSame(old, point);
+		Assert.assertEquals("${b}", point.getLabel());
+		Assert.assertFalse(Profiler.getPoints().contains(old));
+		Assert.assertTrue(Profiler.getPoints().contains(point));
+		Assert.assertSame(point, Profiler.getPoint(null, "/profiler_version.httl", "v2", Profiler.EXPRESSION, 1, 10, "${b}"));
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.Subscriber;
+import httl.util.SubscriberOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class SubscriberOutputStreamTest {
+
+	@Test
+	public void testPublishRequestedChunks() throws Exception {
+		final List<String> chunks = new ArrayList<String>();
+		Subscriber subscriber = new Subscriber() {
+			public void onSubscribe(Subscription subscription) {
+			}
+			public void onNext(ByteBuffer chunk) {
+				chunks.add(new String(chunk.array(), chunk.position(), chunk.remaining()));
+			}
+			public void onError(Throwable e) {
+			}
+			public void onComplete() {
+			}
+		};
+		final SubscriberOutputStream stream = new SubscriberOutputStream(subscriber, 4);
+		stream.request(1);
+		stream.write("abcdef".getBytes());
+		Assert.assertEquals(1, chunks.size());
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					stream.write("ghij".getBytes());
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		};
+		writer.start();
+		writer.join(100);
+		Assert.assertTrue(writer.isAlive());
+		Assert.assertEquals(1, chunks.size());
+		stream.request(2);
+		writer.join();
+		Assert.assertEquals(3, chunks.size());
+		Assert.assertEquals("abcd", chunks.get(0));
+		Assert.assertEquals("efgh", chunks.get(1));
+		Assert.assertEquals("ij", chunks.get(2));
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final List<String> chunks = new ArrayList<String>();
+		Subscriber subscriber = new Subscriber() {
+			public void onSubscribe(Subscription subscription) {
+			}
+			public void onNext(ByteBuffer chunk) {
+				chunks.add(new String(chunk.array(), chunk.position(), chunk.remaining()));
+			}
+			public void onError(Throwable e) {
+			}
+			public void onComplete() {
+			}
+		};
+		SubscriberOutputStream stream = new SubscriberOutputStream(subscriber, 4);
+		stream.cancel();
+		try {
+			stream.write("abcdef".getBytes());
+			Assert.fail();
+		} catch (IOException e) {
+		}
+		Assert.assertTrue(stream.isCancelled());
+		Assert.assertEquals(0, chunks.size());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final List<String> chunks = new ArrayList<String>();
+		Subscriber subscriber = new Subscriber() {
+			public void onSubscribe(Subscription subscription) {
+			}
+			public void onNext(ByteBuffer chunk) {
+				chunks.add(new String(chunk.array(), chunk.position(), chunk.remaining()));
+			}
+			public void onError(Throwable e) {
+			}
+			public void onComplete() {
+			}
+		};
+		SubscriberOutputStream stream = new SubscriberOutputStream(subscriber, 4, 50);
+		stream.request(1);
+		long start = System.currentTimeMillis();
+		try {
+			stream.write("abcdefghij".getBytes());
+			Assert.fail();
+		} catch (IOException e) {
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start >= 50);
+		Assert.assertFalse(stream.isCancelled());
+		Assert.assertEquals(1, chunks.size());
+		Assert.assertEquals("abcd", chunks.get(0));
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011-2012 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.util.UnsafeBufferedOutputStream;
+import httl.util.UnsafeBufferedWriter;
+import httl.util.UnsafeByteArrayOutputStream;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class UnsafeBufferedWriterTest {
+
+	@Test
+	public void testBufferUntilWatermark() throws IOException {
+		StringWriter target = new StringWriter();
+		UnsafeBufferedWriter writer = new UnsafeBufferedWriter(target, 4, 8);
+		writer.write("abc");
+		writer.write('d');
+		writer.write("efg".toCharArray(), 0, 2);
+		Assert.assertEquals("", target.toString());
+		Assert.assertEquals(6, writer.size());
+		writer.write("ghij", 1, 3);
+		Assert.assertEquals("abcdefhi", target.toString());
+		Assert.assertEquals(1, writer.size());
+		writer.flushBuffer();
+		Assert.assertEquals("abcdefhij", target.toString());
+		writer.write("0123456789");
+		Assert.assertEquals("abcdefhij0123456789", target.toString());
+		writer.release();
+	}
+
+	@Test
+	public void testReleaseDiscardBuffer() throws IOException {
+		StringWriter target = new StringWriter();
+		UnsafeBufferedWriter writer = new UnsafeBufferedWriter(target, 4, 16);
+		writer.append("abcdef");
+		writer.release();
+		writer.flushBuffer();
+		Assert.assertEquals("", target.toString());
+	}
+
+	@Test
+	public void testOutputStream() throws IOException {
+		UnsafeByteArrayOutputStream target = new UnsafeByteArrayOutputStream();
+		UnsafeBufferedOutputStream stream = new UnsafeBufferedOutputStream(target, 4, 8);
+		stream.write("abcdef".getBytes());
+		Assert.assertEquals(0, target.size());
+		stream.write('g');
+		stream.write("hi".getBytes());
+		Assert.assertEquals("abcdefgh", target.toString());
+		stream.flush();
+		Assert.assertEquals("abcdefghi", target.toString());
+		stream.release();
+	}
+
+}